@@ -0,0 +1,39 @@
+# Small program run by CreateMarsJar.bat while it records the class data sharing
+# archive, so the archive holds the classes used to assemble and simulate a program
+# (tokenizer, assembler, pseudo-instructions, simulator, syscalls), not just start up.
+	.data
+values:	.word	12, -7, 30, 5, 0x1F
+count:	.word	5
+pi:	.double	3.14159265
+label:	.asciiz	"sum = "
+nl:	.asciiz	"\n"
+
+	.macro	print_str (%address)
+	la	$a0, %address
+	li	$v0, 4
+	syscall
+	.end_macro
+
+	.text
+	.globl	main
+main:	la	$t0, values
+	lw	$t1, count
+	move	$t2, $zero
+loop:	beqz	$t1, done
+	lw	$t3, 0($t0)
+	add	$t2, $t2, $t3
+	addi	$t0, $t0, 4
+	addi	$t1, $t1, -1
+	j	loop
+done:	print_str (label)
+	move	$a0, $t2
+	li	$v0, 1
+	syscall
+	print_str (nl)
+	l.d	$f12, pi
+	mul.d	$f12, $f12, $f12
+	li	$v0, 3
+	syscall
+	print_str (nl)
+	li	$v0, 10
+	syscall
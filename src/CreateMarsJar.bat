@@ -1 +1,5 @@
-jar cmf mainclass.txt Mars.jar PseudoOps.txt Config.properties Syscall.properties Settings.properties MARSlicense.txt mainclass.txt MipsXRayOpcode.xml registerDatapath.xml controlDatapath.xml ALUcontrolDatapath.xml CreateMarsJar.bat Mars.java Mars.class docs help images mars 
\ No newline at end of file
+jar cmf mainclass.txt Mars.jar PseudoOps.txt Config.properties Syscall.properties Settings.properties MARSlicense.txt mainclass.txt MipsXRayOpcode.xml registerDatapath.xml controlDatapath.xml ALUcontrolDatapath.xml CreateMarsJar.bat Mars.java Mars.class docs help images mars 
+rem Class data sharing archive for faster start up.  Launch with: java -XX:SharedArchiveFile=Mars.jsa -jar Mars.jar
+rem The archive must be created again whenever Mars.jar is.  It is recorded from a run of a small
+rem program so it holds the assembler and simulator classes too, not just those used to start up.
+java -XX:ArchiveClassesAtExit=Mars.jsa -jar Mars.jar nc CDSWarmup.asm
@@ -0,0 +1,284 @@
+   package mars;
+
+/*
+Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining 
+a copy of this software and associated documentation files (the 
+"Software"), to deal in the Software without restriction, including 
+without limitation the rights to use, copy, modify, merge, publish, 
+distribute, sublicense, and/or sell copies of the Software, and to 
+permit persons to whom the Software is furnished to do so, subject 
+to the following conditions:
+
+The above copyright notice and this permission notice shall be 
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION 
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+	import mars.assembler.*;
+	import mars.mips.hardware.*;
+	import java.io.*;
+	import java.util.*;
+	import java.util.zip.*;
+
+	/**
+	  *  On-disk image of an assembled program, for command-line runs that assemble the
+	  *  same source files over and over (e.g. grading or benchmarking with different inputs).
+	  *  The image holds the text and data segment contents, the global symbol table, the 
+	  *  source file, line and basic statement of every text segment statement, and any
+	  *  assembler warnings.  Statements are rebuilt from their binary code but display as
+	  *  they did when assembled.
+	  *  It is tagged with a digest of every source file read, including .include files,
+	  *  and with the settings that affect assembly.  If these still match, the image is
+	  *  loaded directly into memory in place of tokenizing and assembling.
+	  **/
+
+    public class AssembledProgramCache {
+      private static final int MAGIC = 0x4D415253; // "MARS"
+      private static final int FORMAT_VERSION = 2;
+      private static final int BLOCK_LENGTH_BYTES = 4096; // matches Memory block size
+      private File file;
+      private String warnings;
+   
+   	/**
+   	 * Create cache backed by the given file.  The file need not exist yet.
+   	 * @param file the cache file
+   	 */
+       public AssembledProgramCache(File file) {
+         this.file = file;
+         this.warnings = "";
+      }
+   
+   	/**
+   	 * Assembler warnings recorded when the program was assembled.  Valid after
+   	 * a successful load().
+   	 * @return warning report, or empty String if there were no warnings
+   	 */
+       public String getWarnings() {
+         return warnings;
+      }
+   
+   	/**
+   	 * If the cache file exists and was produced from the given files, unchanged, under
+   	 * the current settings, load its image into Globals.memory and Globals.symbolTable.
+   	 * @param filesToAssemble names of the files that would be assembled, main file first
+   	 * @param extendedAssemblerEnabled whether pseudo-instructions are allowed
+   	 * @param warningsAreErrors whether assembler warnings are treated as errors
+   	 * @return true if the image was loaded, false if it is missing or out of date
+   	 */
+       public boolean load(ArrayList<?> filesToAssemble, boolean extendedAssemblerEnabled, boolean warningsAreErrors) {
+         if (!file.exists()) {
+            return false;
+         }
+         DataInputStream in = null;
+         try {
+            in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION ||
+                !in.readUTF().equals(fingerprint(extendedAssemblerEnabled, warningsAreErrors))) {
+               return false;
+            }
+            int numAssembled = in.readInt();
+            if (numAssembled != filesToAssemble.size()) {
+               return false;
+            }
+            for (int i=0; i<numAssembled; i++) {
+               if (!in.readUTF().equals(filesToAssemble.get(i))) {
+                  return false;
+               }
+            }
+            MIPSprogram[] sources = new MIPSprogram[in.readInt()];
+            for (int i=0; i<sources.length; i++) {
+               sources[i] = new MIPSprogram();
+               try {
+                  sources[i].readSource(in.readUTF());
+               } 
+                   catch (ProcessingException e) {
+                     return false; // source file no longer readable
+                  }
+               if (!in.readUTF().equals(Tokenizer.digest(sources[i].getSourceList()))) {
+                  return false;
+               }
+            }
+            // Image is current, so it replaces the assembler from here on.
+            warnings = readString(in);
+            Globals.symbolTable.clear();
+            Globals.memory.clear();
+            int numSymbols = in.readInt();
+            for (int i=0; i<numSymbols; i++) {
+               String name = in.readUTF();
+               int address = in.readInt();
+               boolean data = in.readBoolean();
+               Globals.symbolTable.addSymbol(new Token(TokenTypes.IDENTIFIER, name, null, 0, 0), 
+                                             address, data, new ErrorList());
+            }
+            int numStatements = in.readInt();
+            for (int i=0; i<numStatements; i++) {
+               int address = in.readInt();
+               ProgramStatement statement = new ProgramStatement(in.readInt(), address);
+               int source = in.readInt();
+               statement.setSourceLine((source < 0) ? null : sources[source], in.readInt());
+               statement.setSource(readString(in));
+               statement.readBasicStatement(in);
+               Globals.memory.setStatement(address, statement);
+            }
+            int numBlocks = in.readInt();
+            for (int i=0; i<numBlocks; i++) {
+               int address = in.readInt();
+               for (int offset=0; offset<BLOCK_LENGTH_BYTES; offset+=Memory.WORD_LENGTH_BYTES) {
+                  Globals.memory.setRawWord(address+offset, in.readInt());
+               }
+            }
+            return true;
+         } 
+             catch (IOException e) {
+               return false;
+            } 
+             catch (AddressErrorException e) {
+               return false;
+            } 
+         finally {
+            close(in);
+         }
+      }
+   
+   	/**
+   	 * Write the image of a just-assembled program to the cache file.
+   	 * @param filesToAssemble names of the files assembled, main file first
+   	 * @param programs the MIPSprogram objects that were assembled, one per file
+   	 * @param machineList the assembled statements, as returned by MIPSprogram.getMachineList()
+   	 * @param warnings warnings produced by the assembler, or null if none
+   	 * @param extendedAssemblerEnabled whether pseudo-instructions were allowed
+   	 * @param warningsAreErrors whether assembler warnings were treated as errors
+   	 * @throws IOException if the cache file could not be written
+   	 */
+       public void save(ArrayList<?> filesToAssemble, ArrayList<?> programs, ArrayList<?> machineList, ErrorList warnings,
+                        boolean extendedAssemblerEnabled, boolean warningsAreErrors) throws IOException {
+         // Every file read, including .include files, each with its own index
+         LinkedHashMap<String,Integer> sourceIndex = new LinkedHashMap<String,Integer>();
+         ArrayList<MIPSprogram> sources = new ArrayList<MIPSprogram>();
+         for (int i=0; i<programs.size(); i++) {
+            for (SourceLine line : ((MIPSprogram) programs.get(i)).getSourceLineList()) {
+               MIPSprogram source = line.getMIPSprogram();
+               if (!sourceIndex.containsKey(source.getFilename())) {
+                  sourceIndex.put(source.getFilename(), sources.size());
+                  sources.add(source);
+               }
+            }
+         }
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))));
+         try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(fingerprint(extendedAssemblerEnabled, warningsAreErrors));
+            out.writeInt(filesToAssemble.size());
+            for (int i=0; i<filesToAssemble.size(); i++) {
+               out.writeUTF((String) filesToAssemble.get(i));
+            }
+            out.writeInt(sources.size());
+            for (MIPSprogram source : sources) {
+               // Read it again, since an assembled file's source list includes its .include files
+               MIPSprogram unprocessed = new MIPSprogram();
+               try {
+                  unprocessed.readSource(source.getFilename());
+               } 
+                   catch (ProcessingException e) {
+                     throw new IOException("cannot read "+source.getFilename());
+                  }
+               out.writeUTF(source.getFilename());
+               out.writeUTF(Tokenizer.digest(unprocessed.getSourceList()));
+            }
+            writeString(out, (warnings != null && warnings.warningsOccurred()) ? warnings.generateWarningReport() : "");
+            ArrayList<?> symbols = Globals.symbolTable.getAllSymbols();
+            out.writeInt(symbols.size());
+            for (int i=0; i<symbols.size(); i++) {
+               Symbol symbol = (Symbol) symbols.get(i);
+               out.writeUTF(symbol.getName());
+               out.writeInt(symbol.getAddress());
+               out.writeBoolean(symbol.getType());
+            }
+            out.writeInt(machineList.size());
+            for (int i=0; i<machineList.size(); i++) {
+               ProgramStatement statement = (ProgramStatement) machineList.get(i);
+               Integer source = (statement.getSourceMIPSprogram() == null) 
+                                ? null : sourceIndex.get(statement.getSourceMIPSprogram().getFilename());
+               out.writeInt(statement.getAddress());
+               out.writeInt(statement.getBinaryStatement());
+               out.writeInt((source == null) ? -1 : source.intValue());
+               out.writeInt(statement.getSourceLine());
+               writeString(out, statement.getSource());
+               statement.writeBasicStatement(out);
+            }
+            ArrayList<Integer> blocks = new ArrayList<Integer>();
+            findBlocks(blocks, Memory.dataSegmentBaseAddress, Memory.dataSegmentLimitAddress);
+            findBlocks(blocks, Memory.kernelDataBaseAddress, Memory.kernelDataSegmentLimitAddress);
+            out.writeInt(blocks.size());
+            for (int address : blocks) {
+               out.writeInt(address);
+               for (int offset=0; offset<BLOCK_LENGTH_BYTES; offset+=Memory.WORD_LENGTH_BYTES) {
+                  out.writeInt(Globals.memory.getRawWord(address+offset));
+               }
+            }
+         } 
+             catch (AddressErrorException e) {
+               throw new IOException("cannot read memory at address "+e.getAddress());
+            } 
+         finally {
+            out.close();
+         }
+      }
+   
+   // Add the starting address of every data block in the given segment that the
+   // assembler has written to.  Memory allocates storage a block at a time, so if
+   // the first word of a block is null, so is the rest of it.
+       private void findBlocks(ArrayList<Integer> blocks, int baseAddress, int limitAddress) throws AddressErrorException {
+         for (long address = baseAddress & 0xFFFFFFFFL; address < (limitAddress & 0xFFFFFFFFL); address += BLOCK_LENGTH_BYTES) {
+            if (Globals.memory.getRawWordOrNull((int) address) != null) {
+               blocks.add((int) address);
+            }
+         }
+      }
+   
+   // Identifies the MARS version and the settings that affect assembly.
+       private static String fingerprint(boolean extendedAssemblerEnabled, boolean warningsAreErrors) {
+         return Globals.version + 
+                ";db=" + Globals.getSettings().getBooleanSetting(Settings.DELAYED_BRANCHING_ENABLED) +
+                ";mc=" + MemoryConfigurations.getCurrentConfiguration().getConfigurationIdentifier() +
+                ";pseudo=" + extendedAssemblerEnabled +
+                ";we=" + warningsAreErrors;
+      }
+   
+   // writeUTF() is limited to 64K bytes, which a warning report can exceed.
+       private static void writeString(DataOutputStream out, String s) throws IOException {
+         byte[] bytes = s.getBytes("UTF-8");
+         out.writeInt(bytes.length);
+         out.write(bytes);
+      }
+   
+       private static String readString(DataInputStream in) throws IOException {
+         byte[] bytes = new byte[in.readInt()];
+         in.readFully(bytes);
+         return new String(bytes, "UTF-8");
+      }
+   
+       private static void close(InputStream in) {
+         if (in != null) {
+            try {
+               in.close();
+            } 
+                catch (IOException e) {
+               }
+         }
+      }
+   }
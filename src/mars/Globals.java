@@ -115,6 +115,18 @@ public class Globals {
      * Maximum number of back-step operations to buffer
      */
     public static final int maximumBacksteps = getBackstepLimit();
+    /**
+     * Number of characters of print syscall output to collect before writing them out
+     */
+    public static final int outputBufferSize = getOutputBufferSize();
+    /**
+     * Maximum number of files a MIPS program can have open, including standard input, output and error
+     */
+    public static final int maximumOpenFiles = getOpenFileLimit();
+    /**
+     * Number of MIPS instructions executed per simulated millisecond when virtual time is enabled
+     */
+    public static final int virtualTimeRate = getVirtualTimeRate();
     /**
      * MARS copyright years
      */
@@ -207,6 +219,21 @@ public class Globals {
         return getIntegerProperty(configPropertiesFile, "BackstepLimit", 1000);
     }
 
+    // Read size of print syscall output buffer, in characters, from properties file.
+    private static int getOutputBufferSize() {
+        return getIntegerProperty(configPropertiesFile, "OutputBufferSize", 8192);
+    }
+
+    // Read instructions per millisecond of virtual time from properties file.
+    private static int getVirtualTimeRate() {
+        return Math.max(1, getIntegerProperty(configPropertiesFile, "VirtualTimeRate", 1000));
+    }
+
+    // Read limit on number of files open at once (file descriptor table size) from properties file.
+    private static int getOpenFileLimit() {
+        return getIntegerProperty(configPropertiesFile, "OpenFileLimit", 256);
+    }
+
     // Read ASCII default display character for non-printing characters, from properties file.
     public static String getAsciiNonPrint() {
         String anp = getPropertyEntry(configPropertiesFile, "AsciiNonPrint");
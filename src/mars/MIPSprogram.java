@@ -6,6 +6,7 @@
    import mars.mips.hardware.*;
 	
    import java.util.*;
+   import java.util.concurrent.*;
    import java.io.*;
    import java.awt.event.*;
    import javax.swing.*;
@@ -105,6 +106,17 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return filename;
       }
    
+   /**
+    * Associates this program with a source file that is not read, such as one that
+    * an object file was assembled from.  Its list of source statements is empty.
+    * @param file String containing name of MIPS source code file.
+    **/
+    
+       void setFilename(String file) {
+         this.filename = file;
+         this.sourceList = new ArrayList<String>();
+      }
+   
    /**
     * Produces list of tokens that comprise the program.
     * @return ArrayList of TokenList.  Each TokenList is list of tokens generated by
@@ -259,6 +271,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     * @return ArrayList containing one MIPSprogram object for each file to assemble.
     * objects for any additional files (send ArrayList to assembler)
     * @throws ProcessingException Will throw exception if errors occured while reading or tokenizing.
+    * If more than one file has errors, the exception is for the first in the given order.
     **/
    
        public ArrayList prepareFilesForAssembly(ArrayList filenames, String leadFilename, String exceptionHandler) throws ProcessingException {
@@ -268,11 +281,34 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             filenames.add(0, exceptionHandler);
             leadFilePosition = 1;
          }
+         Tokenizer.retainTokenizedSources(filenames);
+         MIPSprogram[] preparees = new MIPSprogram[filenames.size()];
          for (int i=0; i<filenames.size(); i++) {
             String filename = (String) filenames.get(i);  
-            MIPSprogram preparee = (filename.equals(leadFilename)) ? this : new MIPSprogram();
-            preparee.readSource(filename);
-            preparee.tokenize();
+            preparees[i] = (filename.equals(leadFilename)) ? this : new MIPSprogram();
+         }
+         // Reading, .include processing and tokenizing of one file does not depend on
+      	// any other, so with several files they are done in parallel.  Results are
+      	// collected in the original file order.
+         if (preparees.length == 1) {
+            preparees[0].readSource((String) filenames.get(0));
+            preparees[0].tokenize();
+         } 
+         else {
+            ArrayList<ForkJoinTask<ProcessingException>> tasks = new ArrayList<ForkJoinTask<ProcessingException>>();
+            for (int i=0; i<preparees.length; i++) {
+               tasks.add(ForkJoinPool.commonPool().submit(
+                      new PrepareFileTask(preparees[i], (String) filenames.get(i))));
+            }
+            for (int i=0; i<tasks.size(); i++) {
+               ProcessingException pe = tasks.get(i).join();
+               if (pe != null) {
+                  throw pe;
+               }
+            }
+         }
+         for (int i=0; i<preparees.length; i++) {
+            MIPSprogram preparee = preparees[i];
          	// I want "this" MIPSprogram to be the first in the list...except for exception handler
             if (preparee == this && MIPSprogramsToAssemble.size()>0) {
                MIPSprogramsToAssemble.add(leadFilePosition,preparee);
@@ -284,6 +320,29 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return MIPSprogramsToAssemble;
       }
    
+   	// Reads and tokenizes one source file on behalf of prepareFilesForAssembly().
+   	// The outcome is returned rather than thrown so it can be reported in file order.
+       private static class PrepareFileTask implements Callable<ProcessingException> {
+         private MIPSprogram preparee;
+         private String filename;
+      
+          PrepareFileTask(MIPSprogram preparee, String filename) {
+            this.preparee = preparee;
+            this.filename = filename;
+         }
+      
+          public ProcessingException call() {
+            try {
+               preparee.readSource(filename);
+               preparee.tokenize();
+            } 
+                catch (ProcessingException pe) {
+                  return pe;
+               }
+            return null;
+         }
+      }
+   
    /**
     * Assembles the MIPS source program. All files comprising the program must have 
     * already been tokenized.  Assembler warnings are not considered errors.
@@ -313,9 +372,50 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     
        public ErrorList assemble(ArrayList MIPSprogramsToAssemble, boolean extendedAssemblerEnabled,
               boolean warningsAreErrors) throws ProcessingException {
+         return assemble(MIPSprogramsToAssemble, extendedAssemblerEnabled, warningsAreErrors, false);
+      }
+   
+   /**
+    * Assembles the MIPS source program. All files comprising the program must have 
+    * already been tokenized.
+    * @param MIPSprogramsToAssemble ArrayList of MIPSprogram objects, each representing a tokenized source file.
+    * @param extendedAssemblerEnabled A boolean value - true means extended (pseudo) instructions
+    * are permitted in source code and false means they are to be flagged as errors
+    * @param warningsAreErrors A boolean value - true means assembler warnings will be considered errors and terminate
+      the assemble; false means the assembler will produce warning message but otherwise ignore warnings.
+    * @param lean A boolean value - true means token lists are released as soon as the assembler is done
+    * with them, to limit memory use for very large sources.  They are then no longer available from the
+    * MIPSprogram objects or the assembled statements.
+    * @throws ProcessingException Will throw exception if errors occured while assembling.
+    * @return ErrorList containing nothing or only warnings (otherwise would have thrown exception).
+    **/
+    
+       public ErrorList assemble(ArrayList<?> MIPSprogramsToAssemble, boolean extendedAssemblerEnabled,
+              boolean warningsAreErrors, boolean lean) throws ProcessingException {
+         return assemble(MIPSprogramsToAssemble, extendedAssemblerEnabled, warningsAreErrors, lean, null);
+      }
+   
+   /**
+    * Assembles the MIPS source program and links it with object files. All files comprising
+    * the program must have already been tokenized.
+    * @param MIPSprogramsToAssemble ArrayList of MIPSprogram objects, each representing a tokenized source file.
+    * @param extendedAssemblerEnabled A boolean value - true means extended (pseudo) instructions
+    * are permitted in source code and false means they are to be flagged as errors
+    * @param warningsAreErrors A boolean value - true means assembler warnings will be considered errors and terminate
+      the assemble; false means the assembler will produce warning message but otherwise ignore warnings.
+    * @param lean A boolean value - true means token lists are released as soon as the assembler is done
+    * with them, to limit memory use for very large sources.
+    * @param objectFiles ArrayList of ObjectFile objects to be placed after the source files, or null for none.
+    * @throws ProcessingException Will throw exception if errors occured while assembling or linking.
+    * @return ErrorList containing nothing or only warnings (otherwise would have thrown exception).
+    **/
+    
+       public ErrorList assemble(ArrayList<?> MIPSprogramsToAssemble, boolean extendedAssemblerEnabled,
+              boolean warningsAreErrors, boolean lean, ArrayList<ObjectFile> objectFiles) throws ProcessingException {
          this.backStepper = null;
          Assembler asm = new Assembler();
-         this.machineList = asm.assemble(MIPSprogramsToAssemble, extendedAssemblerEnabled, warningsAreErrors);
+         asm.setObjectFiles(objectFiles);
+         this.machineList = asm.assemble(MIPSprogramsToAssemble, extendedAssemblerEnabled, warningsAreErrors, lean);
          this.backStepper = new BackStepper();
          return asm.getErrorList();
       }
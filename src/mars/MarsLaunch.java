@@ -56,6 +56,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  ae<n>  -- terminate MARS with integer exit code <n> if an assemble error occurs.<br>
    	  ascii  -- display memory or register contents interpreted as ASCII
    		   b  -- brief - do not display register/memory address along with contents<br>
+        cache  -- keep assembled program in a file and re-use it while sources are unchanged.<br>
+                  Option has 1 argument, e.g. <tt>cache &lt;file&gt;</tt>.<br>
+          cpi  -- write CPI and instruction mix report (as CSV, or JSON if file name ends .json) at end of run.<br>
+                  Option has 1 argument, e.g. <tt>cpi &lt;file&gt;</tt>.<br>
+     cpitable  -- CPI of each instruction for cpi report, from properties file of lines like <tt>mul = 3</tt>.<br>
+                  Others have CPI 1.  Option has 1 argument, e.g. <tt>cpitable &lt;file&gt;</tt>.<br>
    		   d  -- print debugging statements<br>
            da  -- both a and d<br>
            db  -- MIPS delayed branching is enabled.<br>
@@ -68,18 +74,28 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             h  -- display help.  Use by itself and with no filename</br>
           hex  -- display memory or register contents in hexadecimal (default)<br>
            ic  -- display count of MIPS basic instructions 'executed'");
+           in  -- read syscalls take standard input from a file.  Option has 1 argument,<br>
+                  e.g. <tt>in &lt;file&gt;</tt>.<br>
+         lean  -- release intermediate assembler data as early as possible, for very large sources.<br>
+          lib  -- link object file produced by obj option with the program.  Option has 1 argument,<br>
+                  e.g. <tt>lib &lt;file&gt;</tt>, and may be repeated.<br>
            mc  -- set memory configuration.  Option has 1 argument, e.g.<br>
                   <tt>mc &lt;config$gt;</tt>, where &lt;config$gt; is <tt>Default</tt><br>
                   for the MARS default 32-bit address space, <tt>CompactDataAtZero</tt> for<br>
                   a 32KB address space with data segment at address 0, or <tt>CompactTextAtZero</tt><br>
                   for a 32KB address space with text segment at address 0.<br>
            me  -- display MARS messages to standard err instead of standard out. Can separate via redirection.</br>
+         midi  -- record MIDI syscall tones to a MIDI file instead of playing them.  Option has 1 argument,<br>
+                  e.g. <tt>midi &lt;file&gt;</tt>.<br>
            nc  -- do not display copyright notice (for cleaner redirected/piped output).</br>
    		  np  -- No Pseudo-instructions allowed ("ne" will work also).<br>
+          obj  -- assemble the files into relocatable object file instead of running them.  Option has<br>
+                  1 argument, e.g. <tt>obj &lt;file&gt;</tt>.<br>
    		   p  -- Project mode - assemble all files in the same directory as given file.<br>
    	  se<n>  -- terminate MARS with integer exit code <n> if a simulation (run) error occurs.<br>
            sm  -- Start execution at Main - Execution will start at program statement globally labeled main.<br>
           smc  -- Self Modifying Code - Program can write and branch to either text or data segment<br>
+           vt  -- Virtual Time - Time and Sleep syscalls use simulated time based on instructions executed<br>
            we  -- assembler Warnings will be considered Errors<br>
           <n>  -- where <n> is an integer maximum count of steps to simulate.<br>
                   If 0, negative or not specified, there is no maximum.<br>
@@ -108,6 +124,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private boolean startAtMain; // Whether to start execution at statement labeled 'main' 
       private boolean countInstructions; // Whether to count and report number of instructions executed 
       private boolean selfModifyingCode; // Whether to allow self-modifying code (e.g. write to text segment)
+      private boolean virtualTime; // Whether Time and Sleep syscalls use simulated rather than system time
+      private boolean lean; // Whether to assemble releasing token lists as soon as they are used
       private static final String rangeSeparator = "-";
       private static final int splashDuration = 4000; // time in MS to show splash screen
       private static final int memoryWordsPerLine = 4; // display 4 memory words, tab separated, per line
@@ -122,6 +140,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private int instructionCount;
       private PrintStream out; // stream for display of command line output
       private ArrayList dumpTriples = null; // each element holds 3 arguments for dump option
+      private File cacheFile = null; // assembled program image for cache option
+      private File objectFile = null; // object file to produce for obj option
+      private ArrayList<String> objectFileNames; // object files to link for lib options
+      private File inputFile = null; // standard input for read syscalls for in option
+      private File midiFile = null; // file to record MIDI syscall tones for midi option
+      private File cpiReportFile = null; // file to write CPI report for cpi option
+      private Map<String, Double> instructionCPIs = new HashMap<String, Double>(); // CPIs for cpi report, from cpitable option
       private ArrayList programArgumentList; // optional program args for MIPS program (becomes argc, argv)
       private int assembleErrorExitCode;  // MARS command exit code to return if assemble error occurs
       private int simulateErrorExitCode;// MARS command exit code to return if simulation error occurs
@@ -145,12 +170,15 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             startAtMain = false;
             countInstructions = false;
 				selfModifyingCode = false;
+            virtualTime = false;
+            lean = false;
             instructionCount = 0;
             assembleErrorExitCode = 0;
             simulateErrorExitCode = 0;
             registerDisplayList = new ArrayList();
             memoryDisplayList = new ArrayList();
             filenameList = new ArrayList();
+            objectFileNames = new ArrayList<String>();
             MemoryConfigurations.setCurrentConfiguration(MemoryConfigurations.getDefaultConfiguration());
          	// do NOT use Globals.program for command line MARS -- it triggers 'backstep' log.
             code = new MIPSprogram();  
@@ -311,6 +339,88 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                }
                continue;
             } 
+            if (args[i].toLowerCase().equals("cache")) {
+               if (args.length <= (i+1)) {
+                  out.println("Cache command line argument requires a file name.");
+                  argsOK = false;
+               } 
+               else {
+                  cacheFile = new File(args[++i]);
+               }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("cpi")) {
+               if (args.length <= (i+1)) {
+                  out.println("Cpi command line argument requires a file name.");
+                  argsOK = false;
+               } 
+               else {
+                  cpiReportFile = new File(args[++i]);
+               }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("cpitable")) {
+               if (args.length <= (i+1)) {
+                  out.println("Cpitable command line argument requires a file name.");
+                  argsOK = false;
+               } 
+               else {
+                  File cpiTableFile = new File(args[++i]);
+                  try {
+                     instructionCPIs = mars.tools.CPIReport.readCPITable(cpiTableFile);
+                  } 
+                      catch (IOException e) {
+                        out.println("Error while attempting to read CPI table " + cpiTableFile + "!  " + e.getMessage());
+                        argsOK = false;
+                     } 
+                      catch (IllegalArgumentException e) {
+                        out.println("Error in CPI table " + cpiTableFile + ": " + e.getMessage());
+                        argsOK = false;
+                     }
+               }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("obj")) {
+               if (args.length <= (i+1)) {
+                  out.println("Obj command line argument requires a file name.");
+                  argsOK = false;
+               } 
+               else {
+                  objectFile = new File(args[++i]);
+                  simulate = false;
+               }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("lib")) {
+               if (args.length <= (i+1)) {
+                  out.println("Lib command line argument requires a file name.");
+                  argsOK = false;
+               } 
+               else {
+                  objectFileNames.add(args[++i]);
+               }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("in")) {
+               if (args.length <= (i+1)) {
+                  out.println("In command line argument requires a file name.");
+                  argsOK = false;
+               } 
+               else {
+                  inputFile = new File(args[++i]);
+               }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("midi")) {
+               if (args.length <= (i+1)) {
+                  out.println("Midi command line argument requires a file name.");
+                  argsOK = false;
+               } 
+               else {
+                  midiFile = new File(args[++i]);
+               }
+               continue;
+            } 
             if (args[i].toLowerCase().equals("mc")) {
                String configName = args[++i];
                MemoryConfiguration config = MemoryConfigurations.getConfigurationByName(configName);
@@ -399,10 +509,18 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                selfModifyingCode = true;
                continue;
             }
+            if (args[i].toLowerCase().equals("vt")) {
+               virtualTime = true;
+               continue;
+            }
             if (args[i].toLowerCase().equals("ic")) { // added 19-Jul-2012 DPS
                countInstructions = true;
                continue;
             }
+            if (args[i].toLowerCase().equals("lean")) {
+               lean = true;
+               continue;
+            }
          
          
             if (args[i].indexOf("$") == 0) {
@@ -461,12 +579,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       	
       private boolean runCommand() {
          boolean programRan = false;
+         InstructionProfile instructionProfile = null;
          if (filenameList.size()==0) {
             return programRan;
          }
          try {
             Globals.getSettings().setBooleanSettingNonPersistent(Settings.DELAYED_BRANCHING_ENABLED, delayedBranching);
             Globals.getSettings().setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, selfModifyingCode);
+            Globals.getSettings().setBooleanSettingNonPersistent(Settings.VIRTUAL_TIME, virtualTime);
             File mainFile = new File((String) filenameList.get(0)).getAbsoluteFile();// First file is "main" file
             ArrayList filesToAssemble;
             if (assembleProject) { 
@@ -492,21 +612,93 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             else {
                filesToAssemble = FilenameFinder.getFilenameList(filenameList, FilenameFinder.MATCH_ALL_EXTENSIONS);
             }
-            if (Globals.debug) {
-               out.println("--------  TOKENIZING BEGINS  -----------");
+            if (objectFile != null) {
+               ObjectFile object = ObjectFile.assemble(
+                         code.prepareFilesForAssembly(filesToAssemble, mainFile.getAbsolutePath(), null), 
+                         pseudo, warningsAreErrors);
+               if (object.getWarnings().warningsOccurred()) {
+                  out.println(object.getWarnings().generateWarningReport());
+               }
+               try {
+                  object.save(objectFile);
+               } 
+                   catch (IOException e) {
+                     out.println("Error while attempting to save object file " + objectFile + "!  " + e.getMessage());
+                  }
+               return programRan;
             }
-            ArrayList MIPSprogramsToAssemble = 
-                      code.prepareFilesForAssembly(filesToAssemble, mainFile.getAbsolutePath(), null);		
-            if (Globals.debug) {
-               out.println("--------  ASSEMBLY BEGINS  -----------");
+            // Object files to link are part of what the cache is valid for.
+            ArrayList<ObjectFile> objectFiles = new ArrayList<ObjectFile>();
+            ArrayList<String> cacheKey = new ArrayList<String>();
+            for (Object file : filesToAssemble) {
+               cacheKey.add((String) file);
             }
-         	// Added logic to check for warnings and print if any. DPS 11/28/06
-            ErrorList warnings = code.assemble(MIPSprogramsToAssemble, pseudo, warningsAreErrors);
-            if (warnings != null && warnings.warningsOccurred()) {
-               out.println(warnings.generateWarningReport());
+            for (int i=0; i<objectFileNames.size(); i++) {
+               try {
+                  ObjectFile object = ObjectFile.load(new File(objectFileNames.get(i)));
+                  objectFiles.add(object);
+                  cacheKey.add(object.getName() + "@" + object.getDigest());
+               } 
+                   catch (IOException e) {
+                     out.println("Error while attempting to read object file " + objectFileNames.get(i) + "!  " + e.getMessage());
+                     return programRan;
+                  }
+            }
+            AssembledProgramCache cache = (cacheFile == null) ? null : new AssembledProgramCache(cacheFile);
+            if (cache != null && cache.load(cacheKey, pseudo, warningsAreErrors)) {
+               if (Globals.debug) {
+                  out.println("--------  ASSEMBLED PROGRAM LOADED FROM "+cacheFile+"  -----------");
+               }
+               if (cache.getWarnings().length() > 0) {
+                  out.println(cache.getWarnings());
+               }
+            } 
+            else {
+               if (Globals.debug) {
+                  out.println("--------  TOKENIZING BEGINS  -----------");
+               }
+               ArrayList<?> MIPSprogramsToAssemble = 
+                         code.prepareFilesForAssembly(filesToAssemble, mainFile.getAbsolutePath(), null);		
+               if (Globals.debug) {
+                  out.println("--------  ASSEMBLY BEGINS  -----------");
+               }
+            	// Added logic to check for warnings and print if any. DPS 11/28/06
+               ErrorList warnings = code.assemble(MIPSprogramsToAssemble, pseudo, warningsAreErrors, lean, objectFiles);
+               if (warnings != null && warnings.warningsOccurred()) {
+                  out.println(warnings.generateWarningReport());
+               }
+               if (cache != null) {
+                  try {
+                     cache.save(cacheKey, MIPSprogramsToAssemble, code.getMachineList(), warnings, pseudo, warningsAreErrors);
+                  } 
+                      catch (IOException e) {
+                        out.println("Error while attempting to save assembled program, file " + cacheFile + "!  " + e.getMessage());
+                     }
+               }
             }
             RegisterFile.initializeProgramCounter(startAtMain); // DPS 3/9/09
             if (simulate) {
+               if (inputFile != null) {
+                  try {
+                     SystemIO.setInput(java.nio.file.Files.readAllBytes(inputFile.toPath()));
+                  } 
+                      catch (IOException e) {
+                        out.println("Error while attempting to read input file " + inputFile + "!  " + e.getMessage());
+                        return programRan;
+                     }
+               }
+               if (midiFile != null) {
+                  try {
+                     mars.mips.instructions.syscalls.ToneGenerator.setRecordingFile(midiFile);
+                  } 
+                      catch (IOException e) {
+                        out.println("Error while attempting to write MIDI file!  " + e.getMessage());
+                     }
+               }
+               if (cpiReportFile != null) {
+                  instructionProfile = new InstructionProfile(Globals.instructionSet);
+                  Simulator.setInstructionProfile(instructionProfile);
+               }
                // store program args (if any) in MIPS memory
                new ProgramArgumentList(programArgumentList).storeProgramArguments();
             	// establish observer if specified  
@@ -529,6 +721,23 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                out.println(e.errors().generateErrorAndWarningReport());
                out.println("Processing terminated due to errors.");
             } 
+         if (instructionProfile != null) {
+            Simulator.setInstructionProfile(null);
+            try {
+               new mars.tools.CPIReport(instructionProfile, instructionCPIs).write(cpiReportFile);
+            } 
+                catch (IOException e) {
+                  out.println("Error while attempting to write CPI report " + cpiReportFile + "!  " + e.getMessage());
+               }
+         }
+         if (programRan && midiFile != null) {
+            try {
+               mars.mips.instructions.syscalls.ToneGenerator.close();
+            } 
+                catch (IOException e) {
+                  out.println("Error while attempting to write MIDI file " + midiFile + "!  " + e.getMessage());
+               }
+         }
          return programRan;
       }
    
@@ -792,6 +1001,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          out.println("  ae<n>  -- terminate MARS with integer exit code <n> if an assemble error occurs.");
          out.println("  ascii  -- display memory or register contents interpreted as ASCII codes.");
          out.println("      b  -- brief - do not display register/memory address along with contents");
+         out.println("  cache <file>  -- save the assembled program to <file>, and on later runs load it");
+         out.println("            from there instead of assembling, as long as the source files and");
+         out.println("            the db, mc, np and we options are unchanged.");
+         out.println("    cpi <file>  -- at end of run, write the CPI Calculator report to <file>: frequency,");
+         out.println("            CPI and clock cycles of each instruction, of R, I and J-type, and total.");
+         out.println("            Written as JSON if <file> ends with .json, otherwise as CSV.");
+         out.println("  cpitable <file>  -- CPIs for the cpi report, from properties file <file> with lines");
+         out.println("            like mul = 3.  Instructions not listed have a CPI of 1.");
          out.println("      d  -- display MARS debugging statements");
          out.println("     db  -- MIPS delayed branching is enabled");
          out.println("    dec  -- display memory or register contents in decimal.");
@@ -804,6 +1021,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          out.println("      h  -- display this help.  Use by itself with no filename.");
          out.println("    hex  -- display memory or register contents in hexadecimal (default)");
          out.println("     ic  -- display count of MIPS basic instructions 'executed'");
+         out.println("     in <file>  -- read syscalls take standard input from <file> instead of the console.");
+         out.println("   lean  -- release intermediate assembler data as soon as it is used, to limit");
+         out.println("            memory use when assembling very large (e.g. generated) sources.");
+         out.println("    lib <file>  -- link object file <file>, produced by the obj option, with the");
+         out.println("            program.  Its global labels may be used by the program.  Option may be repeated.");
          out.println("     mc <config>  -- set memory configuration.  Argument <config> is");
          out.println("            case-sensitive and possible values are: Default for the default");
          out.println("            32-bit address space, CompactDataAtZero for a 32KB memory with");
@@ -811,12 +1033,19 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          out.println("            memory with text segment at address 0.");
          out.println("     me  -- display MARS messages to standard err instead of standard out. ");
          out.println("            Can separate messages from program output using redirection");
+         out.println("   midi <file>  -- record MIDI syscall tones (31, 33) to MIDI file <file> instead of");
+         out.println("            playing them, e.g. where there is no sound card.  With vt, times are virtual.");
          out.println("     nc  -- do not display copyright notice (for cleaner redirected/piped output).");
          out.println("     np  -- use of pseudo instructions and formats not permitted");
+         out.println("    obj <file>  -- assemble the files into relocatable object file <file>, for use with");
+         out.println("            the lib option, instead of running them.  It must not use kernel segments,");
+         out.println("            .extern or segment address operands, nor labels defined elsewhere.");
          out.println("      p  -- Project mode - assemble all files in the same directory as given file.");
          out.println("  se<n>  -- terminate MARS with integer exit code <n> if a simulation (run) error occurs.");
          out.println("     sm  -- start execution at statement with global label main, if defined");
          out.println("    smc  -- Self Modifying Code - Program can write and branch to either text or data segment");
+         out.println("     vt  -- Virtual Time - Time and Sleep syscalls use simulated time based on instructions");
+         out.println("            executed, so Sleep does not wait and Time results are the same on every run");
          out.println("    <n>  -- where <n> is an integer maximum count of steps to simulate.");
          out.println("            If 0, negative or not specified, there is no maximum.");
          out.println(" $<reg>  -- where <reg> is number or name (e.g. 5, t3, f10) of register whose ");
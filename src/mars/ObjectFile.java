@@ -0,0 +1,648 @@
+   package mars;
+
+/*
+Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+	import mars.assembler.*;
+	import mars.mips.hardware.*;
+	import mars.mips.instructions.*;
+	import mars.util.*;
+	import java.io.*;
+	import java.security.*;
+	import java.util.*;
+	import java.util.zip.*;
+
+	/**
+	  *  Relocatable object file, holding separately assembled source files (e.g. a library
+	  *  provided with a course) so they need not be assembled again for every program that
+	  *  uses them.  It holds the user text and data segment contents, the global symbols,
+	  *  and a relocation entry for every word that depends on where the text or data is
+	  *  loaded: targets of j and jal, the lui/low half pairs of pseudo-instructions such as
+	  *  la and lw with label operand, and .word label in the data segment.  Branches are
+	  *  relative so need none.  The assembler links object files by placing them after the
+	  *  source files it assembles, as though they were assembled next.
+	  *  <p>
+	  *  Relocation entries are found by assembling the source files three times: at the usual
+	  *  base addresses, with the text segment moved one word and with the data segment moved
+	  *  one doubleword.  A word that differs between them depends on the segment moved.
+	  *  <p>
+	  *  An object file must be self-contained: every label it uses is defined in the files it
+	  *  was assembled from.  It cannot use kernel segments, .extern, or address operands on
+	  *  .text or .data, since those are not relocatable.
+	  **/
+
+    public class ObjectFile {
+      /** Byte boundary on which the assembler places the data segment of an object file. */
+      public static final int DATA_ALIGNMENT = 8;
+      private static final int MAGIC = 0x4D4F424A; // "MOBJ"
+      private static final int FORMAT_VERSION = 2;
+      // segment moves for finding relocation entries
+      private static final int TEXT_MOVE = Instruction.INSTRUCTION_LENGTH;
+      private static final int DATA_MOVE = DATA_ALIGNMENT;
+      // relocation types
+      private static final int JUMP = 0;     // 26-bit target field of j or jal
+      private static final int HIGH_LOW = 1; // low half of address whose high half is in an earlier lui
+      private static final int LOW = 2;      // 16-bit immediate holding a complete address
+      private static final int WORD = 3;     // data segment word holding an address
+      private String name;
+      private String digest;
+      private String fingerprint;
+      private ErrorList warnings;
+      private int textBase, dataBase, textSize;
+      private int[] textOffsets, textWords, sourceIndexes, sourceLines;
+      private String[] sources;
+      private byte[][] basicStatements; // as written by ProgramStatement.writeBasicStatement()
+      private String[] sourceFiles;
+      private int[] dataWords;
+      private String[] symbolNames;
+      private int[] symbolOffsets;
+      private boolean[] symbolInData;
+      private int[] relocationTypes, relocationIndexes, relocationValues, relocationPairs;
+      private boolean[] relocationInData;
+
+       private ObjectFile() {
+      }
+
+   	/**
+   	 * Assemble the given source files into an object file.
+   	 * @param programs MIPSprogram objects, each a tokenized source file, as produced by
+   	 * MIPSprogram.prepareFilesForAssembly()
+   	 * @param extendedAssemblerEnabled whether pseudo-instructions are allowed
+   	 * @param warningsAreErrors whether assembler warnings are treated as errors
+   	 * @return the object file, not yet saved
+   	 * @throws ProcessingException if there are assembly errors, or the program is not relocatable
+   	 */
+       public static ObjectFile assemble(ArrayList<?> programs, boolean extendedAssemblerEnabled, boolean warningsAreErrors)
+              throws ProcessingException {
+         Image image = new Image(programs, 0, 0, extendedAssemblerEnabled, warningsAreErrors);
+         Image textMoved = new Image(programs, TEXT_MOVE, 0, extendedAssemblerEnabled, warningsAreErrors);
+         Image dataMoved = new Image(programs, 0, DATA_MOVE, extendedAssemblerEnabled, warningsAreErrors);
+         ErrorList errors = new ErrorList();
+         MIPSprogram program = fileProgram(((MIPSprogram) programs.get(0)).getFilename());
+         ObjectFile object = new ObjectFile();
+         object.fingerprint = fingerprint();
+         object.warnings = image.warnings;
+         object.textBase = image.textBase;
+         object.dataBase = image.dataBase;
+         object.textSize = image.textEnd - image.textBase;
+         object.dataWords = image.data;
+         // Layout must move with its segment and nothing else.
+         if (textMoved.statements.size() != image.statements.size() || dataMoved.statements.size() != image.statements.size() ||
+             textMoved.data.length != image.data.length || dataMoved.data.length != image.data.length) {
+            errors.add(new ErrorMessage(program, 0, 0, "object file layout depends on load address"));
+            throw new ProcessingException(errors);
+         }
+         int numStatements = image.statements.size();
+         object.textOffsets = new int[numStatements];
+         object.textWords = new int[numStatements];
+         object.sourceIndexes = new int[numStatements];
+         object.sourceLines = new int[numStatements];
+         object.sources = new String[numStatements];
+         object.basicStatements = new byte[numStatements][];
+         LinkedHashMap<String,Integer> sourceIndex = new LinkedHashMap<String,Integer>();
+         for (int i=0; i<numStatements; i++) {
+            ProgramStatement statement = image.statements.get(i);
+            if (textMoved.statements.get(i).getAddress() != statement.getAddress() + TEXT_MOVE ||
+                dataMoved.statements.get(i).getAddress() != statement.getAddress()) {
+               errors.add(new ErrorMessage(statement, "statement is not relocatable (kernel segment or .text address operand)"));
+               continue;
+            }
+            String file = statement.getSourceMIPSprogram().getFilename();
+            if (!sourceIndex.containsKey(file)) {
+               sourceIndex.put(file, sourceIndex.size());
+            }
+            object.textOffsets[i] = statement.getAddress() - image.textBase;
+            object.textWords[i] = statement.getBinaryStatement();
+            object.sourceIndexes[i] = sourceIndex.get(file);
+            object.sourceLines[i] = statement.getSourceLine();
+            object.sources[i] = statement.getSource();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+               statement.writeBasicStatement(new DataOutputStream(bytes));
+            } 
+                catch (IOException e) { // cannot happen
+                  throw new RuntimeException(e);
+               }
+            object.basicStatements[i] = bytes.toByteArray();
+         }
+         object.sourceFiles = sourceIndex.keySet().toArray(new String[sourceIndex.size()]);
+         for (String symbol : image.symbols.keySet()) {
+            Symbol s = image.symbols.get(symbol);
+            int move = (s.getType()) ? DATA_MOVE : TEXT_MOVE;
+            if (textMoved.symbols.get(symbol).getAddress() != s.getAddress() + ((s.getType()) ? 0 : move) ||
+                dataMoved.symbols.get(symbol).getAddress() != s.getAddress() + ((s.getType()) ? move : 0)) {
+               errors.add(new ErrorMessage(program, 0, 0,
+                          "label \""+s.getName()+"\" is not relocatable (kernel segment, .extern or .data address operand)"));
+            }
+         }
+         if (errors.errorsOccurred()) {
+            throw new ProcessingException(errors);
+         }
+         object.findRelocations(image, textMoved, dataMoved, errors, program);
+         if (errors.errorsOccurred()) {
+            throw new ProcessingException(errors);
+         }
+         ArrayList<?> globals = Globals.symbolTable.getAllSymbols(); // from last assemble, same labels
+         object.symbolNames = new String[globals.size()];
+         object.symbolOffsets = new int[globals.size()];
+         object.symbolInData = new boolean[globals.size()];
+         for (int i=0; i<globals.size(); i++) {
+            Symbol s = image.symbols.get(":"+((Symbol) globals.get(i)).getName());
+            object.symbolNames[i] = s.getName();
+            object.symbolInData[i] = s.getType();
+            object.symbolOffsets[i] = s.getAddress() - ((s.getType()) ? image.dataBase : image.textBase);
+         }
+         return object;
+      }
+
+   // Compare the three images word by word.  A word that changed when a segment moved
+   // holds an address in that segment.  Check that it changed by exactly the move, as
+   // the relocation entry would change it, so nothing is relocated that should not be.
+       private void findRelocations(Image image, Image textMoved, Image dataMoved, ErrorList errors, MIPSprogram program) {
+         ArrayList<int[]> relocations = new ArrayList<int[]>(); // type, index, value, pair, inData
+         HashSet<Integer> pairedHighs = new HashSet<Integer>();
+         int[] textMovedWords = textMoved.textWords();
+         int[] dataMovedWords = dataMoved.textWords();
+         for (int i=0; i<textWords.length; i++) {
+            int word = textWords[i];
+            int textMovedWord = textMovedWords[i];
+            int dataMovedWord = dataMovedWords[i];
+            if (textMovedWord == word && dataMovedWord == word) {
+               continue;
+            }
+            ProgramStatement statement = image.statements.get(i);
+            boolean inData = (dataMovedWord != word);
+            int movedWord = (inData) ? dataMovedWord : textMovedWord;
+            int move = (inData) ? DATA_MOVE : TEXT_MOVE;
+            int base = (inData) ? dataBase : textBase;
+            int[] movedWords = (inData) ? dataMovedWords : textMovedWords;
+            int opcode = word >>> 26;
+            int address, movedAddress, pair = -1, type;
+            if (textMovedWord != word && dataMovedWord != word) {
+               type = -1;
+               address = movedAddress = 0;
+            }
+            else if (opcode == 2 || opcode == 3) { // j, jal
+               int pc = textBase + textOffsets[i] + Instruction.INSTRUCTION_LENGTH;
+               address = (pc & 0xF0000000) | ((word & 0x03FFFFFF) << 2);
+               movedAddress = ((pc + TEXT_MOVE) & 0xF0000000) | ((movedWord & 0x03FFFFFF) << 2);
+               type = JUMP;
+            }
+            else if (opcode == 0x0F) { // lui, relocated along with its low half
+               continue;
+            }
+            else if (opcode != 0 && opcode != 0x11 && (word >>> 16) == (movedWord >>> 16)) { // I-format immediate
+               int rs = (word >>> 21) & 0x1F;
+               for (int h=i-1; h>=0 && h>=i-3; h--) {
+                  if (sourceLines[h] != sourceLines[i] || sourceIndexes[h] != sourceIndexes[i]) {
+                     break;
+                  }
+                  if ((textWords[h] >>> 26) == 0x0F && ((textWords[h] >>> 16) & 0x1F) == rs) {
+                     pair = h;
+                     break;
+                  }
+               }
+               int high = (pair < 0) ? 0 : textWords[pair] << 16;
+               int movedHigh = (pair < 0) ? 0 : movedWords[pair] << 16;
+               address = high + lowHalf(word);
+               movedAddress = movedHigh + lowHalf(movedWord);
+               type = (pair < 0) ? LOW : HIGH_LOW;
+            }
+            else {
+               type = -1;
+               address = movedAddress = 0;
+            }
+            if (type < 0 || movedAddress != address + move) {
+               errors.add(new ErrorMessage(statement, "statement depends on load address but is not relocatable"));
+               continue;
+            }
+            if (pair >= 0) {
+               pairedHighs.add(pair);
+            }
+            relocations.add(new int[] {type, i, address - base, pair, (inData) ? 1 : 0});
+         }
+         for (int i=0; i<textWords.length; i++) {
+            if ((textWords[i] >>> 26) == 0x0F && !pairedHighs.contains(i) &&
+                (textMovedWords[i] != textWords[i] || dataMovedWords[i] != textWords[i])) {
+               errors.add(new ErrorMessage(image.statements.get(i),
+                          "statement depends on load address but is not relocatable"));
+            }
+         }
+         for (int i=0; i<dataWords.length; i++) {
+            int word = dataWords[i];
+            boolean textDependent = (textMoved.data[i] != word);
+            boolean dataDependent = (dataMoved.data[i] != word);
+            if (!textDependent && !dataDependent) {
+               continue;
+            }
+            if ((textDependent && dataDependent) ||
+                (textDependent && textMoved.data[i] != word + TEXT_MOVE) ||
+                (dataDependent && dataMoved.data[i] != word + DATA_MOVE)) {
+               errors.add(new ErrorMessage(program, 0, 0, "data segment word at address "+
+                          Binary.intToHexString(dataBase + i * Memory.WORD_LENGTH_BYTES)+
+                          " depends on load address but is not relocatable"));
+               continue;
+            }
+            relocations.add(new int[] {WORD, i, word - ((dataDependent) ? dataBase : textBase), -1, (dataDependent) ? 1 : 0});
+         }
+         relocationTypes = new int[relocations.size()];
+         relocationIndexes = new int[relocations.size()];
+         relocationValues = new int[relocations.size()];
+         relocationPairs = new int[relocations.size()];
+         relocationInData = new boolean[relocations.size()];
+         for (int i=0; i<relocations.size(); i++) {
+            int[] r = relocations.get(i);
+            relocationTypes[i] = r[0];
+            relocationIndexes[i] = r[1];
+            relocationValues[i] = r[2];
+            relocationPairs[i] = r[3];
+            relocationInData[i] = (r[4] != 0);
+         }
+      }
+
+   	/**
+   	 * Place this object file's text and data at the given addresses, relocating them, and
+   	 * define its global symbols in the global symbol table.  The text statements are
+   	 * written to memory and returned; the data is written to memory.  Statements display
+   	 * as they did when the object file was assembled, with relocated addresses.
+   	 * @param newTextBase address in user text segment at which to place text
+   	 * @param newDataBase address in user data segment at which to place data, a multiple of DATA_ALIGNMENT
+   	 * @param errors list to which to add any link errors
+   	 * @return ArrayList of the ProgramStatement objects placed in the text segment
+   	 */
+       public ArrayList<ProgramStatement> link(int newTextBase, int newDataBase, ErrorList errors) {
+         ArrayList<ProgramStatement> statements = new ArrayList<ProgramStatement>();
+         MIPSprogram objectProgram = fileProgram(name);
+         if (!fingerprint.equals(fingerprint())) {
+            errors.add(new ErrorMessage(objectProgram, 0, 0,
+                       "object file was assembled by another MARS version, or with other db or mc settings"));
+            return statements;
+         }
+         MIPSprogram[] sourcePrograms = new MIPSprogram[sourceFiles.length];
+         for (int i=0; i<sourceFiles.length; i++) {
+            sourcePrograms[i] = fileProgram(sourceFiles[i]);
+         }
+         int[] text = textWords.clone();
+         int[] data = dataWords.clone();
+         int[] basicOperands = new int[text.length]; // relocated address or value shown in basic statement
+         boolean[] relocated = new boolean[text.length];
+         HashMap<Integer,Integer> highs = new HashMap<Integer,Integer>(); // index of lui -> its high half
+         for (int i=0; i<relocationTypes.length; i++) {
+            int index = relocationIndexes[i];
+            int address = ((relocationInData[i]) ? newDataBase : newTextBase) + relocationValues[i];
+            String error = null;
+            switch (relocationTypes[i]) {
+               case JUMP :
+                  if ((((newTextBase + textOffsets[index] + Instruction.INSTRUCTION_LENGTH) ^ address) & 0xF0000000) != 0) {
+                     error = "jump target out of range";
+                  }
+                  text[index] = (text[index] & 0xFC000000) | ((address >>> 2) & 0x03FFFFFF);
+                  basicOperands[index] = address;
+                  relocated[index] = true;
+                  break;
+               case HIGH_LOW :
+                  Integer high = highs.get(relocationPairs[i]);
+                  if (high == null) {
+                     high = ((zeroExtended(text[index]) ? address : address + 0x8000) >>> 16) & 0xFFFF;
+                     highs.put(relocationPairs[i], high);
+                     text[relocationPairs[i]] = (text[relocationPairs[i]] & 0xFFFF0000) | high;
+                     basicOperands[relocationPairs[i]] = high;
+                     relocated[relocationPairs[i]] = true;
+                  }
+                  error = setLowHalf(text, index, address - (high << 16));
+                  basicOperands[index] = lowHalf(text[index]);
+                  relocated[index] = true;
+                  break;
+               case LOW :
+                  error = setLowHalf(text, index, address);
+                  basicOperands[index] = lowHalf(text[index]);
+                  relocated[index] = true;
+                  break;
+               case WORD :
+                  data[index] = address;
+                  break;
+            }
+            if (error != null) {
+               errors.add(new ErrorMessage(sourcePrograms[sourceIndexes[index]], sourceLines[index], 0, error));
+            }
+         }
+         try {
+            for (int i=0; i<text.length; i++) {
+               ProgramStatement statement = new ProgramStatement(text[i], newTextBase + textOffsets[i]);
+               statement.setSourceLine(sourcePrograms[sourceIndexes[i]], sourceLines[i]);
+               statement.setSource(sources[i]);
+               statement.readBasicStatement(new DataInputStream(new ByteArrayInputStream(basicStatements[i])));
+               if (relocated[i]) {
+                  statement.setBasicStatementOperand(basicOperands[i]);
+               }
+               Globals.memory.setStatement(statement.getAddress(), statement);
+               statements.add(statement);
+            }
+            for (int i=0; i<data.length; i++) {
+               if (data[i] != 0) { // as with .space, memory need not be allocated for zeroes
+                  Globals.memory.setRawWord(newDataBase + i * Memory.WORD_LENGTH_BYTES, data[i]);
+               }
+            }
+         }
+             catch (AddressErrorException e) {
+               errors.add(new ErrorMessage(objectProgram, 0, 0, "Invalid address for object file: " + e.getAddress()));
+            } 
+             catch (IOException e) {
+               errors.add(new ErrorMessage(objectProgram, 0, 0, "Damaged basic statement in object file"));
+            }
+         for (int i=0; i<symbolNames.length; i++) {
+            Globals.symbolTable.addSymbol(new Token(TokenTypes.IDENTIFIER, symbolNames[i], objectProgram, 0, 0),
+               ((symbolInData[i]) ? newDataBase : newTextBase) + symbolOffsets[i], symbolInData[i], errors);
+         }
+         return statements;
+      }
+
+   	/**
+   	 * Length in bytes of the text placed by link().
+   	 * @return text segment length
+   	 */
+       public int getTextSize() {
+         return textSize;
+      }
+
+   	/**
+   	 * Length in bytes of the data placed by link(), a multiple of the word length.
+   	 * @return data segment length
+   	 */
+       public int getDataSize() {
+         return dataWords.length * Memory.WORD_LENGTH_BYTES;
+      }
+
+   	/**
+   	 * Name of the file this object file was loaded from or saved to.
+   	 * @return file name
+   	 */
+       public String getName() {
+         return name;
+      }
+
+   	/**
+   	 * SHA-256 of the file contents, as a hex String.  Valid after load().
+   	 * @return digest of the object file
+   	 */
+       public String getDigest() {
+         return digest;
+      }
+
+   	/**
+   	 * Assembler warnings produced by assemble().  Not saved.
+   	 * @return ErrorList holding warnings, empty if loaded from file
+   	 */
+       public ErrorList getWarnings() {
+         return warnings;
+      }
+
+   	/**
+   	 * Read an object file.
+   	 * @param file the object file
+   	 * @return the object file
+   	 * @throws IOException if the file cannot be read or is not a MARS object file
+   	 */
+       public static ObjectFile load(File file) throws IOException {
+         ObjectFile object = new ObjectFile();
+         object.name = file.getPath();
+         object.warnings = new ErrorList();
+         MessageDigest md;
+         try {
+            md = MessageDigest.getInstance("SHA-256");
+         }
+             catch (NoSuchAlgorithmException e) {
+               throw new IOException(e.toString());
+            }
+         DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(
+                                 new DigestInputStream(new FileInputStream(file), md))));
+         try {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+               throw new IOException(file + " is not a MARS object file");
+            }
+            object.fingerprint = in.readUTF();
+            object.textBase = in.readInt();
+            object.dataBase = in.readInt();
+            object.textSize = in.readInt();
+            object.sourceFiles = new String[in.readInt()];
+            for (int i=0; i<object.sourceFiles.length; i++) {
+               object.sourceFiles[i] = in.readUTF();
+            }
+            int numStatements = in.readInt();
+            object.textOffsets = new int[numStatements];
+            object.textWords = new int[numStatements];
+            object.sourceIndexes = new int[numStatements];
+            object.sourceLines = new int[numStatements];
+            object.sources = new String[numStatements];
+            object.basicStatements = new byte[numStatements][];
+            for (int i=0; i<numStatements; i++) {
+               object.textOffsets[i] = in.readInt();
+               object.textWords[i] = in.readInt();
+               object.sourceIndexes[i] = in.readInt();
+               object.sourceLines[i] = in.readInt();
+               object.sources[i] = in.readUTF();
+               object.basicStatements[i] = new byte[in.readInt()];
+               in.readFully(object.basicStatements[i]);
+            }
+            object.dataWords = new int[in.readInt()];
+            for (int i=0; i<object.dataWords.length; i++) {
+               object.dataWords[i] = in.readInt();
+            }
+            int numSymbols = in.readInt();
+            object.symbolNames = new String[numSymbols];
+            object.symbolOffsets = new int[numSymbols];
+            object.symbolInData = new boolean[numSymbols];
+            for (int i=0; i<numSymbols; i++) {
+               object.symbolNames[i] = in.readUTF();
+               object.symbolOffsets[i] = in.readInt();
+               object.symbolInData[i] = in.readBoolean();
+            }
+            int numRelocations = in.readInt();
+            object.relocationTypes = new int[numRelocations];
+            object.relocationIndexes = new int[numRelocations];
+            object.relocationValues = new int[numRelocations];
+            object.relocationPairs = new int[numRelocations];
+            object.relocationInData = new boolean[numRelocations];
+            for (int i=0; i<numRelocations; i++) {
+               object.relocationTypes[i] = in.readByte();
+               object.relocationIndexes[i] = in.readInt();
+               object.relocationValues[i] = in.readInt();
+               object.relocationPairs[i] = in.readInt();
+               object.relocationInData[i] = in.readBoolean();
+            }
+            while (in.read() >= 0) { // digest covers the whole file
+            }
+         }
+         finally {
+            in.close();
+         }
+         StringBuilder hex = new StringBuilder();
+         for (byte b : md.digest()) {
+            hex.append(String.format("%02x", b));
+         }
+         object.digest = hex.toString();
+         return object;
+      }
+
+   	/**
+   	 * Write this object file.
+   	 * @param file the file to write
+   	 * @throws IOException if the file could not be written
+   	 */
+       public void save(File file) throws IOException {
+         name = file.getPath();
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))));
+         try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(fingerprint);
+            out.writeInt(textBase);
+            out.writeInt(dataBase);
+            out.writeInt(textSize);
+            out.writeInt(sourceFiles.length);
+            for (int i=0; i<sourceFiles.length; i++) {
+               out.writeUTF(sourceFiles[i]);
+            }
+            out.writeInt(textWords.length);
+            for (int i=0; i<textWords.length; i++) {
+               out.writeInt(textOffsets[i]);
+               out.writeInt(textWords[i]);
+               out.writeInt(sourceIndexes[i]);
+               out.writeInt(sourceLines[i]);
+               out.writeUTF(sources[i]);
+               out.writeInt(basicStatements[i].length);
+               out.write(basicStatements[i]);
+            }
+            out.writeInt(dataWords.length);
+            for (int i=0; i<dataWords.length; i++) {
+               out.writeInt(dataWords[i]);
+            }
+            out.writeInt(symbolNames.length);
+            for (int i=0; i<symbolNames.length; i++) {
+               out.writeUTF(symbolNames[i]);
+               out.writeInt(symbolOffsets[i]);
+               out.writeBoolean(symbolInData[i]);
+            }
+            out.writeInt(relocationTypes.length);
+            for (int i=0; i<relocationTypes.length; i++) {
+               out.writeByte(relocationTypes[i]);
+               out.writeInt(relocationIndexes[i]);
+               out.writeInt(relocationValues[i]);
+               out.writeInt(relocationPairs[i]);
+               out.writeBoolean(relocationInData[i]);
+            }
+         }
+         finally {
+            out.close();
+         }
+      }
+
+   // Value of 16-bit immediate as used in forming an address: zero-extended by andi, ori
+   // and xori, sign-extended by everything else (addi, addiu, loads and stores).
+       private static int lowHalf(int word) {
+         return (zeroExtended(word)) ? word & 0xFFFF : (short) word;
+      }
+
+       private static boolean zeroExtended(int word) {
+         int opcode = word >>> 26;
+         return opcode == 0x0C || opcode == 0x0D || opcode == 0x0E;
+      }
+
+   // Store value in 16-bit immediate of text[index].  Returns error message if it does not fit.
+       private static String setLowHalf(int[] text, int index, int value) {
+         text[index] = (text[index] & 0xFFFF0000) | (value & 0xFFFF);
+         return (value == lowHalf(text[index])) ? null : "address does not fit in 16-bit immediate";
+      }
+
+   // Stands for a whole file in error messages that do not refer to a line of it.
+       private static MIPSprogram fileProgram(String filename) {
+         MIPSprogram program = new MIPSprogram();
+         program.setFilename(filename);
+         return program;
+      }
+   
+   // Identifies the MARS version and the settings that affect the code generated.
+       private static String fingerprint() {
+         return Globals.version +
+                ";db=" + Globals.getSettings().getBooleanSetting(Settings.DELAYED_BRANCHING_ENABLED) +
+                ";mc=" + MemoryConfigurations.getCurrentConfiguration().getConfigurationIdentifier();
+      }
+
+   // The program as assembled with user segments moved from their usual base addresses.
+       private static class Image {
+         private int textBase, textEnd, dataBase;
+         private ArrayList<ProgramStatement> statements;
+         private int[] data;
+         private HashMap<String,Symbol> symbols; // global symbols keyed by ":name", local by "file:name"
+         private ErrorList warnings;
+
+          private Image(ArrayList<?> programs, int textMove, int dataMove, boolean extendedAssemblerEnabled,
+                        boolean warningsAreErrors) throws ProcessingException {
+            Assembler assembler = new Assembler();
+            assembler.setSegmentOffsets(textMove, dataMove);
+            statements = assembler.assemble(programs, extendedAssemblerEnabled, warningsAreErrors, false);
+            warnings = assembler.getErrorList();
+            textBase = Memory.textBaseAddress + textMove;
+            textEnd = assembler.getTextEndAddress();
+            dataBase = Memory.dataBaseAddress + dataMove;
+            int dataEnd = assembler.getDataEndAddress();
+            data = new int[Math.max(0, (dataEnd - dataBase + Memory.WORD_LENGTH_BYTES - 1) / Memory.WORD_LENGTH_BYTES)];
+            try {
+               for (int i=0; i<data.length; i++) {
+                  data[i] = Globals.memory.getRawWord(dataBase + i * Memory.WORD_LENGTH_BYTES);
+               }
+            }
+                catch (AddressErrorException e) {
+                  ErrorList errors = new ErrorList();
+                  errors.add(new ErrorMessage(fileProgram(((MIPSprogram) programs.get(0)).getFilename()), 0, 0,
+                             "Invalid address for data segment: " + e.getAddress()));
+                  throw new ProcessingException(errors);
+               }
+            symbols = new HashMap<String,Symbol>();
+            addSymbols("", Globals.symbolTable.getAllSymbols());
+            for (int i=0; i<programs.size(); i++) {
+               MIPSprogram program = (MIPSprogram) programs.get(i);
+               addSymbols(program.getFilename(), program.getLocalSymbolTable().getAllSymbols());
+            }
+         }
+
+          private void addSymbols(String file, ArrayList<?> list) {
+            for (int i=0; i<list.size(); i++) {
+               Symbol s = (Symbol) list.get(i);
+               symbols.put(file + ":" + s.getName(), s);
+            }
+         }
+
+          private int[] textWords() {
+            int[] words = new int[statements.size()];
+            for (int i=0; i<words.length; i++) {
+               words[i] = statements.get(i).getBinaryStatement();
+            }
+            return words;
+         }
+      }
+   }
@@ -3,6 +3,7 @@
    import mars.mips.instructions.*;
    import mars.mips.hardware.*;
    import mars.util.*;
+   import java.io.*;
    import java.util.*;
 
 /*
@@ -443,6 +444,58 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public void setSource(String src) {
          source = src;
       }
+
+    /**
+     * associates MIPS source file and line number.  Used when a statement is rebuilt
+     * from its binary machine code, so runtime error messages can still refer to
+     * the source.
+     * @param sourceMIPSprogram The MIPSprogram object for the source file.
+     * @param sourceLine The line number within that file.
+     **/
+
+       void setSourceLine(MIPSprogram sourceMIPSprogram, int sourceLine) {
+         this.sourceMIPSprogram = sourceMIPSprogram;
+         this.sourceLine = sourceLine;
+      }
+
+    /**
+     * Writes the basic statement as displayed, so that a statement rebuilt from its
+     * binary machine code can later be given the same display with readBasicStatement().
+     * Used when an assembled program is saved to a file.
+     * @param out The stream to write to.
+     * @throws IOException if the stream could not be written.
+     **/
+
+       void writeBasicStatement(DataOutputStream out) throws IOException {
+         basicStatementList.write(out);
+      }
+
+    /**
+     * Reads a basic statement written by writeBasicStatement() and displays it in place of
+     * the one built from binary machine code, which shows jump targets as field values and
+     * immediates unsigned.  Basic Assembly and machine statements are set to match.
+     * @param in The stream to read from.
+     * @throws IOException if the stream could not be read.
+     **/
+
+       void readBasicStatement(DataInputStream in) throws IOException {
+         basicStatementList = new BasicStatementList();
+         basicStatementList.read(in);
+         basicAssemblyStatement = basicStatementList.toDecimalString();
+         machineStatement = Binary.intToBinaryString(binaryStatement);
+      }
+
+    /**
+     * Replaces the address or value in the basic statement, after the binary machine code
+     * has been relocated.  Relocated statements have only one: a jump target or the high
+     * or low half of an address.
+     * @param value The new address or value.
+     **/
+
+       void setBasicStatementOperand(int value) {
+         basicStatementList.setNumber(value);
+         basicAssemblyStatement = basicStatementList.toDecimalString();
+      }
    
     
     /**
@@ -533,6 +586,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public TokenList getStrippedTokenList() {
          return strippedTokenList;
       }
+    /**
+     * Releases the original and stripped token lists.  They are needed only while the
+     * statement is being assembled, so the assembler's lean mode drops them once the
+     * machine statement is stored in memory.  Both lists are null afterwards.
+     **/
+       public void discardTokenLists() {
+         this.originalTokenList = this.strippedTokenList = null;
+      }
     /**
      * Produces Instruction object corresponding to this statement's operator.
      * @return The Instruction that matches the operator used in this statement.
@@ -686,6 +747,55 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
           void addValue(int value) {
             list.add(new ListElement(2, null, value));
          }
+
+         // The Basic Assembly statement: addresses and values in decimal.
+          String toDecimalString() {
+            StringBuffer result = new StringBuffer();
+            for (int i=0; i<list.size(); i++) {
+               ListElement e = (ListElement) list.get(i);
+               result.append((e.type == 0) ? e.sValue : Integer.toString(e.iValue));
+            }
+            return result.toString();
+         }
+      
+          void setNumber(int value) {
+            for (int i=0; i<list.size(); i++) {
+               ListElement e = (ListElement) list.get(i);
+               if (e.type != 0) {
+                  e.iValue = value;
+               }
+            }
+         }
+      
+          void write(DataOutputStream out) throws IOException {
+            out.writeInt(list.size());
+            for (int i=0; i<list.size(); i++) {
+               ListElement e = (ListElement) list.get(i);
+               out.writeByte(e.type);
+               if (e.type == 0) {
+                  out.writeUTF(e.sValue);
+               } 
+               else {
+                  out.writeInt(e.iValue);
+               }
+            }
+         }
+      
+          void read(DataInputStream in) throws IOException {
+            int size = in.readInt();
+            for (int i=0; i<size; i++) {
+               int type = in.readByte();
+               if (type == 0) {
+                  addString(in.readUTF());
+               } 
+               else if (type == 1) {
+                  addAddress(in.readInt());
+               } 
+               else {
+                  addValue(in.readInt());
+               }
+            }
+         }
       
           public String toString() {
             int addressBase =  (Globals.getSettings().getBooleanSetting(Settings.DISPLAY_ADDRESSES_IN_HEX)) ? mars.venus.NumberDisplayBaseChooser.HEXADECIMAL : mars.venus.NumberDisplayBaseChooser.DECIMAL;
@@ -0,0 +1,79 @@
+   package mars;
+
+/*
+Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining 
+a copy of this software and associated documentation files (the 
+"Software"), to deal in the Software without restriction, including 
+without limitation the rights to use, copy, modify, merge, publish, 
+distribute, sublicense, and/or sell copies of the Software, and to 
+permit persons to whom the Software is furnished to do so, subject 
+to the following conditions:
+
+The above copyright notice and this permission notice shall be 
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION 
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+	/**
+	  *  Immutable snapshot of the settings consulted while MIPS instructions execute.
+	  *  Settings builds a new one whenever one of these values changes, and the
+	  *  Simulator captures the current one when a simulation starts, so the
+	  *  per-instruction code reads final fields instead of going through
+	  *  Globals.getSettings() and the boolean settings array each time.
+	  **/
+	  
+    public final class RuntimeSettings {
+      private final boolean delayedBranchingEnabled;
+      private final boolean selfModifyingCodeEnabled;
+      private final boolean virtualTimeEnabled;
+   
+   	/**
+   	 * Create snapshot of the given settings' current values.
+   	 * @param settings the Settings object to copy from
+   	 */
+       RuntimeSettings(Settings settings) {
+         this.delayedBranchingEnabled = settings.getBooleanSetting(Settings.DELAYED_BRANCHING_ENABLED);
+         this.selfModifyingCodeEnabled = settings.getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED);
+         this.virtualTimeEnabled = settings.getBooleanSetting(Settings.VIRTUAL_TIME);
+      }
+   
+   	/**
+   	 * Whether delayed branching was enabled when this snapshot was taken.
+   	 * @return true if delayed branching is enabled, false otherwise.
+   	 */
+       public boolean getDelayedBranchingEnabled() {
+         return delayedBranchingEnabled;
+      }
+   
+   	/**
+   	 * Whether a program could write and execute code in the text segment
+   	 * when this snapshot was taken.
+   	 * @return true if self-modifying code is enabled, false otherwise.
+   	 */
+       public boolean getSelfModifyingCodeEnabled() {
+         return selfModifyingCodeEnabled;
+      }
+   
+   	/**
+   	 * Whether the Time and Sleep syscalls used simulated time when this
+   	 * snapshot was taken.
+   	 * @return true if virtual time is enabled, false otherwise.
+   	 */
+       public boolean getVirtualTimeEnabled() {
+         return virtualTimeEnabled;
+      }
+   }
@@ -112,6 +112,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     /** Flag to determine whether a program can write binary code to the text or data segment and
         execute that code.  */
       public static final int SELF_MODIFYING_CODE_ENABLED = 20;	
+    /** Flag to determine whether the Time and Sleep syscalls use simulated time derived from
+        the number of instructions executed (see VirtualClock) instead of the system clock. */
+      public static final int VIRTUAL_TIME = 21;
    
       // NOTE: key sequence must match up with labels above which are used for array indexes!
       private static String[] booleanSettingsKeys = {"ExtendedAssembler", "BareMachine", "AssembleOnOpen", "AssembleAll",
@@ -120,7 +123,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          												"WarningsAreErrors", "ProgramArguments", "DataSegmentHighlighting",
          												"RegistersHighlighting", "StartAtMain", "EditorCurrentLineHighlighting",
          												"PopupInstructionGuidance", "PopupSyscallInput", "GenericTextEditor", 
-         												"AutoIndent", "SelfModifyingCode" };
+         												"AutoIndent", "SelfModifyingCode", "VirtualTime" };
    
       /** Last resort default values for boolean settings; will use only  if neither
    	 *  the Preferences nor the properties file work. If you wish to change them, 
@@ -129,7 +132,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 */
       public static boolean[] defaultBooleanSettingsValues = { // match the above list by position
                                               true, false, false, false, false, true, true, false, false, 
-         												 true, false, false, true, true, false, true, true, false, false, true, false };
+         												 true, false, false, true, true, false, true, true, false, false, true, false, false };
    
       // STRING SETTINGS.  Each array position has associated name.
    	/** Current specified exception handler file (a MIPS assembly source file) */
@@ -251,6 +254,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    
       
       private boolean[] booleanSettingsValues;
+      // Rebuilt on every change to a boolean setting it copies; see getRuntimeSettings().
+      private volatile RuntimeSettings runtimeSettings;
       private String[] stringSettingsValues;
       private String[] fontFamilySettingsValues;	
       private String[] fontStyleSettingsValues;	
@@ -298,6 +303,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       }
    
    
+   /**
+     * Return immutable snapshot of the settings used while MIPS instructions execute.
+     * A new snapshot is built whenever one of its values changes, so callers
+     * may keep it for the duration of a simulation.
+     * @return current RuntimeSettings snapshot
+     */
+       public RuntimeSettings getRuntimeSettings() {
+         return runtimeSettings;
+      }
+   
    /**
      * Return whether backstepping is permitted at this time.  Backstepping is ability to undo execution
      * steps one at a time.  Available only in the IDE.  This is not a persistent setting and is not under
@@ -988,6 +1003,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public void setBooleanSettingNonPersistent(int id, boolean value) {
          if (id >=0 && id < booleanSettingsValues.length) {
             booleanSettingsValues[id] = value;
+            runtimeSettings = new RuntimeSettings(this);
          } 
          else {
             throw new IllegalArgumentException("Invalid boolean setting ID");
@@ -1010,6 +1026,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       	// setting (lost when MARS terminates).  For persistent, use
       	// the internalSetBooleanSetting() method instead.
          booleanSettingsValues[DELAYED_BRANCHING_ENABLED] = value;
+         runtimeSettings = new RuntimeSettings(this);
       }
 
    
@@ -1155,6 +1172,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             System.out.println("MARS System error: unable to read Settings.properties defaults. Using built-in defaults.");
          }
          getSettingsFromPreferences();	
+         runtimeSettings = new RuntimeSettings(this);
       }
    	
    	// Default values.  Will be replaced if available from property file or Preferences object.
@@ -1180,6 +1198,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        private void internalSetBooleanSetting(int settingIndex, boolean value) {
          if (value != booleanSettingsValues[settingIndex]) {
             booleanSettingsValues[settingIndex] = value;
+            runtimeSettings = new RuntimeSettings(this);
             saveBooleanSetting(settingIndex); 
 				setChanged(); 
 				notifyObservers();
@@ -8,6 +8,7 @@
    import mars.ErrorMessage;
    import mars.Globals;
    import mars.MIPSprogram;
+   import mars.ObjectFile;
    import mars.ProcessingException;
    import mars.ProgramStatement;
    import mars.mips.hardware.AddressErrorException;
@@ -56,8 +57,12 @@
  **/
 
    public class Assembler {
-      private ArrayList machineList;
+      private ArrayList<ProgramStatement> machineList;
       private ErrorList errors;
+      private boolean lean; // release intermediate lists as soon as they are used
+      private ErrorList codeErrors; // machine code errors deferred to end of second pass in lean mode
+      private ArrayList<ObjectFile> objectFiles; // ObjectFile objects to link with the source files, or null
+      private int textOffset, dataOffset; // from usual base of user text and data segments
       private boolean inDataSegment; // status maintained by parser
       private boolean inMacroSegment; // status maintained by parser, true if in
    								// macro definition segment
@@ -123,6 +128,55 @@
          return this.assemble(programFiles, extendedAssemblerEnabled, warningsAreErrors);
       }
    
+   /**
+    * Sets the object files to be linked with the source files by the next assemble.
+    * Each is placed in the user text and data segments after the source files, as
+    * though it were assembled next, and its global symbols may be referenced from them.
+    * 
+    * @param objectFiles
+    *            An ArrayList of ObjectFile objects, or null for none.
+    * 
+    * @see ObjectFile
+    */
+      public void setObjectFiles(ArrayList<ObjectFile> objectFiles) {
+         this.objectFiles = objectFiles;
+      }
+   
+   /**
+    * Sets how far past their usual base addresses the user text and data segments
+    * of the programs assembled from now on begin.  Used to find out which words of
+    * an object file depend on where it is loaded.
+    * 
+    * @param textOffset
+    *            offset in bytes from Memory.textBaseAddress, a multiple of 4
+    * @param dataOffset
+    *            offset in bytes from Memory.dataBaseAddress
+    */
+      public void setSegmentOffsets(int textOffset, int dataOffset) {
+         this.textOffset = textOffset;
+         this.dataOffset = dataOffset;
+      }
+   
+   /**
+    * Get address following the last statement placed in the user text segment by the
+    * program last assembled (unless placed there by address operand on .text).
+    * 
+    * @return user text segment address at the end of the assemble.
+    */
+      public int getTextEndAddress() {
+         return textAddress.address[textAddress.USER];
+      }
+   
+   /**
+    * Get address following the last item placed in the user data segment by the
+    * program last assembled (unless placed there by address operand on .data).
+    * 
+    * @return user data segment address at the end of the assemble.
+    */
+      public int getDataEndAddress() {
+         return dataAddress.address[dataAddress.USER];
+      }
+   
    /**
     * Get list of assembler errors and warnings
     * 
@@ -181,20 +235,59 @@
     **/
       public ArrayList assemble(ArrayList tokenizedProgramFiles, boolean extendedAssemblerEnabled,
        	boolean warningsAreErrors) throws ProcessingException {
+         return assemble(tokenizedProgramFiles, extendedAssemblerEnabled, warningsAreErrors, false);
+      }
+   
+   /**
+    * Parse and generate machine code for the given MIPS program. All source
+    * files must have already been tokenized.
+    * 
+    * @param tokenizedProgramFiles
+    *            An ArrayList of MIPSprogram objects, each produced from a
+    *            different source code file, representing the program source.
+    * @param extendedAssemblerEnabled
+    *            A boolean value that if true permits use of extended (pseudo)
+    *            instructions in the source code. If false, these are flagged
+    *            as errors.
+    * @param warningsAreErrors
+    *            A boolean value - true means assembler warnings will be
+    *            considered errors and terminate the assemble; false means the
+    *            assembler will produce warning message but otherwise ignore
+    *            warnings.
+    * @param lean
+    *            A boolean value - true means each source line's tokens are
+    *            released once the first pass has parsed it, and each statement's
+    *            machine code is stored in memory as soon as the second pass
+    *            generates it, after which its tokens are released too.  Peak
+    *            memory then follows the size of the assembled program rather
+    *            than that of the source.  The token lists of the MIPSprogram
+    *            objects and of the returned statements are not available afterwards,
+    *            so this is intended for command-line use only.
+    * @return An ArrayList representing the assembled program. Each member of
+    *         the list is a ProgramStatement object containing the source,
+    *         intermediate, and machine binary representations of a program
+    *         statement. Returns null if incoming array list is null or empty.
+    * 
+    * @see ProgramStatement
+    **/
+      public ArrayList<ProgramStatement> assemble(ArrayList<?> tokenizedProgramFiles, boolean extendedAssemblerEnabled,
+       	boolean warningsAreErrors, boolean lean) throws ProcessingException {
       	
          if (tokenizedProgramFiles == null || tokenizedProgramFiles.size() == 0)
             return null;
-         textAddress = new UserKernelAddressSpace(Memory.textBaseAddress,
+         textAddress = new UserKernelAddressSpace(Memory.textBaseAddress + textOffset,
             Memory.kernelTextBaseAddress);
-         dataAddress = new UserKernelAddressSpace(Memory.dataBaseAddress,
+         dataAddress = new UserKernelAddressSpace(Memory.dataBaseAddress + dataOffset,
             Memory.kernelDataBaseAddress);
          externAddress = Memory.externBaseAddress;
          currentFileDataSegmentForwardReferences = new DataSegmentForwardReferences();
          accumulatedDataSegmentForwardReferences = new DataSegmentForwardReferences();
          Globals.symbolTable.clear();
          Globals.memory.clear();
-         this.machineList = new ArrayList();
+         this.machineList = new ArrayList<ProgramStatement>();
          this.errors = new ErrorList(); 
+         this.lean = lean;
+         this.codeErrors = lean ? new ErrorList() : this.errors;
          if (Globals.debug)
             System.out.println("Assembler first pass begins:");
       // PROCESS THE FIRST ASSEMBLY PASS FOR ALL SOURCE FILES BEFORE PROCEEDING
@@ -223,7 +316,7 @@
          // tokenList is an ArrayList of TokenList objects, one per source line;
          // each ArrayList in tokenList consists of Token objects.
             ArrayList<SourceLine> sourceLineList = fileCurrentlyBeingAssembled.getSourceLineList();
-            ArrayList tokenList = fileCurrentlyBeingAssembled.getTokenList();
+            ArrayList<?> tokenList = fileCurrentlyBeingAssembled.getTokenList();
             ArrayList parsedList = fileCurrentlyBeingAssembled.createParsedList();
          // each file keeps its own macro definitions
             MacroPool macroPool = fileCurrentlyBeingAssembled.createMacroPool();
@@ -245,6 +338,13 @@
                if (statements != null) {
                   parsedList.addAll(statements);
                }
+            // Lines of a macro body are still needed when its .end_macro is reached.
+               if (lean && !inMacroSegment) {
+                  tokenList.set(i, null);
+               }
+            }
+            if (lean) {
+               tokenList.clear();
             }
             if (inMacroSegment) {
                errors.add(new ErrorMessage(fileCurrentlyBeingAssembled,
@@ -264,7 +364,21 @@
             currentFileDataSegmentForwardReferences.clear();
          } // end of first-pass loop for each MIPSprogram
       
-      
+      // Link object files as though they were assembled after the source files. Their global
+      // symbols must be defined before remaining forward references are resolved.  Their
+      // statements are complete, so they join the machine list after machine code generation.
+         ArrayList<ProgramStatement> linkedStatements = new ArrayList<ProgramStatement>();
+         if (objectFiles != null) {
+            for (int i = 0; i < objectFiles.size(); i++) {
+               ObjectFile objectFile = objectFiles.get(i);
+               int textBase = textAddress.address[textAddress.USER];
+               int dataBase = dataAddress.address[dataAddress.USER];
+               dataBase += (ObjectFile.DATA_ALIGNMENT - dataBase % ObjectFile.DATA_ALIGNMENT) % ObjectFile.DATA_ALIGNMENT;
+               linkedStatements.addAll(objectFile.link(textBase, dataBase, errors));
+               textAddress.address[textAddress.USER] = textBase + objectFile.getTextSize();
+               dataAddress.address[dataAddress.USER] = dataBase + objectFile.getDataSize();
+            }
+         }
       
       // Have processed all source files. Attempt to resolve any remaining forward label
       // references from global symbol table. Those that remain unresolved are undefined
@@ -284,7 +398,7 @@
             if (errors.errorLimitExceeded())
                break;
             this.fileCurrentlyBeingAssembled = (MIPSprogram) tokenizedProgramFiles.get(fileIndex);
-            ArrayList parsedList = fileCurrentlyBeingAssembled.getParsedList();
+            ArrayList<?> parsedList = fileCurrentlyBeingAssembled.getParsedList();
             ProgramStatement statement;
             for (int i = 0; i < parsedList.size(); i++) {
                statement = (ProgramStatement) parsedList.get(i);
@@ -292,15 +406,18 @@
                if (errors.errorsOccurred()) {
                   throw new ProcessingException(errors);
                }
+               if (lean) {
+                  parsedList.set(i, null);
+               }
                if (statement.getInstruction() instanceof BasicInstruction) {
-                  this.machineList.add(statement);
+                  this.addMachineStatement(statement);
                } 
                else {
                // It is a pseudo-instruction:
                // 1. Fetch its basic instruction template list
                // 2. For each template in the list,
                // 2a. substitute operands from source statement
-               // 2b. tokenize the statement generated by 2a.
+               // 2b. giving the tokens of the statement (templates are precompiled).
                // 2d. call parseLine() to generate basic instrction
                // 2e. add returned programStatement to the list
                // The templates, and the instructions generated by filling
@@ -325,37 +442,35 @@
                
                // ////////////////////////////////////////////////////////////////////////////
                // If we are using compact memory config and there is a compact expansion, use it
-                  ArrayList templateList;
+                  ArrayList<ExtendedInstruction.TranslationTemplate> templateList;
                   if (compactTranslationCanBeApplied(statement)) {
-                     templateList = inst.getCompactBasicIntructionTemplateList();
+                     templateList = inst.getCompactTranslationTemplates();
                   } 
                   else {
-                     templateList = inst.getBasicIntructionTemplateList();
+                     templateList = inst.getTranslationTemplates();
                   }
                
                // subsequent ProgramStatement constructor needs the correct text segment address.
                   textAddress.set(statement.getAddress());
                // Will generate one basic instruction for each template in the list.
                   for (int instrNumber = 0; instrNumber < templateList.size(); instrNumber++) {
-                     String instruction = ExtendedInstruction.makeTemplateSubstitutions(
-                        this.fileCurrentlyBeingAssembled,
-                        (String) templateList.get(instrNumber), theTokenList);
+                  // Each template is compiled, so substituting operands from the source
+                  // statement yields the tokens of the generated basic statement directly.
+                     TokenList newTokenList = templateList.get(instrNumber).expand(
+                        this.fileCurrentlyBeingAssembled, theTokenList, sourceLine, errors);
                   // 23 Jan 2008 by DPS. Template substitution may result in no instruction.
                   // If this is the case, skip remainder of loop iteration. This should only
                   // happen if template substitution was for "nop" instruction but delayed branching
                   // is disabled so the "nop" is not generated.
-                     if (instruction == null || instruction == "") {
+                     if (newTokenList == null) {
                         continue;
                      }
                   
                   // All substitutions have been made so we have generated
                   // a valid basic instruction!
                      if (Globals.debug)
-                        System.out.println("PSEUDO generated: " + instruction);
-                  // For generated instruction: tokenize, build program
-                  // statement, add to list.
-                     TokenList newTokenList = new Tokenizer().tokenizeLine(sourceLine,
-                        instruction, errors,false);
+                        System.out.println("PSEUDO generated: " + newTokenList);
+                  // For generated instruction: build program statement, add to list.
                      ArrayList instrMatches = this.matchInstruction(newTokenList.get(0));
                      Instruction instr = OperandFormat.bestOperandMatch(newTokenList,
                         instrMatches);
@@ -366,34 +481,35 @@
                         newTokenList, instr, textAddress.get(), statement.getSourceLine());
                      textAddress.increment(Instruction.INSTRUCTION_LENGTH);
                      ps.buildBasicStatementFromBasicInstruction(errors);
-                     this.machineList.add(ps);
+                     this.addMachineStatement(ps);
                   } // end of FOR loop, repeated for each template in list.
                } // end of ELSE part for extended instruction.
               	
             } // end of assembler second pass.
+            if (lean) {
+               parsedList.clear();
+            }
          }
-         if (Globals.debug)
-            System.out.println("Code generation begins");
-      ///////////// THIRD MAJOR STEP IS PRODUCE MACHINE CODE FROM ASSEMBLY //////////
-      // Generates machine code statements from the list of basic assembler statements
-      // and writes the statement to memory.
-         ProgramStatement statement;
-         for (int i = 0; i < this.machineList.size(); i++) {
-            if (errors.errorLimitExceeded())
-               break;
-            statement = (ProgramStatement) this.machineList.get(i);
-            statement.buildMachineStatementFromBasicStatement(errors);
+      // In lean mode the machine code has already been generated along with the second pass,
+      // but its errors are reported only now, as they would be by the third step.
+         if (lean) {
+            for (int i = 0; i < codeErrors.getErrorMessages().size(); i++) {
+               errors.add((ErrorMessage) codeErrors.getErrorMessages().get(i));
+            }
+         } 
+         else {
             if (Globals.debug)
-               System.out.println(statement);
-            try {
-               Globals.memory.setStatement(statement.getAddress(), statement);
-            } 
-               catch (AddressErrorException e) {
-                  Token t = statement.getOriginalTokenList().get(0);
-                  errors.add(new ErrorMessage(t.getSourceMIPSprogram(), t.getSourceLine(), t
-                     .getStartPos(), "Invalid address for text segment: " + e.getAddress()));
-               }
+               System.out.println("Code generation begins");
+         ///////////// THIRD MAJOR STEP IS PRODUCE MACHINE CODE FROM ASSEMBLY //////////
+         // Generates machine code statements from the list of basic assembler statements
+         // and writes the statement to memory.
+            for (int i = 0; i < this.machineList.size(); i++) {
+               if (errors.errorLimitExceeded())
+                  break;
+               this.storeMachineStatement(this.machineList.get(i));
+            }
          }
+         this.machineList.addAll(linkedStatements);
       // Aug. 24, 2005 Ken Vollmar
       // Ensure that I/O "file descriptors" are initialized for a new program run
          SystemIO.resetFiles();
@@ -415,6 +531,33 @@
          return this.machineList;
       } // assemble()
    
+   // //////////////////////////////////////////////////////////////////////
+   // Adds basic statement generated by second pass to the machine list.  In lean mode
+   // its machine code is also generated and stored right away, so its tokens can go.
+      private void addMachineStatement(ProgramStatement statement) {
+         this.machineList.add(statement);
+         if (lean && !codeErrors.errorLimitExceeded()) {
+            this.storeMachineStatement(statement);
+            statement.discardTokenLists();
+         }
+      }
+   
+   // //////////////////////////////////////////////////////////////////////
+   // Generates machine code for basic statement and writes the statement to memory.
+      private void storeMachineStatement(ProgramStatement statement) {
+         statement.buildMachineStatementFromBasicStatement(codeErrors);
+         if (Globals.debug)
+            System.out.println(statement);
+         try {
+            Globals.memory.setStatement(statement.getAddress(), statement);
+         } 
+            catch (AddressErrorException e) {
+               Token t = statement.getOriginalTokenList().get(0);
+               codeErrors.add(new ErrorMessage(t.getSourceMIPSprogram(), t.getSourceLine(), t
+                  .getStartPos(), "Invalid address for text segment: " + e.getAddress()));
+            }
+      }
+   
    // //////////////////////////////////////////////////////////////////////
    // Will check for duplicate text addresses, which can happen inadvertantly when using
    // operand on .text directive. Will generate error message for each one that occurs.
@@ -3,6 +3,7 @@ package mars.assembler;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 
 import mars.ErrorList;
 import mars.ErrorMessage;
@@ -57,6 +58,22 @@ public class Macro {
  */
    private ArrayList<String> args;
 
+/**
+ * for each line of macro body, the tokens to be substituted on expansion, last
+ * token first.  Built by {@link #readyForCommit()}.
+ */
+   private Substitution[][] substitutions;
+/**
+ * substituted lines of macro body for each list of argument values used so far.
+ * Only lines whose substitution depends on nothing but the arguments are kept.
+ */
+   private HashMap<ArrayList<String>, String[]> expansions;
+   private TokenList expansionArgs;
+   private String[] expansionLines;
+   private static final int MAX_EXPANSIONS = 1000;
+   private static final int UNKNOWN_PARAMETER = -1;
+   private static final int LABEL = -2;
+
    public Macro() {
       name = "";
       program = null;
@@ -144,6 +161,8 @@ public class Macro {
  * Substitutes macro arguments in a line of source code inside macro
  * definition to be parsed after macro expansion. <br>
  * Also appends "_M#" to all labels defined inside macro body where # is value of <code>counter</code>
+ * <br>
+ * A line without such labels is substituted only once for each list of argument values.
  * 
  * @param line
  *            source line number in macro definition to be substituted
@@ -156,36 +175,68 @@ public class Macro {
  */
 
    public String getSubstitutedLine(int line, TokenList args, long counter, ErrorList errors) {
-      TokenList tokens = (TokenList) program.getTokenList().get(line - 1);
+      int index = line - fromLine - 1;
+      Substitution[] lineSubstitutions = substitutions[index];
+      if (!dependsOnArgumentsOnly(lineSubstitutions)) {
+         return substitute(line, lineSubstitutions, args, counter, errors);
+      }
+      String[] lines = getExpansion(args);
+      if (lines[index] == null) {
+         lines[index] = substitute(line, lineSubstitutions, args, counter, errors);
+      }
+      return lines[index];
+   }
+
+   private String substitute(int line, Substitution[] lineSubstitutions, TokenList args, long counter, ErrorList errors) {
       String s = program.getSourceLine(line);
-   
-      for (int i = tokens.size() - 1; i >= 0; i--) {
-         Token token = tokens.get(i);
-         if (tokenIsMacroParameter(token.getValue(), true)) {
-            int repl = -1;
-            for (int j = 0; j < this.args.size(); j++) {
-               if (this.args.get(j).equals(token.getValue())) {
-                  repl = j;
-                  break;
-               }
-            }
-            String substitute = token.getValue();
-            if (repl != -1)
-               substitute = args.get(repl + 1).toString();
-            else {
-               errors.add(new ErrorMessage(program, token.getSourceLine(),
-                  token.getStartPos(), "Unknown macro parameter"));
-            } 
-            s = replaceToken(s, token, substitute);
+      for (int i = 0; i < lineSubstitutions.length; i++) {
+         Token token = lineSubstitutions[i].token;
+         int repl = lineSubstitutions[i].arg;
+         if (repl == LABEL) {
+            s = replaceToken(s, token, token.getValue() + "_M" + counter);
+         } 
+         else if (repl == UNKNOWN_PARAMETER) {
+            errors.add(new ErrorMessage(program, token.getSourceLine(),
+               token.getStartPos(), "Unknown macro parameter"));
          } 
-         else if (tokenIsMacroLabel(token.getValue())){
-            String substitute = token.getValue()+"_M"+counter;
-            s=replaceToken(s, token, substitute); 
+         else {
+            s = replaceToken(s, token, args.get(repl + 1).toString());
          }
       }
       return s;
    }
 
+/**
+ * returns the substituted lines of macro body kept for the argument values in
+ * <code>args</code>.  Lines not yet substituted for these values are null.
+ * Parser passes the same <code>args</code> for every line of an expansion.
+ */
+   private String[] getExpansion(TokenList args) {
+      if (args != expansionArgs) {
+         ArrayList<String> values = new ArrayList<String>(args.size() - 1);
+         for (int i = 1; i < args.size(); i++) {
+            values.add(args.get(i).getValue());
+         }
+         expansionLines = expansions.get(values);
+         if (expansionLines == null) {
+            expansionLines = new String[substitutions.length];
+            if (expansions.size() < MAX_EXPANSIONS) {
+               expansions.put(values, expansionLines);
+            }
+         }
+         expansionArgs = args;
+      }
+      return expansionLines;
+   }
+
+   private static boolean dependsOnArgumentsOnly(Substitution[] lineSubstitutions) {
+      for (int i = 0; i < lineSubstitutions.length; i++) {
+         if (lineSubstitutions[i].arg < 0) {
+            return false;
+         }
+      }
+      return true;
+   }
 
 /**
  * returns true if <code>value</code> is name of a label defined in this macro's body.
@@ -244,9 +295,48 @@ public class Macro {
 
 /**
  * Operations to be done on this macro before it is committed in macro pool.
+ * Finds the tokens of each line of macro body that expansion will substitute.
  */
    public void readyForCommit() {
       Collections.sort(labels);
+      substitutions = new Substitution[Math.max(0, toLine - fromLine - 1)][];
+      for (int line = fromLine + 1; line < toLine; line++) {
+         TokenList tokens = (TokenList) program.getTokenList().get(line - 1);
+         ArrayList<Substitution> lineSubstitutions = new ArrayList<Substitution>();
+         for (int i = tokens.size() - 1; i >= 0; i--) {
+            Token token = tokens.get(i);
+            if (tokenIsMacroParameter(token.getValue(), true)) {
+               int repl = UNKNOWN_PARAMETER;
+               for (int j = 0; j < this.args.size(); j++) {
+                  if (this.args.get(j).equals(token.getValue())) {
+                     repl = j;
+                     break;
+                  }
+               }
+               lineSubstitutions.add(new Substitution(token, repl));
+            } 
+            else if (tokenIsMacroLabel(token.getValue())) {
+               lineSubstitutions.add(new Substitution(token, LABEL));
+            }
+         }
+         substitutions[line - fromLine - 1] = lineSubstitutions.toArray(new Substitution[lineSubstitutions.size()]);
+      }
+      expansions = new HashMap<ArrayList<String>, String[]>();
+   }
+
+/**
+ * A token of macro body to be replaced on expansion: by the argument at index
+ * <code>arg</code>, or if <code>arg</code> is LABEL by the label made unique
+ * for the expansion.
+ */
+   private static class Substitution {
+      private final Token token;
+      private final int arg;
+   
+      Substitution(Token token, int arg) {
+         this.token = token;
+         this.arg = arg;
+      }
    }
 
 
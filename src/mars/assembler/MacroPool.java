@@ -1,6 +1,7 @@
    package mars.assembler;
 
    import java.util.ArrayList;
+   import java.util.HashMap;
    import java.util.Stack;
 
    import mars.ErrorList;
@@ -38,7 +39,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  * {@link MacroPool#BeginMacro(String, int)} and skips source code lines until
  * reaches <code>.end_macro</code> directive. then calls
  * {@link MacroPool#CommitMacro(int)} and the macro information stored in a
- * {@link Macro} instance will be added to {@link #macroList}. <br>
+ * {@link Macro} instance will be added to {@link #macrosByName}. <br>
  * Each {@link MIPSprogram} will have one {@link MacroPool}<br>
  * NOTE: Forward referencing macros (macro expansion before its definition in
  * source code) and Nested macro definition (defining a macro inside other macro
@@ -49,9 +50,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     public class MacroPool {
       private MIPSprogram program;
    /**
-    * List of macros defined by now
+    * Macros defined by now, indexed by name.  Each list is in order of definition.
     */
-      private ArrayList<Macro> macroList;
+      private HashMap<String, ArrayList<Macro>> macrosByName;
    /**
     * @see #BeginMacro(String, int)
     */
@@ -70,7 +71,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    */
        public MacroPool(MIPSprogram mipsProgram) {
          this.program = mipsProgram;
-         macroList = new ArrayList<Macro>();
+         macrosByName = new HashMap<String, ArrayList<Macro>>();
          callStack=new ArrayList<Integer>();
          callStackOrigLines=new ArrayList<Integer>();
          current = null;
@@ -81,7 +82,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     * This method will be called by parser when reached <code>.macro</code>
     * directive.<br>
     * Instantiates a new {@link Macro} object and stores it in {@link #current}
-    * . {@link #current} will be added to {@link #macroList} by
+    * . {@link #current} will be added to {@link #macrosByName} by
     * {@link #CommitMacro(int)}
     * 
     * @param nameToken
@@ -99,7 +100,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    /**
     * This method will be called by parser when reached <code>.end_macro</code>
     * directive. <br>
-    * Adds/Replaces {@link #current} macro into the {@link #macroList}.
+    * Adds/Replaces {@link #current} macro into the {@link #macrosByName}.
     * 
     * @param endToken
     *            Token containing <code>.end_macro</code> directive in source code
@@ -109,7 +110,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          current.setToLine(endToken.getSourceLine());
          current.setOriginalToLine(endToken.getOriginalSourceLine());
          current.readyForCommit();
-         macroList.add(current);
+         ArrayList<Macro> sameName = macrosByName.get(current.getName());
+         if (sameName == null) {
+            sameName = new ArrayList<Macro>(1);
+            macrosByName.put(current.getName(), sameName);
+         }
+         sameName.add(current);
          current = null;
       }
    	   		
@@ -126,9 +132,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             return null;
          Macro ret = null;
          Token firstToken = tokens.get(0);
-         for (Macro macro : macroList) {
-            if (macro.getName().equals(firstToken.getValue())
-            	&& macro.getArgs().size() + 1 == tokens.size()
+         ArrayList<Macro> sameName = macrosByName.get(firstToken.getValue());
+         if (sameName == null)
+            return null;
+         for (Macro macro : sameName) {
+            if (macro.getArgs().size() + 1 == tokens.size()
             	//&& macro.getToLine() < callerLine  // condition removed; doesn't work nicely in conjunction with .include, and does not seem necessary.  DPS 8-MAR-2013
             	&& (ret == null || ret.getFromLine() < macro.getFromLine()))
                ret = macro;
@@ -142,10 +150,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     *         by now, not concerning arguments count.
     */
        public boolean matchesAnyMacroName(String value) {
-         for (Macro macro : macroList)
-            if (macro.getName().equals(value))
-               return true;
-         return false;
+         return macrosByName.containsKey(value);
       }
    
    
@@ -39,7 +39,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     public class SymbolTable {
       private static String startLabel = "main";
       private String filename;
-      private ArrayList table;
+      // Symbols keyed by name, in order of addition.  Names are unique within a table.
+      private LinkedHashMap<String, Symbol> table;
+      // Reverse index: address to the symbols having it, each list in order of addition.
+      private TreeMap<Integer, ArrayList<Symbol>> addressIndex;
+      // Partitioned views, built on demand and discarded whenever the table changes.
+      private ArrayList<Symbol> dataSymbols, textSymbols, allSymbols;
    	// Note -1 is legal 32 bit address (0xFFFFFFFF) but it is the high address in 
    	// kernel address space so highly unlikely that any symbol will have this as 
    	// its associated address!
@@ -52,7 +57,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 */
        public SymbolTable(String filename) {
          this.filename = filename;
-         this.table = new ArrayList();
+         this.clear();
       }    
    	/**
    	  *  Adds a Symbol object into the array of Symbols.
@@ -69,7 +74,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          } 
          else {
             Symbol s= new Symbol(label, address, b);
-            table.add(s);
+            table.put(label, s);
+            addToAddressIndex(s);
+            invalidateViews();
             if (Globals.debug) System.out.println("The symbol " + label + " with address " + address + " has been added to the "+this.filename+" symbol table.");
          }
       }
@@ -84,12 +91,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	
        public void removeSymbol(Token token) {
          String label = token.getValue();
-         for (int i=0; i < table.size(); i++) {
-            if (((Symbol)(table.get(i))).getName().equals(label)){
-               table.remove(i);
-               if (Globals.debug) System.out.println("The symbol " + label + " has been removed from the "+this.filename+" symbol table.");
-               break;
-            }
+         Symbol s = table.remove(label);
+         if (s != null) {
+            removeFromAddressIndex(s);
+            invalidateViews();
+            if (Globals.debug) System.out.println("The symbol " + label + " has been removed from the "+this.filename+" symbol table.");
          }
          return; 
       }
@@ -101,12 +107,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  *   @return The memory address of the label given, or NOT_FOUND if not found in symbol table.
    	  **/
        public int getAddress(String s){
-         for(int i=0; i < table.size(); i++){
-            if (((Symbol)(table.get(i))).getName().equals(s)){
-               return((Symbol) table.get(i)).getAddress();
-            }
-         }
-         return NOT_FOUND;
+         Symbol symbol = table.get(s);
+         return (symbol == null) ? NOT_FOUND : symbol.getAddress();
       }
       
    	/**
@@ -129,12 +131,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        **/
        
        public Symbol getSymbol(String s){
-         for(int i=0; i < table.size(); i++){
-            if (((Symbol)(table.get(i))).getName().equals(s)){
-               return (Symbol) table.get(i);
-            }
-         }
-         return null;
+         return table.get(s);
       }
    
       /**
@@ -151,14 +148,21 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
              catch (NumberFormatException e) {
                return null;
             }
-         for(int i=0; i < table.size(); i++){
-            if (((Symbol)(table.get(i))).getAddress() == address){
-               return (Symbol) table.get(i);
-            }
-         }
-         return null;
+         return getSymbolGivenAddress(address);
       }      
    
+      /**
+       * Produce Symbol object from symbol table that has the given address.  If more
+       * than one does, the one added first is returned.
+       * @param address the address
+       * @return Symbol object having requested address, null if address not found in symbol table.
+       **/
+       
+       public Symbol getSymbolGivenAddress(int address){
+         ArrayList<Symbol> symbols = addressIndex.get(Integer.valueOf(address));
+         return (symbols == null) ? null : symbols.get(0);
+      }
+   
       /**
        * Produce Symbol object from either local or global symbol table that has the 
    	 * given address.
@@ -173,47 +177,43 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    
       
    	/**
-   	  *  For obtaining the Data Symbols.
+   	  *  For obtaining the Data Symbols.  The list is cached until the table
+   	  *  changes, so callers must not modify it.
    	  *   @return An ArrayList of Symbol objects.
    	  **/
       
        public ArrayList getDataSymbols(){
-         ArrayList list= new ArrayList();
-         for(int i=0; i<table.size(); i++){
-            if(((Symbol)table.get(i)).getType()){
-               list.add(table.get(i));
-            }	
+         if (dataSymbols == null) {
+            partitionSymbols();
          }
-         return list;
+         return dataSymbols;
       }
       
    	
    	/**
-   	  *  For obtaining the Text Symbols.
+   	  *  For obtaining the Text Symbols.  The list is cached until the table
+   	  *  changes, so callers must not modify it.
    	  *   @return An ArrayList of Symbol objects.
    	  **/
       
        public ArrayList getTextSymbols(){
-         ArrayList list= new ArrayList();
-         for(int i=0; i<table.size(); i++){
-            if(!((Symbol)table.get(i)).getType()){
-               list.add(table.get(i));
-            }	
+         if (textSymbols == null) {
+            partitionSymbols();
          }
-         return list;
+         return textSymbols;
       }		
    	
    	/**
-   	  *  For obtaining all the Symbols.
+   	  *  For obtaining all the Symbols.  The list is cached until the table
+   	  *  changes, so callers must not modify it.
    	  *   @return An ArrayList of Symbol objects.
    	  **/
       
        public ArrayList getAllSymbols(){
-         ArrayList list= new ArrayList();
-         for(int i=0; i<table.size(); i++){
-            list.add(table.get(i));
+         if (allSymbols == null) {
+            partitionSymbols();
          }
-         return list;
+         return allSymbols;
       }	
    
    	 /**
@@ -230,7 +230,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    		**/
    	 
        public void clear(){
-         table= new ArrayList();
+         table = new LinkedHashMap<String, Symbol>();
+         addressIndex = new TreeMap<Integer, ArrayList<Symbol>>();
+         invalidateViews();
       }
    	
    /**
@@ -243,14 +245,80 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     */
    
        public void fixSymbolTableAddress(int originalAddress, int replacementAddress) {
-         Symbol label = getSymbolGivenAddress(Integer.toString(originalAddress));
-         while (label != null) {
-            label.setAddress(replacementAddress);
-            label = getSymbolGivenAddress(Integer.toString(originalAddress));
+         if (originalAddress == replacementAddress) {
+            return;
+         }
+         ArrayList<Symbol> moved = addressIndex.remove(Integer.valueOf(originalAddress));
+         if (moved == null) {
+            return;
+         }
+         for (int i=0; i<moved.size(); i++) {
+            moved.get(i).setAddress(replacementAddress);
+         }
+         ArrayList<Symbol> existing = addressIndex.get(Integer.valueOf(replacementAddress));
+         if (existing == null) {
+            addressIndex.put(Integer.valueOf(replacementAddress), moved);
+         } 
+         else {
+            // Rare: both addresses have labels.  Rebuild in order of addition.
+            ArrayList<Symbol> merged = new ArrayList<Symbol>(existing.size() + moved.size());
+            for (Symbol s : table.values()) {
+               if (s.getAddress() == replacementAddress) {
+                  merged.add(s);
+               }
+            }
+            addressIndex.put(Integer.valueOf(replacementAddress), merged);
          }
          return;
       }
    
+      // Add symbol to the end of the list for its address.
+       private void addToAddressIndex(Symbol s) {
+         Integer key = Integer.valueOf(s.getAddress());
+         ArrayList<Symbol> symbols = addressIndex.get(key);
+         if (symbols == null) {
+            symbols = new ArrayList<Symbol>(1);
+            addressIndex.put(key, symbols);
+         }
+         symbols.add(s);
+      }
+   
+       private void removeFromAddressIndex(Symbol s) {
+         Integer key = Integer.valueOf(s.getAddress());
+         ArrayList<Symbol> symbols = addressIndex.get(key);
+         if (symbols != null) {
+            symbols.remove(s);
+            if (symbols.isEmpty()) {
+               addressIndex.remove(key);
+            }
+         }
+      }
+   
+       private void invalidateViews() {
+         dataSymbols = null;
+         textSymbols = null;
+         allSymbols = null;
+      }
+   
+      // Build all three cached views in one pass, in order of addition.
+       private void partitionSymbols() {
+         ArrayList<Symbol> data = new ArrayList<Symbol>();
+         ArrayList<Symbol> text = new ArrayList<Symbol>();
+         ArrayList<Symbol> all = new ArrayList<Symbol>(table.size());
+         for (Symbol s : table.values()) {
+            all.add(s);
+            if (s.getType()) {
+               data.add(s);
+            } 
+            else {
+               text.add(s);
+            }
+         }
+         dataSymbols = data;
+         textSymbols = text;
+         allSymbols = all;
+      }
+   
      /**
       *  Fetches the text segment label (symbol) which, if declared global, indicates
    	*  the starting address for execution.
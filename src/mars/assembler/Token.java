@@ -68,6 +68,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       }
 
    
+   /**
+    * Set the program containing this token.  Used when the result of tokenizing
+    * a source file is re-used for a new MIPSprogram object for the same file.
+    * 
+    * @param sourceMIPSprogram The MIPSprogram object now containing this token
+    **/
+       void setSourceMIPSprogram(MIPSprogram sourceMIPSprogram) {
+         this.sourceMIPSprogram = sourceMIPSprogram;
+      }
+   
    /**
     * Set original program and line number for this token.
 	 * Line number or both may change during pre-assembly as a result
@@ -150,76 +150,78 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        // Classify based on # bits needed to represent in binary
        // This is needed because most immediate operands limited to 16 bits
        // others limited to 5 bits unsigned (shift amounts) others 32 bits.
-         try {
+         if (couldBeNumber(value)) {
+            try {
 
-            int i = Binary.stringToInt(value);   // KENV 1/6/05
+               int i = Binary.stringToInt(value);   // KENV 1/6/05
 				
-		/***************************************************************************
-		 *  MODIFICATION AND COMMENT, DPS 3-July-2008
-		 *
-		 * The modifications of January 2005 documented below are being rescinded.
-		 * All hexadecimal immediate values are considered 32 bits in length and
-		 * their classification as INTEGER_5, INTEGER_16, INTEGER_16U (new)
-		 * or INTEGER_32 depends on their 32 bit value.  So 0xFFFF will be
-		 * equivalent to 0x0000FFFF instead of 0xFFFFFFFF.  This change, along with
-		 * the introduction of INTEGER_16U (adopted from Greg Gibeling of Berkeley),
-		 * required extensive changes to instruction templates especially for
-		 * pseudo-instructions.
-		 *
-		 * This modification also appears inbuildBasicStatementFromBasicInstruction()
-		 * in mars.ProgramStatement. 
-		 *		         
-       *  ///// Begin modification 1/4/05 KENV   ///////////////////////////////////////////
-       *  // We have decided to interpret non-signed (no + or -) 16-bit hexadecimal immediate  
-       *  // operands as signed values in the range -32768 to 32767. So 0xffff will represent
-       *  // -1, not 65535 (bit 15 as sign bit), 0x8000 will represent -32768 not 32768.
-       *  // NOTE: 32-bit hexadecimal immediate operands whose values fall into this range
-       *  // will be likewise affected, but they are used only in pseudo-instructions.  The
-       *  // code in ExtendedInstruction.java to split this number into upper 16 bits for "lui" 
-       *  // and lower 16 bits for "ori" works with the original source code token, so it is 
-       *  // not affected by this tweak.  32-bit immediates in data segment directives
-       *  // are also processed elsewhere so are not affected either.
-       *  ////////////////////////////////////////////////////////////////////////////////
-       *  
-       *     if ( Binary.isHex(value) &&
-       *         (i >= 32768) &&
-       *         (i <= 65535) )  // Range 0x8000 ... 0xffff
-       *     {
-       *          // Subtract the 0xffff bias, because strings in the
-       *          // range "0x8000" ... "0xffff" are used to represent
-       *          // 16-bit negative numbers, not positive numbers.
-       *        i = i - 65536;
-       *     }
-       *    // ------------- END    KENV 1/4/05   MODIFICATIONS --------------
-       *  
-		 **************************  END DPS 3-July-2008 COMMENTS *******************************/
-           // shift operands must be in range 0-31
-            if (i>=0 && i<=31) {
-               return TokenTypes.INTEGER_5;
-            }
-            if (i>=DataTypes.MIN_UHALF_VALUE && i<=DataTypes.MAX_UHALF_VALUE) {
-                return TokenTypes.INTEGER_16U;
-             }
-            if (i>=DataTypes.MIN_HALF_VALUE && i<=DataTypes.MAX_HALF_VALUE) {
-               return TokenTypes.INTEGER_16;
-            }			  
-            return TokenTypes.INTEGER_32;  // default when no other type is applicable
-         }
-             catch(NumberFormatException e)
-            {
-            // NO ACTION -- exception suppressed
+   		/***************************************************************************
+   		 *  MODIFICATION AND COMMENT, DPS 3-July-2008
+   		 *
+   		 * The modifications of January 2005 documented below are being rescinded.
+   		 * All hexadecimal immediate values are considered 32 bits in length and
+   		 * their classification as INTEGER_5, INTEGER_16, INTEGER_16U (new)
+   		 * or INTEGER_32 depends on their 32 bit value.  So 0xFFFF will be
+   		 * equivalent to 0x0000FFFF instead of 0xFFFFFFFF.  This change, along with
+   		 * the introduction of INTEGER_16U (adopted from Greg Gibeling of Berkeley),
+   		 * required extensive changes to instruction templates especially for
+   		 * pseudo-instructions.
+   		 *
+   		 * This modification also appears inbuildBasicStatementFromBasicInstruction()
+   		 * in mars.ProgramStatement. 
+   		 *		         
+          *  ///// Begin modification 1/4/05 KENV   ///////////////////////////////////////////
+          *  // We have decided to interpret non-signed (no + or -) 16-bit hexadecimal immediate  
+          *  // operands as signed values in the range -32768 to 32767. So 0xffff will represent
+          *  // -1, not 65535 (bit 15 as sign bit), 0x8000 will represent -32768 not 32768.
+          *  // NOTE: 32-bit hexadecimal immediate operands whose values fall into this range
+          *  // will be likewise affected, but they are used only in pseudo-instructions.  The
+          *  // code in ExtendedInstruction.java to split this number into upper 16 bits for "lui" 
+          *  // and lower 16 bits for "ori" works with the original source code token, so it is 
+          *  // not affected by this tweak.  32-bit immediates in data segment directives
+          *  // are also processed elsewhere so are not affected either.
+          *  ////////////////////////////////////////////////////////////////////////////////
+          *  
+          *     if ( Binary.isHex(value) &&
+          *         (i >= 32768) &&
+          *         (i <= 65535) )  // Range 0x8000 ... 0xffff
+          *     {
+          *          // Subtract the 0xffff bias, because strings in the
+          *          // range "0x8000" ... "0xffff" are used to represent
+          *          // 16-bit negative numbers, not positive numbers.
+          *        i = i - 65536;
+          *     }
+          *    // ------------- END    KENV 1/4/05   MODIFICATIONS --------------
+          *  
+   		 **************************  END DPS 3-July-2008 COMMENTS *******************************/
+              // shift operands must be in range 0-31
+               if (i>=0 && i<=31) {
+                  return TokenTypes.INTEGER_5;
+               }
+               if (i>=DataTypes.MIN_UHALF_VALUE && i<=DataTypes.MAX_UHALF_VALUE) {
+                   return TokenTypes.INTEGER_16U;
+                }
+               if (i>=DataTypes.MIN_HALF_VALUE && i<=DataTypes.MAX_HALF_VALUE) {
+                  return TokenTypes.INTEGER_16;
+               }			  
+               return TokenTypes.INTEGER_32;  // default when no other type is applicable
             }
+                catch(NumberFormatException e)
+               {
+               // NO ACTION -- exception suppressed
+               }
       
-       // See if it is a real (fixed or floating point) number.  Note that parseDouble()
-       // accepts integer values but if it were an integer literal we wouldn't get this far.
-         try {
-            Double.parseDouble(value);
-            return TokenTypes.REAL_NUMBER;
-         }
-             catch (NumberFormatException e)
-            {
-            // NO ACTION -- exception suppressed
+          // See if it is a real (fixed or floating point) number.  Note that parseDouble()
+          // accepts integer values but if it were an integer literal we wouldn't get this far.
+            try {
+               Double.parseDouble(value);
+               return TokenTypes.REAL_NUMBER;
             }
+                catch (NumberFormatException e)
+               {
+               // NO ACTION -- exception suppressed
+               }
+         }
       	 
        // See if it is an instruction operator
          if (Globals.instructionSet.matchOperator(value) != null)
@@ -270,6 +272,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       }	
    
    
+       // Numeric literals start with a digit, sign or decimal point, except for the
+   	 // NaN and Infinity accepted by Double.parseDouble().  Checking this first spares
+   	 // every operator and identifier two NumberFormatExceptions in matchTokenType().
+       private static boolean couldBeNumber(String value) {
+         char first = value.charAt(0);
+         return Character.isDigit(first) || first == '+' || first == '-' || first == '.' ||
+                value.equals("NaN") || value.equals("Infinity");
+      }
+   
+   
        // COD2, A-51:  "Identifiers are a sequence of alphanumeric characters,
        //               underbars (_), and dots (.) that do not begin with a number."
    	 // Ideally this would be in a separate Identifier class but I did not see an immediate
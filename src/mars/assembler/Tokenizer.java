@@ -1,7 +1,10 @@
    package mars.assembler;
    import mars.*;
+   import mars.mips.hardware.*;
    import java.util.*;
+   import java.util.concurrent.*;
    import java.io.*;
+   import java.security.*;
 
 /*
 Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
@@ -52,10 +55,19 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private ErrorList errors;
       private MIPSprogram sourceMIPSprogram;
       private HashMap<String,String> equivalents; // DPS 11-July-2012
+      // Tokenized form of each .eqv expression, for substituting at token level.  Valid
+   	// while equivalents is the same map with the same number of entries.
+      private HashMap<String,EqvExpansion> eqvExpansions;
+      private HashMap<String,String> eqvExpansionsFor;
+      private int eqvExpansionsCount;
    	// The 8 escaped characters are: single quote, double quote, backslash, newline (linefeed),
    	// tab, backspace, return, form feed.  The characters and their corresponding decimal codes:
       private static final String escapedCharacters = "'\"\\ntbrf0";
       private static final String[] escapedCharactersValues = {"39","34","92","10","9","8","13","12","0"};
+      // Results of tokenizing complete source files, keyed by file name, for re-use
+   	// when the same unchanged file is assembled again from the IDE.
+      private static final ConcurrentHashMap<String,TokenizedSource> tokenizedSources = 
+                                  new ConcurrentHashMap<String,TokenizedSource>();
    
    /**
     *  Simple constructor. Initializes empty error list.
@@ -85,6 +97,18 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    
        public ArrayList tokenize(MIPSprogram p) throws ProcessingException {
          sourceMIPSprogram = p;
+         // In the IDE, the edit-assemble-run loop re-assembles mostly unchanged files.
+      	// Re-use the previous result for a file if it and all files it includes
+      	// have the same content as last time.
+         boolean useCache = Globals.getGui() != null && p.getFilename() != null;
+         String digest = null;
+         if (useCache) {
+            digest = digest(p.getSourceList());
+            TokenizedSource cached = tokenizedSources.get(p.getFilename());
+            if (cached != null && cached.isCurrent(digest)) {
+               return cached.restore(this, p);
+            }
+         }
          equivalents = new HashMap<String,String>(); // DPS 11-July-2012
          ArrayList tokenList = new ArrayList();
          //ArrayList source = p.getSourceList();
@@ -108,9 +132,130 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          if (errors.errorsOccurred()) {
             throw new ProcessingException(errors);
          }
+         if (useCache) {
+            tokenizedSources.put(p.getFilename(), 
+               new TokenizedSource(p, digest, source, tokenList, equivalents));
+         }
          return tokenList;
       }
    
+   /**
+    * Forget the tokenizing results kept for any file not among those given, which
+    * are the files about to be assembled.
+    *
+    * @param filenames ArrayList of the file names (String) to keep results for.
+    **/
+       public static void retainTokenizedSources(ArrayList<?> filenames) {
+         tokenizedSources.keySet().retainAll(filenames);
+      }
+   
+   
+   /**
+    * SHA-256 of the given source lines, as a hex String.  Used to tell whether a
+    * file has changed since it was last tokenized, and by AssembledProgramCache
+    * since it was last assembled.
+    *
+    * @param lines ArrayList of the source lines (String), as from MIPSprogram.getSourceList().
+    * @return the digest
+    **/
+       public static String digest(ArrayList<?> lines) {
+         try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (int i=0; i<lines.size(); i++) {
+               md.update(((String) lines.get(i)).getBytes("UTF-8"));
+               md.update((byte) '\n');
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : md.digest()) {
+               hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+         } 
+             catch (Exception e) { // NoSuchAlgorithmException, UnsupportedEncodingException: cannot happen
+               throw new RuntimeException(e);
+            }
+      }
+   
+   
+   // The outcome of tokenizing one source file: its source lines after .eqv
+   // substitution, its token lists and its .eqv definitions, together with
+   // digests of its content and of every file it includes.  Tokens and source lines
+   // refer to the MIPSprogram they were last restored for, so restore() re-targets
+   // them at the program being assembled now.
+       private static class TokenizedSource {
+         private MIPSprogram owner;
+         private String digest;
+         private HashMap<String,String> includeDigests;
+         private ArrayList<SourceLine> processedSource;
+         private ArrayList<?> tokenList;
+         private HashMap<String,String> equivalents;
+      
+          TokenizedSource(MIPSprogram owner, String digest, ArrayList<SourceLine> processedSource, 
+                          ArrayList<?> tokenList, HashMap<String,String> equivalents) {
+            this.owner = owner;
+            this.digest = digest;
+            this.processedSource = new ArrayList<SourceLine>(processedSource);
+            this.tokenList = tokenList;
+            // Copy, since macro expansion during assembly may add to the tokenizer's map.
+            this.equivalents = new HashMap<String,String>(equivalents);
+            this.includeDigests = new HashMap<String,String>();
+            for (SourceLine line : processedSource) {
+               MIPSprogram from = line.getMIPSprogram();
+               if (from != owner && !includeDigests.containsKey(from.getFilename())) {
+                  includeDigests.put(from.getFilename(), Tokenizer.digest(from.getSourceList()));
+               }
+            }
+         }
+      
+         // Is this still valid for a file whose content has the given digest?  Every
+      	// included file is re-read to check it too.
+          boolean isCurrent(String currentDigest) {
+            if (!digest.equals(currentDigest)) {
+               return false;
+            }
+            for (Map.Entry<String,String> include : includeDigests.entrySet()) {
+               MIPSprogram incl = new MIPSprogram();
+               try {
+                  incl.readSource(include.getKey());
+               } 
+                   catch (ProcessingException e) {
+                     return false;
+                  }
+               if (!include.getValue().equals(Tokenizer.digest(incl.getSourceList()))) {
+                  return false;
+               }
+            }
+            return true;
+         }
+      
+         // Re-target the cached results at program p and install them in p and in
+      	// the tokenizer that will be used for p's macro expansions.
+          synchronized ArrayList<?> restore(Tokenizer tokenizer, MIPSprogram p) {
+            // Keep the re-targeted lines, so the next restore() recognizes them as p's and
+         	// the previous program can be garbage collected.
+            processedSource = retarget(processedSource, p);
+            p.setSourceLineList(new ArrayList<SourceLine>(processedSource));
+            for (int i=0; i<tokenList.size(); i++) {
+               TokenList tokens = (TokenList) tokenList.get(i);
+               for (int j=0; j<tokens.size(); j++) {
+                  tokens.get(j).setSourceMIPSprogram(p);
+               }
+            }
+            tokenizer.equivalents = new HashMap<String,String>(equivalents);
+            owner = p;
+            return tokenList;
+         }
+      
+          private ArrayList<SourceLine> retarget(ArrayList<SourceLine> lines, MIPSprogram p) {
+            ArrayList<SourceLine> result = new ArrayList<SourceLine>(lines.size());
+            for (SourceLine line : lines) {
+               result.add((line.getMIPSprogram() == owner) 
+                          ? new SourceLine(line.getSource(), p, line.getLineNumber()) : line);
+            }
+            return result;
+         }
+      }
+   
    
      
    // pre-pre-processing pass through source code to process any ".include" directives.
@@ -280,12 +425,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          TokenList result = new TokenList();
          if (theLine.length() == 0)
             return result;
-      // will be faster to work with char arrays instead of strings
+      // will be faster to work with char arrays instead of strings.  Every token is
+      // a contiguous run of characters in the line, so a token is kept as its start
+      // and length rather than being copied out a character at a time.
          char c;
          char[] line = theLine.toCharArray();
          int linePos = 0;
-         char[] token = new char[line.length];
-         int tokenPos = 0;
+         int tokenPos = 0;    // length of token so far
          int tokenStartPos = 1;
          boolean insideQuotedString = false;  
          if (Globals.debug) 
@@ -294,9 +440,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          while (linePos < line.length) {
             c = line[linePos];
             if (insideQuotedString) { // everything goes into token
-               token[tokenPos++] = c;
-               if (c == '"' && token[tokenPos-2] != '\\') { // If quote not preceded by backslash, this is end
-                  this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+               tokenPos++;
+               if (c == '"' && line[linePos-1] != '\\') { // If quote not preceded by backslash, this is end
+                  this.processCandidateToken(line, program, lineNum, theLine, tokenPos, tokenStartPos, result);
                   tokenPos = 0;
                   insideQuotedString = false;
                } 
@@ -305,13 +451,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                switch(c) {
                   case '#' :  // # denotes comment that takes remainder of line
                      if (tokenPos > 0) {
-                        this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                        this.processCandidateToken(line, program, lineNum, theLine, tokenPos, tokenStartPos, result);
                         tokenPos = 0;
                      }
                      tokenStartPos = linePos+1;
                      tokenPos = line.length-linePos;
-                     System.arraycopy(line, linePos, token, 0, tokenPos);
-                     this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                     this.processCandidateToken(line, program, lineNum, theLine, tokenPos, tokenStartPos, result);
                      linePos = line.length;
                      tokenPos = 0;
                      break;
@@ -319,7 +464,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   case '\t':
                   case ',' : // space, tab or comma is delimiter
                      if (tokenPos > 0) {
-                        this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                        this.processCandidateToken(line, program, lineNum, theLine, tokenPos, tokenStartPos, result);
                         tokenPos = 0;
                      }
                      break;
@@ -333,20 +478,20 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   	 // (e.g. 1.2e-5) Add the + or - to the token and keep going.  DPS 17 Aug 2005
                      if (tokenPos > 0 && line.length >= linePos+2 && Character.isDigit(line[linePos+1]) &&
                                                        (line[linePos-1]=='e' || line[linePos-1]=='E')) {
-                        token[tokenPos++] = c;
+                        tokenPos++;
                         break;
                      }
                   	 // End of REAL hack.  
                      if (tokenPos > 0) {
-                        this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                        this.processCandidateToken(line, program, lineNum, theLine, tokenPos, tokenStartPos, result);
                         tokenPos = 0;
                      }
                      tokenStartPos = linePos+1;
-                     token[tokenPos++] = c;
+                     tokenPos++;
                      if ( !((result.isEmpty() || ((Token)result.get(result.size()-1)).getType() != TokenTypes.IDENTIFIER) &&
                            (line.length >= linePos+2 && Character.isDigit(line[linePos+1]))) ) {
                            // treat it as binary.....
-                        this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                        this.processCandidateToken(line, program, lineNum, theLine, tokenPos, tokenStartPos, result);
                         tokenPos = 0;
                      }
                      break; 
@@ -355,44 +500,44 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   case '(' :
                   case ')' :
                      if (tokenPos > 0) {
-                        this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                        this.processCandidateToken(line, program, lineNum, theLine, tokenPos, tokenStartPos, result);
                         tokenPos = 0;
                      }
                      tokenStartPos = linePos+1;
-                     token[tokenPos++] = c;
-                     this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                     tokenPos++;
+                     this.processCandidateToken(line, program, lineNum, theLine, tokenPos, tokenStartPos, result);
                      tokenPos = 0;
                      break; 
                   case '"' : // we're not inside a quoted string, so start a new token...
                      if (tokenPos > 0) {
-                        this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                        this.processCandidateToken(line, program, lineNum, theLine, tokenPos, tokenStartPos, result);
                         tokenPos = 0;
                      }
                      tokenStartPos = linePos+1;
-                     token[tokenPos++] = c;
+                     tokenPos++;
                      insideQuotedString = true;
                      break;
                   case '\'' : // start of character constant (single quote).
                      if (tokenPos > 0) {
-                        this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                        this.processCandidateToken(line, program, lineNum, theLine, tokenPos, tokenStartPos, result);
                         tokenPos = 0;
                      }
                   	// Our strategy is to process the whole thing right now...
                      tokenStartPos = linePos+1;
-                     token[tokenPos++] = c; // Put the quote in token[0]
+                     tokenPos++; // the quote is token character 0
                      int lookaheadChars = line.length - linePos - 1;
                   	// need minimum 2 more characters, 1 for char and 1 for ending quote
                      if (lookaheadChars < 2) 
                         break;  // gonna be an error
                      c = line[++linePos]; 
-                     token[tokenPos++] = c; // grab second character, put it in token[1]
+                     tokenPos++; // grab second character, token character 1
                      if (c == '\'') 
                         break; // gonna be an error: nothing between the quotes
                      c = line[++linePos];  
-                     token[tokenPos++] = c; // grab third character, put it in token[2]
+                     tokenPos++; // grab third character, token character 2
                      // Process if we've either reached second, non-escaped, quote or end of line.
-                     if (c == '\'' && token[1] != '\\' || lookaheadChars==2) { 
-                        this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                     if (c == '\'' && line[tokenStartPos] != '\\' || lookaheadChars==2) { 
+                        this.processCandidateToken(line, program, lineNum, theLine, tokenPos, tokenStartPos, result);
                         tokenPos = 0;
                         tokenStartPos = linePos+1;
                         break;
@@ -401,10 +546,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   	// still here after seeing a second quote, it was escaped.  Not done yet;
                   	// we either have an escape code, an octal code (also escaped) or invalid.
                      c = line[++linePos]; 
-                     token[tokenPos++] = c; // grab fourth character, put it in token[3]
+                     tokenPos++; // grab fourth character, token character 3
                   	// Process, if this is ending quote for escaped character or if at end of line
                      if (c == '\'' || lookaheadChars==3) { 
-                        this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                        this.processCandidateToken(line, program, lineNum, theLine, tokenPos, tokenStartPos, result);
                         tokenPos = 0;
                         tokenStartPos = linePos+1;
                         break;
@@ -413,29 +558,29 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   	// Proceed, if enough characters remain to finish off octal.
                      if (lookaheadChars >= 5) {
                         c = line[++linePos]; 
-                        token[tokenPos++] = c;  // grab fifth character, put it in token[4]
+                        tokenPos++;  // grab fifth character, token character 4
                         if (c != '\'') {
                            // still haven't reached end, last chance for validity!
                            c = line[++linePos];   
-                           token[tokenPos++] = c;  // grab sixth character, put it in token[5]
+                           tokenPos++;  // grab sixth character, token character 5
                         }
                      }
                   	// process no matter what...we either have a valid character by now or not
-                     this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+                     this.processCandidateToken(line, program, lineNum, theLine, tokenPos, tokenStartPos, result);
                      tokenPos = 0;
                      tokenStartPos = linePos+1;
                      break;																			
                   default :
                      if (tokenPos == 0)
                         tokenStartPos = linePos+1;
-                     token[tokenPos++] = c;
+                     tokenPos++;
                      break; 
                }  // switch
             } // if (insideQuotedString)
             linePos++;
          }  // while
          if (tokenPos > 0) {
-            this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
+            this.processCandidateToken(line, program, lineNum, theLine, tokenPos, tokenStartPos, result);
             tokenPos = 0;
          }
          if (doEqvSubstitutes) {
@@ -498,25 +643,139 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                return tokens;
             }
          }
-      	// Check if a substitution from defined .eqv is to be made.  If so, make one.
-         boolean substitutionMade = false;
+      	// Check if a substitution from defined .eqv is to be made.  If so, make them.
+      	// Normally all are made at token level by expandEqv().  Otherwise, make one
+      	// in the source line and tokenize the line again; if there are more, they will
+      	// be caught on the recursion.
+         EqvExpansion expansion = expandEqv(program, lineNum, theLine, tokens);
+         if (expansion == null) {
+            for (int i=0; i<tokens.size(); i++) {
+               Token token = tokens.get(i);
+               if (token.getType() == TokenTypes.IDENTIFIER && equivalents != null && equivalents.containsKey(token.getValue())) {
+                  // do the substitution
+                  String sub = equivalents.get(token.getValue());
+                  int startPos = token.getStartPos(); 
+                  theLine = theLine.substring(0,startPos-1) + sub + theLine.substring(startPos+token.getValue().length()-1);
+                  return tokenizeLine(lineNum, theLine);
+               }
+            }
+         }
+         else if (expansion.tokens != tokens) {
+            // Substitution may have produced an .eqv directive, so check the result again.
+            return processEqv(program, lineNum, expansion.line, expansion.tokens);
+         }
+         tokens.setProcessedLine(theLine); // DPS 03-Jan-2013. Related to changes of 11-July-2012.
+         return tokens;
+      }
+   
+   
+      // Substitute every .eqv symbol in the tokens of a line with the tokens of its expression,
+   	// moved to their columns in the substituted line.  This gives the same result as
+   	// substituting in the line and tokenizing it again, except where characters on
+   	// either side of a substitution would be tokenized together differently: when
+   	// a + or - is next to it, since a sign and the number following it become one
+   	// token unless preceded by an IDENTIFIER.  Returns null in those cases, and if the
+   	// line has invalid tokens, since tokenizing again reports those again.  If there is
+   	// nothing to substitute, returns the given line and tokens.
+       private EqvExpansion expandEqv(MIPSprogram program, int lineNum, String theLine, TokenList tokens) {
+         TokenList result = null;
+         StringBuilder line = null;
+         int copied = 0; // number of characters of theLine copied into line
+         int shift = 0;  // difference between column in line and column in theLine
          for (int i=0; i<tokens.size(); i++) {
             Token token = tokens.get(i);
-            if (token.getType() == TokenTypes.IDENTIFIER && equivalents != null && equivalents.containsKey(token.getValue())) {
-               // do the substitution
-               String sub = equivalents.get(token.getValue());
-               int startPos = token.getStartPos(); 
-               theLine = theLine.substring(0,startPos-1) + sub + theLine.substring(startPos+token.getValue().length()-1);
-               substitutionMade = true;             	// one substitution per call.  If there are multiple, will catch next one on the recursion
-               break; 
+            if (token.getType() == TokenTypes.ERROR) {
+               return null;
+            }
+            if (token.getType() != TokenTypes.IDENTIFIER || equivalents == null || !equivalents.containsKey(token.getValue())) {
+               if (result != null) {
+                  result.add((shift == 0) ? token : 
+                     new Token(token.getType(), token.getValue(), program, lineNum, token.getStartPos() + shift));
+               }
+               continue;
             }
+            EqvExpansion sub = getEqvExpansion(token.getValue());
+            Token previous = (result != null) ? ((result.isEmpty()) ? null : result.get(result.size()-1)) 
+                                              : ((i == 0) ? null : tokens.get(i-1));
+            Token next = (i+1 < tokens.size()) ? tokens.get(i+1) : null;
+            if (sub == null || isSign(previous) || isSign(next) || (previous != null && 
+                previous.getType() == TokenTypes.IDENTIFIER && "+-".indexOf(sub.tokens.get(0).getValue().charAt(0)) >= 0)) {
+               return null;
+            }
+            if (result == null) {
+               result = new TokenList();
+               for (int j=0; j<i; j++) {
+                  result.add(tokens.get(j));
+               }
+               line = new StringBuilder(theLine.length() + sub.line.length());
+            }
+            line.append(theLine, copied, token.getStartPos()-1);
+            int column = line.length();
+            line.append(sub.line);
+            for (int j=0; j<sub.tokens.size(); j++) {
+               Token subToken = sub.tokens.get(j);
+               result.add(new Token(subToken.getType(), subToken.getValue(), program, lineNum, subToken.getStartPos() + column));
+            }
+            copied = token.getStartPos()-1 + token.getValue().length();
+            shift = line.length() - copied;
          }
-         tokens.setProcessedLine(theLine); // DPS 03-Jan-2013. Related to changes of 11-July-2012.
-      
-         return (substitutionMade) ? tokenizeLine(lineNum, theLine) : tokens;
+         if (result == null) {
+            return new EqvExpansion(theLine, tokens);
+         }
+         line.append(theLine, copied, theLine.length());
+         return new EqvExpansion(line.toString(), result);
+      }
+   
+   
+      // Fetch the fully substituted expression and tokens for an .eqv symbol, tokenizing
+   	// it the first time.  Null if it cannot be substituted at token level: if it has 
+   	// quotes or a # that might join with the rest of the line, a directive, or invalid tokens.
+       private EqvExpansion getEqvExpansion(String symbol) {
+         if (eqvExpansions == null || eqvExpansionsFor != equivalents || eqvExpansionsCount != equivalents.size()) {
+            eqvExpansions = new HashMap<String,EqvExpansion>();
+            eqvExpansionsFor = equivalents;
+            eqvExpansionsCount = equivalents.size();
+         }
+         if (eqvExpansions.containsKey(symbol)) {
+            return eqvExpansions.get(symbol);
+         }
+         eqvExpansions.put(symbol, null); // in case of circular definitions
+         String expression = equivalents.get(symbol);
+         EqvExpansion expansion = null;
+         if (expression.indexOf('"') < 0 && expression.indexOf('\'') < 0 && expression.indexOf('#') < 0) {
+            ErrorList saveList = this.errors;
+            this.errors = new ErrorList();
+            TokenList tokens = tokenizeLine(sourceMIPSprogram, 0, expression, false);
+            boolean valid = !this.errors.errorsOccurred() && !tokens.isEmpty();
+            this.errors = saveList;
+            for (int i=0; valid && i<tokens.size(); i++) {
+               valid = tokens.get(i).getType() != TokenTypes.DIRECTIVE;
+            }
+            if (valid) {
+               expansion = expandEqv(sourceMIPSprogram, 0, expression, tokens);
+            }
+         }
+         eqvExpansions.put(symbol, expansion);
+         return expansion;
+      }
+   
+   
+       private static boolean isSign(Token token) {
+         return token != null && (token.getType() == TokenTypes.PLUS || token.getType() == TokenTypes.MINUS);
       }
    	
-	
+   
+      // Source line after .eqv substitution, and its tokens.
+       private static class EqvExpansion {
+         private String line;
+         private TokenList tokens;
+      
+          EqvExpansion(String line, TokenList tokens) {
+            this.line = line;
+            this.tokens = tokens;
+         }
+      }
+   
    
    /** 
     * Fetch this Tokenizer's error list.
@@ -529,19 +788,116 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 
    
    // Given candidate token and its position, will classify and record it.
-       private void processCandidateToken(char[] token, MIPSprogram program, int line, String theLine, 
+   // The token is the tokenPos characters of the source line starting at column tokenStartPos.
+       private void processCandidateToken(char[] source, MIPSprogram program, int line, String theLine, 
        int tokenPos, int tokenStartPos, TokenList tokenList) {
-         String value = new String(token, 0, tokenPos);
-         if (value.length() > 0 && value.charAt(0)=='\'') value = preprocessCharacterLiteral(value);
-         TokenTypes type = TokenTypes.matchTokenType(value);
-         if (type == TokenTypes.ERROR) {
-            errors.add(new ErrorMessage(program, line, tokenStartPos, 
-                       theLine+"\nInvalid language element: "+value));
+         CommonTokens common = CommonTokens.getInstance();
+         int index = (common == null) ? -1 : common.find(source, tokenStartPos-1, tokenPos);
+         String value;
+         TokenTypes type;
+         if (index >= 0) {
+            value = common.values[index];
+            type = common.types[index];
+         } 
+         else {
+            value = new String(source, tokenStartPos-1, tokenPos);
+            if (value.length() > 0 && value.charAt(0)=='\'') value = preprocessCharacterLiteral(value);
+            type = TokenTypes.matchTokenType(value);
+            if (type == TokenTypes.ERROR) {
+               errors.add(new ErrorMessage(program, line, tokenStartPos, 
+                          theLine+"\nInvalid language element: "+value));
+            }
          }
          Token toke = new Token(type, value, program, line, tokenStartPos);
          tokenList.add(toke);
          return;
       }
+   
+   
+   // Flyweight table of the token values that make up most of a program: register names,
+   // operator mnemonics, directives, punctuation and small integers.  Each is classified
+   // once.  The tokenizer looks up the characters of a token here before doing anything 
+   // else, so these tokens cost neither a new String nor a TokenTypes.matchTokenType().
+   // The table is built on first use after the instruction set is complete, since
+   // pseudo-instruction specifications are tokenized while it is being built.
+       private static final class CommonTokens {
+         private static volatile CommonTokens instance;
+         private final String[] values;
+         private final TokenTypes[] types;
+         private final int mask;
+      
+          static CommonTokens getInstance() {
+            CommonTokens table = instance;
+            if (table == null && Globals.getInstructionMnemonics() != null) {
+               table = instance = new CommonTokens(); // harmless if two threads both build one
+            }
+            return table;
+         }
+      
+          private CommonTokens() {
+            ArrayList<String> common = new ArrayList<String>();
+            for (Register register : RegisterFile.getRegisters()) {
+               common.add(register.getName());
+               common.add("$" + register.getNumber());
+            }
+            for (Register register : Coprocessor1.getRegisters()) {
+               common.add(register.getName());
+            }
+            common.addAll(Globals.getInstructionMnemonics());
+            for (Object directive : Directives.getDirectiveList()) {
+               common.add(((Directives) directive).getName());
+            }
+            common.addAll(Arrays.asList("(", ")", ":", "+", "-"));
+            for (int i=-1; i<=255; i++) {
+               common.add(Integer.toString(i));
+            }
+            int size = 1;
+            while (size < 2 * common.size()) {
+               size <<= 1;
+            }
+            values = new String[size];
+            types = new TokenTypes[size];
+            mask = size - 1;
+            for (String value : common) {
+               TokenTypes type = TokenTypes.matchTokenType(value);
+               if (type != TokenTypes.ERROR && find(value.toCharArray(), 0, value.length()) < 0) {
+                  int index = hash(value.toCharArray(), 0, value.length()) & mask;
+                  while (values[index] != null) {
+                     index = (index + 1) & mask;
+                  }
+                  values[index] = value;
+                  types[index] = type;
+               }
+            }
+         }
+      
+         // Index of the given characters in the table, or -1 if they are not there.
+          int find(char[] chars, int start, int length) {
+            int index = hash(chars, start, length) & mask;
+            while (values[index] != null) {
+               String value = values[index];
+               if (value.length() == length) {
+                  int i = 0;
+                  while (i < length && value.charAt(i) == chars[start + i]) {
+                     i++;
+                  }
+                  if (i == length) {
+                     return index;
+                  }
+               }
+               index = (index + 1) & mask;
+            }
+            return -1;
+         }
+      
+          private static int hash(char[] chars, int start, int length) {
+            int h = 0;
+            for (int i=start; i<start+length; i++) {
+               h = 31 * h + chars[i];
+            }
+            return h ^ (h >>> 16);
+         }
+      }
    	
    	
    	
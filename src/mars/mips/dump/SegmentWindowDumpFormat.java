@@ -136,7 +136,7 @@ public class SegmentWindowDumpFormat extends AbstractDumpFormat {
                 try {
                     ProgramStatement ps = Globals.memory.getStatement(address);
                     string += (ps.getPrintableBasicAssemblyStatement() + "                      ").substring(0, 22);
-                    string += (((ps.getSource() == "") ? "" : new Integer(ps.getSourceLine()).toString()) + "     ").substring(0, 5);
+                    string += (((ps.getSource().equals("")) ? "" : new Integer(ps.getSourceLine()).toString()) + "     ").substring(0, 5);
                     string += ps.getSource();
                 } catch (AddressErrorException aee) {
                 }
@@ -93,7 +93,7 @@ public abstract class AccessNotice {
      *
      * @return true if this access originated from executing MIPS program, false otherwise
      */
-    // Thread to execute the MIPS program is instantiated in SwingWorker.java.
+    // Thread to execute the MIPS program is instantiated in Simulator.java.
     // There it is given the name "MIPS" to replace the default "Thread-x".
     public boolean accessIsFromMIPS() {
         return thread.getName().startsWith("MIPS");
@@ -2,7 +2,6 @@ package mars.mips.hardware;
 
 import mars.Globals;
 import mars.ProgramStatement;
-import mars.Settings;
 import mars.mips.instructions.Instruction;
 import mars.simulator.Exceptions;
 import mars.util.Binary;
@@ -415,7 +414,7 @@ public class Memory extends Observable {
             // Burch Mod (Jan 2013): replace throw with call to setStatement
             // DPS adaptation 5-Jul-2013: either throw or call, depending on setting
 
-            if (Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED)) {
+            if (Globals.getSettings().getRuntimeSettings().getSelfModifyingCodeEnabled()) {
                 ProgramStatement oldStatement = getStatementNoNotify(address);
                 if (oldStatement != null) {
                     oldValue = oldStatement.getBinaryStatement();
@@ -478,7 +477,7 @@ public class Memory extends Observable {
         } else if (inTextSegment(address)) {
             // Burch Mod (Jan 2013): replace throw with call to setStatement
             // DPS adaptation 5-Jul-2013: either throw or call, depending on setting
-            if (Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED)) {
+            if (Globals.getSettings().getRuntimeSettings().getSelfModifyingCodeEnabled()) {
                 ProgramStatement oldStatement = getStatementNoNotify(address);
                 if (oldStatement != null) {
                     oldValue = oldStatement.getBinaryStatement();
@@ -658,7 +657,7 @@ public class Memory extends Observable {
         } else if (inTextSegment(address)) {
             // Burch Mod (Jan 2013): replace throw with calls to getStatementNoNotify & getBinaryStatement
             // DPS adaptation 5-Jul-2013: either throw or call, depending on setting
-            if (Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED)) {
+            if (Globals.getSettings().getRuntimeSettings().getSelfModifyingCodeEnabled()) {
                 ProgramStatement stmt = getStatementNoNotify(address);
                 value = stmt == null ? 0 : stmt.getBinaryStatement();
             } else {
@@ -724,7 +723,7 @@ public class Memory extends Observable {
         } else if (inTextSegment(address)) {
             // Burch Mod (Jan 2013): replace throw with calls to getStatementNoNotify & getBinaryStatement
             // DPS adaptation 5-Jul-2013: either throw or call, depending on setting
-            if (Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED)) {
+            if (Globals.getSettings().getRuntimeSettings().getSelfModifyingCodeEnabled()) {
                 ProgramStatement stmt = getStatementNoNotify(address);
                 value = stmt == null ? 0 : stmt.getBinaryStatement();
             } else {
@@ -961,7 +960,7 @@ public class Memory extends Observable {
                     "fetch address for text segment not aligned to word boundary ",
                     Exceptions.ADDRESS_EXCEPTION_LOAD, address);
         }
-        if (!Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED)
+        if (!Globals.getSettings().getRuntimeSettings().getSelfModifyingCodeEnabled()
                 && !(inTextSegment(address) || inKernelTextSegment(address))) {
             throw new AddressErrorException(
                     "fetch address for text segment out of range ",
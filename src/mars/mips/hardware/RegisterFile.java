@@ -195,13 +195,18 @@ public class RegisterFile {
     public static Register getUserRegister(String Rname) {
         Register reg = null;
         if (Rname.charAt(0) == '$') {
-            try {
-                // check for register number 0-31.
-                reg = regFile[Binary.stringToInt(Rname.substring(1))];    // KENV 1/6/05
-            } catch (Exception e) {
-                // handles both NumberFormat and ArrayIndexOutOfBounds
+            // check for register number 0-31.  A mnemonic such as $t0 (or $f0) cannot be
+            // a number, so it is not worth a NumberFormatException to find that out.
+            if (Rname.length() > 1 && !Character.isLetter(Rname.charAt(1))) {
+                try {
+                    reg = regFile[Binary.stringToInt(Rname.substring(1))];    // KENV 1/6/05
+                } catch (Exception e) {
+                    // handles both NumberFormat and ArrayIndexOutOfBounds
+                    reg = null; // just to be sure
+                }
+            }
+            if (reg == null) {
                 // check for register mnemonic $zero thru $ra
-                reg = null; // just to be sure
                 // just do linear search; there aren't that many registers
                 for (int i = 0; i < regFile.length; i++) {
                     if (Rname.equals(regFile[i].getName())) {
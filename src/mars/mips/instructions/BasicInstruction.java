@@ -45,6 +45,7 @@ public class BasicInstruction extends Instruction {
 
     private int opcodeMask;  // integer with 1's where constants required (0/1 become 1, f/s/t become 0)
     private int opcodeMatch; // integer matching constants required (0/1 become 0/1, f/s/t become 0)
+    private int id = -1;     // position among basic instructions, assigned by InstructionSet
 
     /**
      * BasicInstruction constructor.
@@ -140,4 +141,19 @@ public class BasicInstruction extends Instruction {
     public int getOpcodeMatch() {
         return this.opcodeMatch;
     }
+
+    /**
+     * Gets the number of this instruction among all basic instructions in the
+     * instruction set, for use as an array index (e.g. in per-instruction counters).
+     *
+     * @return id from 0 up to one less than the number of basic instructions.
+     * @see InstructionSet#getBasicInstructions()
+     */
+    public int getId() {
+        return this.id;
+    }
+
+    void setId(int id) {
+        this.id = id;
+    }
 }
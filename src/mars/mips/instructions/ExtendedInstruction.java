@@ -1,10 +1,16 @@
 package mars.mips.instructions;
 
+import mars.ErrorList;
 import mars.Globals;
 import mars.MIPSprogram;
+import mars.Settings;
 import mars.assembler.Symbol;
+import mars.assembler.Token;
 import mars.assembler.TokenList;
+import mars.assembler.TokenTypes;
+import mars.assembler.Tokenizer;
 import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.Register;
 import mars.mips.hardware.RegisterFile;
 import mars.util.Binary;
 
@@ -52,6 +58,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 public class ExtendedInstruction extends Instruction {
 
     private ArrayList translationStrings, compactTranslationStrings;
+    private volatile ArrayList<TranslationTemplate> translationTemplates;
+    private ArrayList<TranslationTemplate> compactTranslationTemplates;
 
     /**
      * Constructor for ExtendedInstruction.
@@ -71,7 +79,8 @@ public class ExtendedInstruction extends Instruction {
         this.exampleFormat = example;
         this.description = description;
         this.mnemonic = this.extractOperator(example);
-        this.createExampleTokenList();
+        // The example token list is created on first use by getTokenList(), when all
+        // instructions are in place and indexed by mnemonic.
         this.translationStrings = buildTranslationList(translation);
         this.compactTranslationStrings = buildTranslationList(compactTranslation);
     }
@@ -89,7 +98,8 @@ public class ExtendedInstruction extends Instruction {
         this.exampleFormat = example;
         this.description = description;
         this.mnemonic = this.extractOperator(example);
-        this.createExampleTokenList();
+        // The example token list is created on first use by getTokenList(), when all
+        // instructions are in place and indexed by mnemonic.
         this.translationStrings = buildTranslationList(translation);
         this.compactTranslationStrings = null;
     }
@@ -172,6 +182,46 @@ public class ExtendedInstruction extends Instruction {
         return compactTranslationStrings;
     }
 
+    /**
+     * Get the templates for basic instructions generated by this extended instruction,
+     * compiled for expansion.  Same order as getBasicIntructionTemplateList().
+     *
+     * @return ArrayList of TranslationTemplate.
+     */
+
+    public ArrayList<TranslationTemplate> getTranslationTemplates() {
+        if (translationTemplates == null) {
+            compileTranslationTemplates();
+        }
+        return translationTemplates;
+    }
+
+    /**
+     * Get the templates for basic instructions generated by the "compact" or 16-bit
+     * version of this extended instruction, compiled for expansion.
+     *
+     * @return ArrayList of TranslationTemplate.  Returns null if the instruction does not
+     * have a compact alternative.
+     */
+
+    public ArrayList<TranslationTemplate> getCompactTranslationTemplates() {
+        if (translationTemplates == null) {
+            compileTranslationTemplates();
+        }
+        return compactTranslationTemplates;
+    }
+
+    // Compile the basic instruction templates of this extended instruction.  Done on first
+    // use, when the instruction set is complete, since compiling tokenizes the templates.
+    // The compact list is assigned first; translationTemplates being set publishes both.
+    private synchronized void compileTranslationTemplates() {
+        if (translationTemplates != null) {
+            return;
+        }
+        compactTranslationTemplates = compileTranslationList(compactTranslationStrings);
+        translationTemplates = compileTranslationList(translationStrings);
+    }
+
     /**
      * Given a basic instruction template and the list of tokens from an extended
      * instruction statement, substitute operands from the token list appropriately into the
@@ -599,6 +649,18 @@ public class ExtendedInstruction extends Instruction {
     }
 
 
+    private static ArrayList<TranslationTemplate> compileTranslationList(ArrayList<?> translationList) {
+        if (translationList == null) {
+            return null;
+        }
+        ArrayList<TranslationTemplate> templates = new ArrayList<TranslationTemplate>(translationList.size());
+        for (int i = 0; i < translationList.size(); i++) {
+            templates.add(new TranslationTemplate((String) translationList.get(i)));
+        }
+        return templates;
+    }
+
+
     /*
      * Get length in bytes that this extended instruction requires in its
      * binary form. The answer depends on how many basic instructions it
@@ -623,4 +685,362 @@ public class ExtendedInstruction extends Instruction {
         return 4 * instructionCount;
     }
 
-}
\ No newline at end of file
+    /**
+     * A basic instruction template compiled into the tokens of the statement it generates.
+     * The template is tokenized once; each of its markers (see makeTemplateSubstitutions) becomes
+     * an operand extractor, so the token list of the generated statement is built directly from
+     * the tokens of the extended instruction statement rather than substituting into the template
+     * text and tokenizing the result.  Templates that cannot be compiled (e.g. DBNOP) and
+     * substituted values that would not stand as a single token are expanded the original way,
+     * so both produce exactly the same statement.
+     */
+    public static class TranslationTemplate {
+        // What each template token is.  All but LITERAL are markers.
+        private static final int LITERAL = 0;
+        private static final int OPERAND = 1;            // RGn, OPn
+        private static final int NEXT_REGISTER = 2;      // NRn
+        private static final int LABEL_HIGH = 3;         // LHn, LHnPm
+        private static final int LOW = 4;                // LLn, LLnU, LLnPm, VLn, VLnU, VLnPm, VLnPmU
+        private static final int VALUE_HIGH = 5;         // VHn, VHnPm
+        private static final int VALUE_HIGH_LOGICAL = 6; // VHLn, VHLnPm
+        private static final int LA_HIGH = 7;            // LHL
+        private static final int OFFSET_HIGH = 8;        // LHPA, LHPAPm
+        private static final int OFFSET_HIGH_LOGICAL = 9;// LHPN
+        private static final int OFFSET_LOW = 10;        // LLP, LLPU, LLPPm
+        private static final int BRANCH_OFFSET = 11;     // BROFFnm
+        private static final int SHIFT_32 = 12;          // S32
+        private static final int LABEL = 13;             // LAB
+
+        private final String template;
+        private boolean compiled;
+        // One entry per template token.  For a marker, value is the marker text, operand is the
+        // source token it is taken from and addend the digit added to it (for BROFFnm these are
+        // the offsets without and with delayed branching).
+        private String[] values;
+        private TokenTypes[] types;
+        private int[] startPositions;
+        private int[] kinds;
+        private int[] operands;
+        private int[] addends;
+        private boolean[] unsigned;
+
+        /**
+         * Compile a basic instruction template.
+         *
+         * @param template a String containing template for basic statement.
+         */
+        public TranslationTemplate(String template) {
+            this.template = template;
+            this.compiled = compile();
+        }
+
+        /**
+         * Get the template this was compiled from.
+         *
+         * @return template for basic statement, with markers.
+         */
+        public String getTemplate() {
+            return template;
+        }
+
+        /**
+         * Generate the tokens of the basic statement for this template, given the tokens from
+         * an extended instruction statement in basic assembly form.  Equivalent to tokenizing
+         * the result of makeTemplateSubstitutions().
+         *
+         * @param program      MIPSprogram containing the extended instruction statement.
+         * @param theTokenList a TokenList containing tokens from extended instruction.
+         * @param sourceLine   line number of the extended instruction statement.
+         * @param errors       lexical errors in the generated statement will go into this list.
+         * @return TokenList of the generated basic statement, or null if the template
+         * generates no instruction (DBNOP with delayed branching disabled).
+         */
+        public TokenList expand(MIPSprogram program, TokenList theTokenList, int sourceLine, ErrorList errors) {
+            if (!compiled) {
+                return substituteAndTokenize(program, theTokenList, sourceLine, errors);
+            }
+            TokenList result = new TokenList();
+            int shift = 0; // difference in length between substituted values and their markers so far
+            for (int i = 0; i < kinds.length; i++) {
+                if (kinds[i] == LITERAL) {
+                    result.add(new Token(types[i], values[i], null, sourceLine, startPositions[i] + shift));
+                    continue;
+                }
+                String value = substitution(i, program, theTokenList);
+                if (value == null || !isSingleToken(value, result)) {
+                    return substituteAndTokenize(program, theTokenList, sourceLine, errors);
+                }
+                TokenTypes type = TokenTypes.matchTokenType(value);
+                if (type == TokenTypes.ERROR) {
+                    return substituteAndTokenize(program, theTokenList, sourceLine, errors);
+                }
+                result.add(new Token(type, value, null, sourceLine, startPositions[i] + shift));
+                shift += value.length() - values[i].length();
+            }
+            return result;
+        }
+
+        // The original expansion: substitute into the template text and tokenize the result.
+        private TokenList substituteAndTokenize(MIPSprogram program, TokenList theTokenList, int sourceLine, ErrorList errors) {
+            String instruction = makeTemplateSubstitutions(program, template, theTokenList);
+            if (instruction == null || instruction.length() == 0) {
+                return null;
+            }
+            return new Tokenizer().tokenizeLine(sourceLine, instruction, errors, false);
+        }
+
+        // Value to substitute for the marker at position i, or null if makeTemplateSubstitutions()
+        // would have left the marker in place.
+        private String substitution(int i, MIPSprogram program, TokenList theTokenList) {
+            int op = operands[i];
+            int add = addends[i];
+            int val;
+            switch (kinds[i]) {
+                case OPERAND:
+                    return (op < theTokenList.size()) ? theTokenList.get(op).getValue() : null;
+                case NEXT_REGISTER:
+                    if (op >= theTokenList.size()) {
+                        return null;
+                    }
+                    String token = theTokenList.get(op).getValue();
+                    Register register = RegisterFile.getUserRegister(token);
+                    if (register != null) {
+                        return (register.getNumber() >= 0) ? "$" + (register.getNumber() + 1) : null;
+                    }
+                    int regNumber = Coprocessor1.getRegisterNumber(token);
+                    return (regNumber >= 0) ? "$f" + (regNumber + 1) : null;
+                case LABEL_HIGH:
+                case VALUE_HIGH:
+                    if (op >= theTokenList.size()) {
+                        return null;
+                    }
+                    val = intValue(theTokenList.get(op).getValue(), null, add);
+                    // If bit 15 is 1, that means lower 16 bits will become a negative offset!  To
+                    // compensate if that is the case, we need to add 1 to the high 16 bits.
+                    return String.valueOf((val >> 16) + Binary.bitValue(val, 15));
+                case VALUE_HIGH_LOGICAL:
+                    if (op >= theTokenList.size()) {
+                        return null;
+                    }
+                    return String.valueOf(intValue(theTokenList.get(op).getValue(), null, add) >> 16);
+                case LOW:
+                    if (op >= theTokenList.size()) {
+                        return null;
+                    }
+                    val = intValue(theTokenList.get(op).getValue(), null, add);
+                    return String.valueOf(unsigned[i] ? val & 0xffff : val << 16 >> 16);
+                case LA_HIGH:
+                    return String.valueOf(intValue(theTokenList.get(2).getValue(), null, 0) >> 16);
+                case OFFSET_HIGH:
+                    val = intValue(theTokenList.get(2).getValue(), theTokenList.get(4).getValue(), add);
+                    return String.valueOf((val >> 16) + Binary.bitValue(val, 15));
+                case OFFSET_HIGH_LOGICAL:
+                    return String.valueOf(intValue(theTokenList.get(2).getValue(), theTokenList.get(4).getValue(), 0) >> 16);
+                case OFFSET_LOW:
+                    val = intValue(theTokenList.get(2).getValue(), theTokenList.get(4).getValue(), add);
+                    return String.valueOf(unsigned[i] ? val & 0xffff : val << 16 >> 16);
+                case BRANCH_OFFSET:
+                    return String.valueOf(Globals.getSettings().getBooleanSetting(Settings.DELAYED_BRANCHING_ENABLED) ? add : op);
+                case SHIFT_32:
+                    return Integer.toString(32 - intValue(theTokenList.get(theTokenList.size() - 1).getValue(), null, 0));
+                case LABEL:
+                    // label has to be last token.  It has already been translated to address
+                    // by symtab lookup, so get the text label back.
+                    String label = theTokenList.get(theTokenList.size() - 1).getValue();
+                    Symbol sym = program.getLocalSymbolTable().getSymbolGivenAddressLocalOrGlobal(label);
+                    return (sym == null) ? null : sym.getName();
+                default:
+                    return null;
+            }
+        }
+
+        // Sum of the one or two values and the addend, or 0 if a value is not an integer.
+        private static int intValue(String value, String addend, int add) {
+            try {
+                int val = Binary.stringToInt(value) + add;
+                return (addend == null) ? val : val + Binary.stringToInt(addend);
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        // Determine whether the tokenizer would see the substituted value as exactly one token
+        // of that value at this point in the generated statement.
+        private static boolean isSingleToken(String value, TokenList preceding) {
+            if (value.length() == 0) {
+                return false;
+            }
+            for (int i = 0; i < value.length(); i++) {
+                switch (value.charAt(i)) {
+                    case ' ':
+                    case '\t':
+                    case ',':
+                    case '#':
+                    case ':':
+                    case '(':
+                    case ')':
+                    case '"':
+                    case '\'':
+                        return false;
+                    case '+':
+                    case '-':
+                        // only a unary sign, which must be followed by a digit and not follow an identifier
+                        if (i > 0 || value.length() < 2 || !Character.isDigit(value.charAt(1))
+                                || (!preceding.isEmpty() && preceding.get(preceding.size() - 1).getType() == TokenTypes.IDENTIFIER)) {
+                            return false;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return true;
+        }
+
+        // Tokenize the template and classify its markers.  Returns false if the template has to
+        // be expanded by makeTemplateSubstitutions() every time.
+        private boolean compile() {
+            if (template.indexOf("DBNOP") >= 0) {
+                return false;
+            }
+            ErrorList errors = new ErrorList();
+            TokenList tokens = new Tokenizer().tokenizeLine(0, template, errors, false);
+            if (errors.errorsOccurred() || tokens.isEmpty()) {
+                return false;
+            }
+            int count = tokens.size();
+            values = new String[count];
+            types = new TokenTypes[count];
+            startPositions = new int[count];
+            kinds = new int[count];
+            operands = new int[count];
+            addends = new int[count];
+            unsigned = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                Token token = tokens.get(i);
+                String value = token.getValue();
+                values[i] = value;
+                types[i] = token.getType();
+                startPositions[i] = token.getStartPos();
+                if (!compileMarker(i, value)) {
+                    return false;
+                }
+                // A sign is taken to be unary or not depending on the token before it, which
+                // for a marker is not known until substitution.
+                if (kinds[i] == LITERAL && (value.charAt(0) == '+' || value.charAt(0) == '-')) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Classify template token i.  Returns false if it is neither a literal nor
+        // a well-formed marker.
+        private boolean compileMarker(int i, String value) {
+            kinds[i] = LITERAL;
+            if (value.equals("LHL")) {
+                kinds[i] = LA_HIGH;
+            } else if (value.equals("LHPA") || value.startsWith("LHPAP")) {
+                kinds[i] = OFFSET_HIGH;
+                return value.length() == 4 || value.length() == 6 && digitsFollow(value, 5, 1) && (addends[i] = digit(value, 5)) >= 0;
+            } else if (value.equals("LHPN")) {
+                kinds[i] = OFFSET_HIGH_LOGICAL;
+            } else if (value.startsWith("LLP")) {
+                kinds[i] = OFFSET_LOW;
+                if (value.length() == 3) {
+                    return true;
+                }
+                if (value.equals("LLPU")) {
+                    unsigned[i] = true;
+                    return true;
+                }
+                return value.length() == 5 && value.startsWith("LLPP") && digitsFollow(value, 4, 1) && (addends[i] = digit(value, 4)) >= 0;
+            } else if (value.startsWith("BROFF")) {
+                kinds[i] = BRANCH_OFFSET;
+                if (value.length() != 7 || !digitsFollow(value, 5, 2)) {
+                    return false;
+                }
+                operands[i] = digit(value, 5);
+                addends[i] = digit(value, 6);
+            } else if (value.equals("S32")) {
+                kinds[i] = SHIFT_32;
+            } else if (value.equals("LAB")) {
+                kinds[i] = LABEL;
+            } else if (value.startsWith("RG") || value.startsWith("OP")) {
+                kinds[i] = OPERAND;
+                return operandFollows(i, value, 2) && value.length() == 3;
+            } else if (value.startsWith("NR")) {
+                kinds[i] = NEXT_REGISTER;
+                return operandFollows(i, value, 2) && value.length() == 3;
+            } else if (value.startsWith("LH")) {
+                kinds[i] = LABEL_HIGH;
+                return operandFollows(i, value, 2) && addendFollows(i, value, 3, false);
+            } else if (value.startsWith("LL")) {
+                kinds[i] = LOW;
+                return operandFollows(i, value, 2) && (value.equals(value.substring(0, 3) + "U") ? (unsigned[i] = true)
+                        : addendFollows(i, value, 3, false));
+            } else if (value.startsWith("VHL")) {
+                kinds[i] = VALUE_HIGH_LOGICAL;
+                return operandFollows(i, value, 3) && addendFollows(i, value, 4, false);
+            } else if (value.startsWith("VH")) {
+                kinds[i] = VALUE_HIGH;
+                return operandFollows(i, value, 2) && addendFollows(i, value, 3, false);
+            } else if (value.startsWith("VL")) {
+                kinds[i] = LOW;
+                return operandFollows(i, value, 2) && (value.equals(value.substring(0, 3) + "U") ? (unsigned[i] = true)
+                        : addendFollows(i, value, 3, true));
+            } else {
+                return !containsMarker(value);
+            }
+            return true;
+        }
+
+        // The operand digit (1-9) is at position pos and is stored for marker i.
+        private boolean operandFollows(int i, String value, int pos) {
+            return digitsFollow(value, pos, 1) && (operands[i] = digit(value, pos)) > 0;
+        }
+
+        // Either nothing follows position pos, or "P" and the digit to add (then optionally "U").
+        private boolean addendFollows(int i, String value, int pos, boolean allowUnsigned) {
+            if (value.length() == pos) {
+                return true;
+            }
+            if (value.charAt(pos) != 'P' || !digitsFollow(value, pos + 1, 1)) {
+                return false;
+            }
+            addends[i] = digit(value, pos + 1);
+            if (value.length() == pos + 2) {
+                return true;
+            }
+            return allowUnsigned && value.length() == pos + 3 && value.charAt(pos + 2) == 'U' && (unsigned[i] = true);
+        }
+
+        private static boolean digitsFollow(String value, int pos, int count) {
+            if (value.length() < pos + count) {
+                return false;
+            }
+            for (int i = pos; i < pos + count; i++) {
+                if (!Character.isDigit(value.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int digit(String value, int pos) {
+            return value.charAt(pos) - '0';
+        }
+
+        // A literal token must not contain anything makeTemplateSubstitutions() would substitute.
+        private static boolean containsMarker(String value) {
+            String[] markers = {"RG", "OP", "NR", "LH", "LL", "VH", "VL", "BROFF", "S32", "LAB", "DBNOP"};
+            for (int i = 0; i < markers.length; i++) {
+                if (value.indexOf(markers[i]) >= 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+}
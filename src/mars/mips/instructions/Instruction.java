@@ -68,7 +68,7 @@ public abstract class Instruction {
     /**
      * List of tokens generated by tokenizing example usage (see <tt>exampleFormat</tt>).
      **/
-    protected TokenList tokenList;
+    protected volatile TokenList tokenList;
 
 
     /**
@@ -112,6 +112,9 @@ public abstract class Instruction {
      */
 
     public TokenList getTokenList() {
+        if (tokenList == null) {
+            createExampleTokenList();
+        }
         return tokenList;
     }
 
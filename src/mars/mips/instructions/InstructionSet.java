@@ -10,6 +10,7 @@ import mars.mips.hardware.RegisterFile;
 import mars.mips.instructions.syscalls.Syscall;
 import mars.simulator.DelayedBranch;
 import mars.simulator.Exceptions;
+import mars.simulator.Simulator;
 import mars.util.Binary;
 
 import java.io.BufferedReader;
@@ -18,6 +19,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.StringTokenizer;
 
@@ -60,8 +62,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 public class InstructionSet {
     private ArrayList<Instruction> instructionList;
-    private ArrayList opcodeMatchMaps;
+    private volatile DecodeTable decodeTable;
+    private HashMap<String, ArrayList<Instruction>> mnemonicIndex;
+    private MnemonicTrie mnemonicPrefixes;
     private SyscallLoader syscallLoader;
+    private BasicInstruction[] basicInstructions;
 
     /**
      * Creates a new InstructionSet object.
@@ -79,6 +84,15 @@ public class InstructionSet {
 
     }
 
+    /**
+     * Retrieve the basic instructions of the set, each at the index given by its id.
+     *
+     * @see BasicInstruction#getId()
+     */
+    public BasicInstruction[] getBasicInstructions() {
+        return basicInstructions.clone();
+    }
+
     /**
      * Adds all instructions to the set.  A given extended instruction may have
      * more than one Instruction object, depending on how many formats it can have.
@@ -2671,46 +2685,83 @@ public class InstructionSet {
         ////////////// READ PSEUDO-INSTRUCTION SPECS FROM DATA FILE AND ADD //////////////////////
         addPseudoInstructions();
 
+        ////////////// INDEX ALL INSTRUCTIONS BY MNEMONIC ////////////////////
+        // Must come before any example token list is created, as tokenizing
+        // looks operators up through matchOperator().
+        indexMnemonics();
+        numberBasicInstructions();
+
         ////////////// GET AND CREATE LIST OF SYSCALL FUNCTION OBJECTS ////////////////////
         syscallLoader = new SyscallLoader();
         syscallLoader.loadSyscalls();
 
-        // Initialization step.  Create token list for each instruction example.  This is
-        // used by parser to determine user program correct syntax.
+        // The remaining per-instruction work is done on first use rather than here, since
+        // a program uses few of the instructions and this runs on every launch: the token
+        // list for each instruction example (used by parser to determine user program correct
+        // syntax) is created by Instruction.getTokenList(), pseudo-instruction templates are
+        // compiled by ExtendedInstruction.getTranslationTemplates() and the binary decode
+        // table is built by findByBinaryCode().
+
+    }
+
+    /*
+     * Index instructions by lower-case mnemonic for the assembler and the editor.
+     * Both structures keep instructions in instruction list order.
+     */
+    private void indexMnemonics() {
+        HashMap<String, ArrayList<Instruction>> index = new HashMap<String, ArrayList<Instruction>>();
+        MnemonicTrie prefixes = new MnemonicTrie();
         for (int i = 0; i < instructionList.size(); i++) {
-            Instruction inst = (Instruction) instructionList.get(i);
-            inst.createExampleTokenList();
+            Instruction inst = instructionList.get(i);
+            String key = inst.getName().toLowerCase();
+            ArrayList<Instruction> sameName = index.get(key);
+            if (sameName == null) {
+                sameName = new ArrayList<Instruction>(2);
+                index.put(key, sameName);
+            }
+            sameName.add(inst);
+            prefixes.add(key, inst);
         }
+        this.mnemonicIndex = index;
+        this.mnemonicPrefixes = prefixes;
+    }
 
-        HashMap maskMap = new HashMap();
-        ArrayList matchMaps = new ArrayList();
+    /*
+     * Give each basic instruction its id, in instruction list order.
+     */
+    private void numberBasicInstructions() {
+        ArrayList<BasicInstruction> basics = new ArrayList<BasicInstruction>();
         for (int i = 0; i < instructionList.size(); i++) {
-            Object rawInstr = instructionList.get(i);
-            if (rawInstr instanceof BasicInstruction) {
-                BasicInstruction basic = (BasicInstruction) rawInstr;
-                Integer mask = Integer.valueOf(basic.getOpcodeMask());
-                Integer match = Integer.valueOf(basic.getOpcodeMatch());
-                HashMap matchMap = (HashMap) maskMap.get(mask);
-                if (matchMap == null) {
-                    matchMap = new HashMap();
-                    maskMap.put(mask, matchMap);
-                    matchMaps.add(new MatchMap(mask, matchMap));
-                }
-                matchMap.put(match, basic);
+            if (instructionList.get(i) instanceof BasicInstruction) {
+                BasicInstruction basic = (BasicInstruction) instructionList.get(i);
+                basic.setId(basics.size());
+                basics.add(basic);
             }
         }
-        Collections.sort(matchMaps);
-        this.opcodeMatchMaps = matchMaps;
+        this.basicInstructions = basics.toArray(new BasicInstruction[basics.size()]);
     }
 
+    /**
+     * Given a 32-bit machine instruction, will return the BasicInstruction it encodes.
+     * Where more than one instruction's operation mask matches, the one with the most
+     * fixed bits wins.  Table-driven and allocation-free.
+     *
+     * @param binaryInstr the binary machine code
+     * @return the matching BasicInstruction, or null if the code is not a valid instruction.
+     */
     public BasicInstruction findByBinaryCode(int binaryInstr) {
-        ArrayList matchMaps = this.opcodeMatchMaps;
-        for (int i = 0; i < matchMaps.size(); i++) {
-            MatchMap map = (MatchMap) matchMaps.get(i);
-            BasicInstruction ret = map.find(binaryInstr);
-            if (ret != null) return ret;
+        DecodeTable table = decodeTable;
+        if (table == null) {
+            // Build the binary decode table from all basic instructions' operation masks.
+            ArrayList<BasicInstruction> basics = new ArrayList<BasicInstruction>();
+            for (int i = 0; i < instructionList.size(); i++) {
+                if (instructionList.get(i) instanceof BasicInstruction) {
+                    basics.add((BasicInstruction) instructionList.get(i));
+                }
+            }
+            table = decodeTable = new DecodeTable(basics); // harmless if two threads both build one
         }
-        return null;
+        return table.find(binaryInstr);
     }
 
     /*  METHOD TO ADD PSEUDO-INSTRUCTIONS
@@ -2781,18 +2832,36 @@ public class InstructionSet {
 
     /**
      * Given an operator mnemonic, will return the corresponding Instruction object(s)
-     * from the instruction set.  Uses straight linear search technique.
+     * from the instruction set.  Case-insensitive.  Uses hash lookup on the index
+     * built by populate().  The returned list is shared and must not be modified.
      *
      * @param name operator mnemonic (e.g. addi, sw,...)
      * @return list of corresponding Instruction object(s), or null if not found.
      */
     public ArrayList matchOperator(String name) {
-        ArrayList matchingInstructions = null;
-        // Linear search for now....
+        if (name == null) {
+            return null;
+        }
+        if (mnemonicIndex == null) {
+            // Still in populate(): pseudo-instruction templates are being tokenized.
+            return linearMatchOperator(name);
+        }
+        // Source is almost always lower case already, so try that before converting.
+        ArrayList<Instruction> matchingInstructions = mnemonicIndex.get(name);
+        if (matchingInstructions == null) {
+            matchingInstructions = mnemonicIndex.get(name.toLowerCase());
+        }
+        return matchingInstructions;
+    }
+
+
+    // Straight linear search, for use before the mnemonic index has been built.
+    private ArrayList<Instruction> linearMatchOperator(String name) {
+        ArrayList<Instruction> matchingInstructions = null;
         for (int i = 0; i < instructionList.size(); i++) {
-            if (((Instruction) instructionList.get(i)).getName().equalsIgnoreCase(name)) {
+            if (instructionList.get(i).getName().equalsIgnoreCase(name)) {
                 if (matchingInstructions == null)
-                    matchingInstructions = new ArrayList();
+                    matchingInstructions = new ArrayList<Instruction>();
                 matchingInstructions.add(instructionList.get(i));
             }
         }
@@ -2803,24 +2872,17 @@ public class InstructionSet {
     /**
      * Given a string, will return the Instruction object(s) from the instruction
      * set whose operator mnemonic prefix matches it.  Case-insensitive.  For example
-     * "s" will match "sw", "sh", "sb", etc.  Uses straight linear search technique.
+     * "s" will match "sw", "sh", "sb", etc.  Walks the prefix trie built by populate().
+     * The returned list is shared and must not be modified.
      *
      * @param name a string
      * @return list of matching Instruction object(s), or null if none match.
      */
     public ArrayList prefixMatchOperator(String name) {
-        ArrayList matchingInstructions = null;
-        // Linear search for now....
-        if (name != null) {
-            for (int i = 0; i < instructionList.size(); i++) {
-                if (((Instruction) instructionList.get(i)).getName().toLowerCase().startsWith(name.toLowerCase())) {
-                    if (matchingInstructions == null)
-                        matchingInstructions = new ArrayList();
-                    matchingInstructions.add(instructionList.get(i));
-                }
-            }
+        if (name == null) {
+            return null;
         }
-        return matchingInstructions;
+        return mnemonicPrefixes.find(name.toLowerCase());
     }
 
     /*
@@ -2858,7 +2920,7 @@ public class InstructionSet {
     // the bottom (currently line 194, heavily commented).
 
     private void processBranch(int displacement) {
-        if (Globals.getSettings().getDelayedBranchingEnabled()) {
+        if (Simulator.getRuntimeSettings().getDelayedBranchingEnabled()) {
             // Register the branch target address (absolute byte address).
             DelayedBranch.register(RegisterFile.getProgramCounter() + (displacement << 2));
         } else {
@@ -2880,7 +2942,7 @@ public class InstructionSet {
      */
 
     private void processJump(int targetAddress) {
-        if (Globals.getSettings().getDelayedBranchingEnabled()) {
+        if (Simulator.getRuntimeSettings().getDelayedBranchingEnabled()) {
             DelayedBranch.register(targetAddress);
         } else {
             RegisterFile.setProgramCounter(targetAddress);
@@ -2901,42 +2963,163 @@ public class InstructionSet {
 
     private void processReturnAddress(int register) {
         RegisterFile.updateRegister(register, RegisterFile.getProgramCounter() +
-                ((Globals.getSettings().getDelayedBranchingEnabled()) ?
+                ((Simulator.getRuntimeSettings().getDelayedBranchingEnabled()) ?
                         Instruction.INSTRUCTION_LENGTH : 0));
     }
 
-    private static class MatchMap implements Comparable {
-        private int mask;
-        private int maskLength; // number of 1 bits in mask
-        private HashMap matchMap;
+    /*
+     * Prefix trie over lower-case instruction mnemonics.  Every node keeps the list
+     * of all instructions whose mnemonic starts with the prefix leading to that
+     * node, so a prefix lookup is a walk of the prefix's length with no copying.
+     */
+    private static class MnemonicTrie {
+        private HashMap<Character, MnemonicTrie> children = new HashMap<Character, MnemonicTrie>();
+        private ArrayList<Instruction> matches = new ArrayList<Instruction>();
+
+        public void add(String mnemonic, Instruction inst) {
+            MnemonicTrie node = this;
+            node.matches.add(inst);
+            for (int i = 0; i < mnemonic.length(); i++) {
+                Character c = Character.valueOf(mnemonic.charAt(i));
+                MnemonicTrie child = node.children.get(c);
+                if (child == null) {
+                    child = new MnemonicTrie();
+                    node.children.put(c, child);
+                }
+                node = child;
+                node.matches.add(inst);
+            }
+        }
+
+        public ArrayList<Instruction> find(String prefix) {
+            MnemonicTrie node = this;
+            for (int i = 0; i < prefix.length() && node != null; i++) {
+                node = node.children.get(Character.valueOf(prefix.charAt(i)));
+            }
+            return (node == null || node.matches.isEmpty()) ? null : node.matches;
+        }
+    }
+
+    /*
+     * Two-level decode table.  The first level is indexed by the primary opcode
+     * (bits 31-26).  For each opcode, the second level is indexed by whichever of
+     * the funct (5-0), rt (20-16) or fmt/rs (25-21) fields best separates that
+     * opcode's instructions, which works out to funct for SPECIAL, rt for REGIMM
+     * and fmt for COP1.  Each second-level slot lists the few instructions that can
+     * match there, most specific operation mask first, so a lookup is two array
+     * indexes followed by a short mask-and-compare scan.
+     *
+     * Specificity order is number of fixed bits, highest first, then mask value.
+     * If two instructions have identical mask and match, the later one in the
+     * instruction list wins.
+     */
+    private static class DecodeTable {
+        private static final int[] FIELD_SHIFTS = {0, 16, 21};
+        private static final int[] FIELD_MASKS = {0x3F, 0x1F, 0x1F};
+        private static final int OPCODE_SHIFT = 26;
+        private static final int OPCODES = 64;
 
-        public MatchMap(int mask, HashMap matchMap) {
-            this.mask = mask;
-            this.matchMap = matchMap;
+        private int[] fieldShift = new int[OPCODES];
+        private int[] fieldMask = new int[OPCODES];
+        // [opcode][field value][candidate]
+        private BasicInstruction[][][] instructions = new BasicInstruction[OPCODES][][];
+        private int[][][] masks = new int[OPCODES][][];
+        private int[][][] matches = new int[OPCODES][][];
 
-            int k = 0;
-            int n = mask;
-            while (n != 0) {
-                k++;
-                n &= n - 1;
+        public DecodeTable(ArrayList<BasicInstruction> basics) {
+            ArrayList<BasicInstruction> unique = new ArrayList<BasicInstruction>();
+            for (int i = basics.size() - 1; i >= 0; i--) {
+                BasicInstruction basic = basics.get(i);
+                boolean shadowed = false;
+                for (int j = 0; j < unique.size() && !shadowed; j++) {
+                    shadowed = unique.get(j).getOpcodeMask() == basic.getOpcodeMask()
+                            && unique.get(j).getOpcodeMatch() == basic.getOpcodeMatch();
+                }
+                if (!shadowed) {
+                    unique.add(basic);
+                }
+            }
+            Collections.sort(unique, new Comparator<BasicInstruction>() {
+                public int compare(BasicInstruction a, BasicInstruction b) {
+                    int d = Integer.bitCount(b.getOpcodeMask()) - Integer.bitCount(a.getOpcodeMask());
+                    if (d == 0) d = a.getOpcodeMask() - b.getOpcodeMask();
+                    return d;
+                }
+            });
+            for (int opcode = 0; opcode < OPCODES; opcode++) {
+                ArrayList<BasicInstruction> candidates = new ArrayList<BasicInstruction>();
+                for (int i = 0; i < unique.size(); i++) {
+                    if (fieldAdmits(unique.get(i), OPCODE_SHIFT, 0x3F, opcode)) {
+                        candidates.add(unique.get(i));
+                    }
+                }
+                buildSecondLevel(opcode, candidates);
             }
-            this.maskLength = k;
         }
 
-        public boolean equals(Object o) {
-            return o instanceof MatchMap && mask == ((MatchMap) o).mask;
+        // Choose the field that leaves the fewest candidates in the fullest slot,
+        // then fill that opcode's slots.  Sorted order is preserved in each slot.
+        private void buildSecondLevel(int opcode, ArrayList<BasicInstruction> candidates) {
+            int bestField = 0;
+            int bestWorst = Integer.MAX_VALUE;
+            for (int f = 0; f < FIELD_SHIFTS.length; f++) {
+                int worst = 0;
+                for (int value = 0; value <= FIELD_MASKS[f]; value++) {
+                    int count = 0;
+                    for (int i = 0; i < candidates.size(); i++) {
+                        if (fieldAdmits(candidates.get(i), FIELD_SHIFTS[f], FIELD_MASKS[f], value)) {
+                            count++;
+                        }
+                    }
+                    worst = Math.max(worst, count);
+                }
+                if (worst < bestWorst) {
+                    bestWorst = worst;
+                    bestField = f;
+                }
+            }
+            int slots = FIELD_MASKS[bestField] + 1;
+            fieldShift[opcode] = FIELD_SHIFTS[bestField];
+            fieldMask[opcode] = FIELD_MASKS[bestField];
+            instructions[opcode] = new BasicInstruction[slots][];
+            masks[opcode] = new int[slots][];
+            matches[opcode] = new int[slots][];
+            for (int value = 0; value < slots; value++) {
+                ArrayList<BasicInstruction> slot = new ArrayList<BasicInstruction>();
+                for (int i = 0; i < candidates.size(); i++) {
+                    if (fieldAdmits(candidates.get(i), FIELD_SHIFTS[bestField], FIELD_MASKS[bestField], value)) {
+                        slot.add(candidates.get(i));
+                    }
+                }
+                instructions[opcode][value] = slot.toArray(new BasicInstruction[slot.size()]);
+                masks[opcode][value] = new int[slot.size()];
+                matches[opcode][value] = new int[slot.size()];
+                for (int i = 0; i < slot.size(); i++) {
+                    masks[opcode][value][i] = slot.get(i).getOpcodeMask();
+                    matches[opcode][value][i] = slot.get(i).getOpcodeMatch();
+                }
+            }
         }
 
-        public int compareTo(Object other) {
-            MatchMap o = (MatchMap) other;
-            int d = o.maskLength - this.maskLength;
-            if (d == 0) d = this.mask - o.mask;
-            return d;
+        // Can an instruction whose field (at shift, of width mask) holds value match basic?
+        // True unless one of the field's fixed bits in basic disagrees with value.
+        private static boolean fieldAdmits(BasicInstruction basic, int shift, int mask, int value) {
+            int fixed = (basic.getOpcodeMask() >>> shift) & mask;
+            int required = (basic.getOpcodeMatch() >>> shift) & mask;
+            return (value & fixed) == required;
         }
 
         public BasicInstruction find(int instr) {
-            int match = Integer.valueOf(instr & mask);
-            return (BasicInstruction) matchMap.get(match);
+            int opcode = instr >>> OPCODE_SHIFT;
+            int value = (instr >>> fieldShift[opcode]) & fieldMask[opcode];
+            int[] slotMasks = masks[opcode][value];
+            int[] slotMatches = matches[opcode][value];
+            for (int i = 0; i < slotMasks.length; i++) {
+                if ((instr & slotMasks[i]) == slotMatches[i]) {
+                    return instructions[opcode][value][i];
+                }
+            }
+            return null;
         }
     }
 }
@@ -1,9 +1,7 @@
 package mars.mips.instructions;
 
 import mars.Globals;
-import mars.mips.instructions.syscalls.Syscall;
-import mars.mips.instructions.syscalls.SyscallNumberOverride;
-import mars.util.FilenameFinder;
+import mars.mips.instructions.syscalls.*;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -38,73 +36,119 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 
 /****************************************************************************/
-/* This class provides functionality to bring external Syscall definitions
- * into MARS.  This permits anyone with knowledge of the Mars public interfaces,
- * in particular of the Memory and Register classes, to write custom MIPS syscall
- * functions. This is adapted from the ToolLoader class, which is in turn adapted
- * from Bret Barker's GameServer class from the book "Developing Games In Java".
+/* This class provides the Syscall definitions known to MARS.  Anyone with
+ * knowledge of the Mars public interfaces, in particular of the Memory and
+ * Register classes, can write a custom MIPS syscall function: write a class
+ * that implements Syscall (usually by extending AbstractSyscall) and add an
+ * instance of it to the list in createSyscalls() below.  Only syscalls in that
+ * list are known to MARS.
+ *
+ * The list used to be built at startup by searching the syscalls directory or
+ * jar for class files and instantiating each by reflection, adapted from the
+ * ToolLoader class.  Listing them here avoids that search on every launch, but
+ * a class placed in the syscalls directory is no longer found by itself.
+ * Service numbers may still be changed through Syscall.properties.
  */
 
 class SyscallLoader {
 
-    private static final String CLASS_PREFIX = "mars.mips.instructions.syscalls.";
-    private static final String SYSCALLS_DIRECTORY_PATH = "mars/mips/instructions/syscalls";
-    private static final String SYSCALL_INTERFACE = "Syscall.class";
-    private static final String SYSCALL_ABSTRACT = "AbstractSyscall.class";
-    private static final String CLASS_EXTENSION = "class";
+    // Service numbers below this are looked up in an array indexed by number,
+    // which covers all of the standard services.  Others go in a map.
+    private static final int DENSE_LIMIT = 1024;
 
-    private ArrayList syscallList;
+    private ArrayList<Syscall> syscallList;
+    private Syscall[] syscallTable;
+    private HashMap<Integer, Syscall> sparseSyscalls;
 
     /*
-     *  Dynamically loads Syscalls into an ArrayList.  This method is adapted from
-     *  the loadGameControllers() method in Bret Barker's GameServer class.
-     *  Barker (bret@hypefiend.com) is co-author of the book "Developing Games
-     *  in Java".  Also see the "loadMarsTools()" method from ToolLoader class.
+     *  Creates one instance of every syscall.  Add new syscalls here.
+     */
+    private static Syscall[] createSyscalls() {
+        return new Syscall[]{
+                new SyscallPrintInt(),
+                new SyscallPrintFloat(),
+                new SyscallPrintDouble(),
+                new SyscallPrintString(),
+                new SyscallReadInt(),
+                new SyscallReadFloat(),
+                new SyscallReadDouble(),
+                new SyscallReadString(),
+                new SyscallSbrk(),
+                new SyscallExit(),
+                new SyscallPrintChar(),
+                new SyscallReadChar(),
+                new SyscallOpen(),
+                new SyscallRead(),
+                new SyscallWrite(),
+                new SyscallClose(),
+                new SyscallExit2(),
+                new SyscallTime(),
+                new SyscallMidiOut(),
+                new SyscallSleep(),
+                new SyscallMidiOutSync(),
+                new SyscallPrintIntHex(),
+                new SyscallPrintIntBinary(),
+                new SyscallPrintIntUnsigned(),
+                new SyscallRandSeed(),
+                new SyscallRandInt(),
+                new SyscallRandIntRange(),
+                new SyscallRandFloat(),
+                new SyscallRandDouble(),
+                new SyscallConfirmDialog(),
+                new SyscallInputDialogInt(),
+                new SyscallInputDialogFloat(),
+                new SyscallInputDialogDouble(),
+                new SyscallInputDialogString(),
+                new SyscallMessageDialog(),
+                new SyscallMessageDialogInt(),
+                new SyscallMessageDialogFloat(),
+                new SyscallMessageDialogDouble(),
+                new SyscallMessageDialogString(),
+                new SyscallLseek(),
+        };
+    }
+
+    /*
+     *  Loads Syscalls into an ArrayList, applies any service number overrides,
+     *  then indexes them by service number.
      */
     void loadSyscalls() {
-        syscallList = new ArrayList();
-        // grab all class files in the same directory as Syscall
-        ArrayList candidates = FilenameFinder.getFilenameList(this.getClass().getClassLoader(),
-                SYSCALLS_DIRECTORY_PATH, CLASS_EXTENSION);
-        HashMap syscalls = new HashMap();
-        for (int i = 0; i < candidates.size(); i++) {
-            String file = (String) candidates.get(i);
-            // Do not add class if already encountered (happens if run in MARS development directory)
-            if (syscalls.containsKey(file)) {
-                continue;
-            } else {
-                syscalls.put(file, file);
-            }
-            if ((!file.equals(SYSCALL_INTERFACE)) &&
-                    (!file.equals(SYSCALL_ABSTRACT))) {
-                try {
-                    // grab the class, make sure it implements Syscall, instantiate, add to list
-                    String syscallClassName = CLASS_PREFIX + file.substring(0, file.indexOf(CLASS_EXTENSION) - 1);
-                    Class clas = Class.forName(syscallClassName);
-                    if (!Syscall.class.isAssignableFrom(clas)) {
-                        continue;
-                    }
-                    Syscall syscall = (Syscall) clas.newInstance();
-                    if (findSyscall(syscall.getNumber()) == null) {
-                        syscallList.add(syscall);
-                    } else {
-                        throw new Exception("Duplicate service number: " + syscall.getNumber() +
-                                " already registered to " +
-                                findSyscall(syscall.getNumber()).getName());
-                    }
-                } catch (Exception e) {
-                    System.out.println("Error instantiating Syscall from file " + file + ": " + e);
-                    System.exit(0);
-                }
-            }
+        syscallList = new ArrayList<Syscall>();
+        Syscall[] syscalls = createSyscalls();
+        for (int i = 0; i < syscalls.length; i++) {
+            syscallList.add(syscalls[i]);
         }
         syscallList = processSyscallNumberOverrides(syscallList);
+        indexSyscalls();
         return;
     }
 
+    // Build the table used by findSyscall.  Numbers are known to be unique
+    // once overrides have been processed.
+    private void indexSyscalls() {
+        int size = 0;
+        sparseSyscalls = new HashMap<Integer, Syscall>();
+        for (int i = 0; i < syscallList.size(); i++) {
+            int number = syscallList.get(i).getNumber();
+            if (number >= 0 && number < DENSE_LIMIT) {
+                size = Math.max(size, number + 1);
+            }
+        }
+        syscallTable = new Syscall[size];
+        for (int i = 0; i < syscallList.size(); i++) {
+            Syscall syscall = syscallList.get(i);
+            int number = syscall.getNumber();
+            if (number >= 0 && number < DENSE_LIMIT) {
+                syscallTable[number] = syscall;
+            } else {
+                sparseSyscalls.put(Integer.valueOf(number), syscall);
+            }
+        }
+    }
+
     // Will get any syscall number override specifications from MARS config file and
     // process them.  This will alter syscallList entry for affected names.
-    private ArrayList processSyscallNumberOverrides(ArrayList syscallList) {
+    private ArrayList<Syscall> processSyscallNumberOverrides(ArrayList<Syscall> syscallList) {
         ArrayList overrides = new Globals().getSyscallOverrides();
         SyscallNumberOverride override;
         Syscall syscall;
@@ -112,7 +156,7 @@ class SyscallLoader {
             override = (SyscallNumberOverride) overrides.get(index);
             boolean match = false;
             for (int i = 0; i < syscallList.size(); i++) {
-                syscall = (Syscall) syscallList.get(i);
+                syscall = syscallList.get(i);
                 if (override.getName().equals(syscall.getName())) {
                     // we have a match to service name, assign new number
                     syscall.setNumber(override.getNumber());
@@ -134,9 +178,9 @@ class SyscallLoader {
         Syscall syscallA, syscallB;
         boolean duplicates = false;
         for (int i = 0; i < syscallList.size(); i++) {
-            syscallA = (Syscall) syscallList.get(i);
+            syscallA = syscallList.get(i);
             for (int j = i + 1; j < syscallList.size(); j++) {
-                syscallB = (Syscall) syscallList.get(j);
+                syscallB = syscallList.get(j);
                 if (syscallA.getNumber() == syscallB.getNumber()) {
                     System.out.println("Error: syscalls " + syscallA.getName() + " and " +
                             syscallB.getName() + " are both assigned same number " + syscallA.getNumber());
@@ -155,17 +199,12 @@ class SyscallLoader {
      * Returns null if no associated object found.
      */
     Syscall findSyscall(int number) {
-        // linear search is OK since number of syscalls is small.
-        Syscall service, match = null;
-        if (syscallList == null) {
+        if (syscallTable == null) {
             loadSyscalls();
         }
-        for (int index = 0; index < syscallList.size(); index++) {
-            service = (Syscall) syscallList.get(index);
-            if (service.getNumber() == number) {
-                match = service;
-            }
+        if (number >= 0 && number < syscallTable.length) {
+            return syscallTable[number];
         }
-        return match;
+        return sparseSyscalls.get(Integer.valueOf(number));
     }
 }
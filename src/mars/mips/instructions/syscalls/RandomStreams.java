@@ -31,16 +31,139 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
 
+
 /**
- * This small class serves only to hold a static HashMap for storing
- * random number generators for use by all the random number generator
- * syscalls.
+ * This small class serves only to hold the random number generators for
+ * use by all the random number generator syscalls.  Each stream, identified
+ * by an int, has its own generator.
+ * <p>
+ * The generators use the same algorithm as <tt>java.util.Random</tt>, so a
+ * stream given a seed by syscall 40 produces the same sequence it always has,
+ * but without the thread safety (an atomic update on every call) that
+ * <tt>Random</tt> pays for and syscalls do not need.  Stream ids are usually
+ * small, so those below DENSE_LIMIT are found by array index; the rest are
+ * kept in a HashMap.
  */
 
 public class RandomStreams {
+    private static final int DENSE_LIMIT = 16;
+
+    private static Generator[] denseStreams = new Generator[DENSE_LIMIT];
+    private static HashMap<Integer, Generator> sparseStreams = new HashMap<Integer, Generator>();
+    private static long streamsCreated = 0;
+
+    /**
+     * Get the generator for the given stream, creating it if needed.
+     * The streams are by default not seeded (seeded from the system clock).
+     *
+     * @param id stream id, from $a0
+     * @return the stream's generator
+     */
+    static Generator getStream(int id) {
+        Generator stream = (id >= 0 && id < DENSE_LIMIT) ? denseStreams[id] : sparseStreams.get(id);
+        if (stream == null) {
+            stream = new Generator(System.nanoTime() ^ (++streamsCreated * 0x9E3779B97F4A7C15L));
+            putStream(id, stream);
+        }
+        return stream;
+    }
+
     /**
-     * Collection of pseudorandom number streams available for use in Rand-type syscalls.
-     * The streams are by default not seeded.
+     * Set the seed of the given stream, creating it if needed.
+     *
+     * @param id   stream id, from $a0
+     * @param seed the seed, as for <tt>java.util.Random.setSeed()</tt>
      */
-    static final HashMap randomStreams = new HashMap();
-}
\ No newline at end of file
+    static void setSeed(int id, long seed) {
+        Generator stream = (id >= 0 && id < DENSE_LIMIT) ? denseStreams[id] : sparseStreams.get(id);
+        if (stream == null) {
+            putStream(id, new Generator(seed));
+        } else {
+            stream.setSeed(seed);
+        }
+    }
+
+    /**
+     * Discard all streams, so a new program run does not continue sequences
+     * from the last one.
+     */
+    public static void resetStreams() {
+        denseStreams = new Generator[DENSE_LIMIT];
+        sparseStreams.clear();
+    }
+
+    private static void putStream(int id, Generator stream) {
+        if (id >= 0 && id < DENSE_LIMIT) {
+            denseStreams[id] = stream;
+        } else {
+            sparseStreams.put(id, stream);
+        }
+    }
+
+    /**
+     * Pseudorandom number generator giving the same values as <tt>java.util.Random</tt>
+     * for the same seed: a 48-bit linear congruential generator, and the same methods
+     * of deriving ints, floats and doubles from it.  Not thread safe.
+     */
+    static final class Generator {
+        private static final long MULTIPLIER = 0x5DEECE66DL;
+        private static final long ADDEND = 0xBL;
+        private static final long MASK = (1L << 48) - 1;
+
+        private long seed;
+
+        Generator(long seed) {
+            setSeed(seed);
+        }
+
+        void setSeed(long seed) {
+            this.seed = (seed ^ MULTIPLIER) & MASK;
+        }
+
+        /**
+         * @return the next int value, all 2<sup>32</sup> values equally likely
+         */
+        int nextInt() {
+            return next(32);
+        }
+
+        /**
+         * @param bound upper bound (exclusive) of the value
+         * @return the next int value between 0 (inclusive) and bound (exclusive)
+         * @throws IllegalArgumentException if bound is not positive
+         */
+        int nextInt(int bound) {
+            if (bound <= 0) {
+                throw new IllegalArgumentException("bound must be positive");
+            }
+            int r = next(31);
+            int m = bound - 1;
+            if ((bound & m) == 0) { // power of 2
+                return (int) ((bound * (long) r) >> 31);
+            }
+            for (int u = r; u - (r = u % bound) + m < 0; u = next(31)) {
+                // reject values from the incomplete last range so all results are equally likely
+            }
+            return r;
+        }
+
+        /**
+         * @return the next float value between 0.0 (inclusive) and 1.0 (exclusive)
+         */
+        float nextFloat() {
+            return next(24) / ((float) (1 << 24));
+        }
+
+        /**
+         * @return the next double value between 0.0 (inclusive) and 1.0 (exclusive)
+         */
+        double nextDouble() {
+            return (((long) next(26) << 27) + next(27)) * 0x1.0p-53;
+        }
+
+        private int next(int bits) {
+            seed = (seed * MULTIPLIER + ADDEND) & MASK;
+            return (int) (seed >>> (48 - bits));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package mars.mips.instructions.syscalls;
+
+import mars.ProcessingException;
+import mars.ProgramStatement;
+import mars.mips.hardware.RegisterFile;
+import mars.util.SystemIO;
+
+/*
+Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining 
+a copy of this software and associated documentation files (the 
+"Software"), to deal in the Software without restriction, including 
+without limitation the rights to use, copy, modify, merge, publish, 
+distribute, sublicense, and/or sell copies of the Software, and to 
+permit persons to whom the Software is furnished to do so, subject 
+to the following conditions:
+
+The above copyright notice and this permission notice shall be 
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION 
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+
+/**
+ * Service to set the position of the next read or write in the file given by descriptor $a0.
+ * $a1 is the offset and $a2 says what it is relative to: 0 for start of file, 1 for current
+ * position, 2 for end of file.  New position from start of file is returned in $v0
+ * (negative if error).
+ */
+
+public class SyscallLseek extends AbstractSyscall {
+    /**
+     * Build an instance of the Lseek syscall.  Default service number
+     * is 62 and name is "Lseek".
+     */
+    public SyscallLseek() {
+        super(62, "Lseek");
+    }
+
+    /**
+     * Performs syscall function to set the position in the file given by descriptor $a0
+     * to offset $a1 relative to whence $a2.  New position is returned in $v0.
+     */
+    public void simulate(ProgramStatement statement) throws ProcessingException {
+        int retValue = SystemIO.seekFile(
+                RegisterFile.getValue(4), // fd
+                RegisterFile.getValue(5), // offset
+                RegisterFile.getValue(6)); // whence
+        RegisterFile.updateRegister(2, retValue); // set returned value in register
+    }
+}
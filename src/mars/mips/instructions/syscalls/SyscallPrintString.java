@@ -55,16 +55,20 @@ public class SyscallPrintString extends AbstractSyscall {
     public void simulate(ProgramStatement statement) throws ProcessingException {
         int byteAddress = RegisterFile.getValue(4);
         char ch = 0;
+        // Collect the whole string and hand it to SystemIO once, rather than once per character.
+        StringBuilder string = new StringBuilder();
         try {
             ch = (char) Globals.memory.getByte(byteAddress);
             // won't stop until NULL byte reached!
             while (ch != 0) {
-                SystemIO.printString(new Character(ch).toString());
+                string.append(ch);
                 byteAddress++;
                 ch = (char) Globals.memory.getByte(byteAddress);
             }
         } catch (AddressErrorException e) {
             throw new ProcessingException(statement, e);
+        } finally {
+            SystemIO.printString(string.toString());
         }
     }
 }
\ No newline at end of file
@@ -5,8 +5,6 @@ import mars.ProgramStatement;
 import mars.mips.hardware.Coprocessor1;
 import mars.mips.hardware.RegisterFile;
 
-import java.util.Random;
-
 /*
 Copyright (c) 2003-2008,  Pete Sanderson and Kenneth Vollmar
 
@@ -57,12 +55,7 @@ public class SyscallRandFloat extends AbstractSyscall {
         // Input arguments: $a0 = index of pseudorandom number generator
         // Return: $f0 = the next pseudorandom, uniformly distributed float value between 0.0 and 1.0
         // from this random number generator's sequence.
-        Integer index = new Integer(RegisterFile.getValue(4));
-        Random stream = (Random) RandomStreams.randomStreams.get(index);
-        if (stream == null) {
-            stream = new Random(); // create a non-seeded stream
-            RandomStreams.randomStreams.put(index, stream);
-        }
+        RandomStreams.Generator stream = RandomStreams.getStream(RegisterFile.getValue(4));
         Coprocessor1.setRegisterToFloat(0, stream.nextFloat());
     }
 }
\ No newline at end of file
@@ -4,8 +4,6 @@ import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.RegisterFile;
 
-import java.util.Random;
-
 /*
 Copyright (c) 2003-2008,  Pete Sanderson and Kenneth Vollmar
 
@@ -54,12 +52,7 @@ public class SyscallRandInt extends AbstractSyscall {
     public void simulate(ProgramStatement statement) throws ProcessingException {
         // Input arguments: $a0 = index of pseudorandom number generator
         // Return: $a0 = the next pseudorandom, uniformly distributed int value from this random number generator's sequence.
-        Integer index = new Integer(RegisterFile.getValue(4));
-        Random stream = (Random) RandomStreams.randomStreams.get(index);
-        if (stream == null) {
-            stream = new Random(); // create a non-seeded stream
-            RandomStreams.randomStreams.put(index, stream);
-        }
+        RandomStreams.Generator stream = RandomStreams.getStream(RegisterFile.getValue(4));
         RegisterFile.updateRegister(4, stream.nextInt());
     }
 
@@ -5,8 +5,6 @@ import mars.ProgramStatement;
 import mars.mips.hardware.RegisterFile;
 import mars.simulator.Exceptions;
 
-import java.util.Random;
-
 /*
 Copyright (c) 2003-2008,  Pete Sanderson and Kenneth Vollmar
 
@@ -59,12 +57,7 @@ public class SyscallRandIntRange extends AbstractSyscall {
         //    $a1 = the upper bound of range of returned values.
         // Return: $a0 = the next pseudorandom, uniformly distributed int value from this
         // random number generator's sequence.
-        Integer index = new Integer(RegisterFile.getValue(4));
-        Random stream = (Random) RandomStreams.randomStreams.get(index);
-        if (stream == null) {
-            stream = new Random(); // create a non-seeded stream
-            RandomStreams.randomStreams.put(index, stream);
-        }
+        RandomStreams.Generator stream = RandomStreams.getStream(RegisterFile.getValue(4));
         try {
             RegisterFile.updateRegister(4, stream.nextInt(RegisterFile.getValue(5)));
         } catch (IllegalArgumentException iae) {
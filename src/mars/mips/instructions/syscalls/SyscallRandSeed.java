@@ -4,8 +4,6 @@ import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.RegisterFile;
 
-import java.util.Random;
-
 /*
 Copyright (c) 2003-2008,  Pete Sanderson and Kenneth Vollmar
 
@@ -55,13 +53,7 @@ public class SyscallRandSeed extends AbstractSyscall {
         //   $a1 = seed for pseudorandom number generator.
         // Result: No values are returned. Sets the seed of the underlying Java pseudorandom number generator.
 
-        Integer index = new Integer(RegisterFile.getValue(4));
-        Random stream = (Random) RandomStreams.randomStreams.get(index);
-        if (stream == null) {
-            RandomStreams.randomStreams.put(index, new Random(RegisterFile.getValue(5)));
-        } else {
-            stream.setSeed(RegisterFile.getValue(5));
-        }
+        RandomStreams.setSeed(RegisterFile.getValue(4), RegisterFile.getValue(5));
     }
 
 }
@@ -6,6 +6,8 @@ import mars.mips.hardware.RegisterFile;
 import mars.simulator.Exceptions;
 import mars.util.SystemIO;
 
+import java.util.NoSuchElementException;
+
 /*
 Copyright (c) 2003-2008,  Pete Sanderson and Kenneth Vollmar
 
@@ -60,6 +62,10 @@ public class SyscallReadChar extends AbstractSyscall {
             throw new ProcessingException(statement,
                     "invalid char input (syscall " + this.getNumber() + ")",
                     Exceptions.SYSCALL_EXCEPTION);
+        } catch (NoSuchElementException e) {
+            throw new ProcessingException(statement,
+                    "end of input (syscall " + this.getNumber() + ")",
+                    Exceptions.SYSCALL_EXCEPTION);
         }
         // DPS 20 June 2008: changed from 4 ($a0) to 2 ($v0)
         RegisterFile.updateRegister(2, value);
@@ -7,6 +7,8 @@ import mars.simulator.Exceptions;
 import mars.util.Binary;
 import mars.util.SystemIO;
 
+import java.util.NoSuchElementException;
+
 /*
 Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
 
@@ -62,6 +64,10 @@ public class SyscallReadDouble extends AbstractSyscall {
             throw new ProcessingException(statement,
                     "invalid double input (syscall " + this.getNumber() + ")",
                     Exceptions.SYSCALL_EXCEPTION);
+        } catch (NoSuchElementException e) {
+            throw new ProcessingException(statement,
+                    "end of input (syscall " + this.getNumber() + ")",
+                    Exceptions.SYSCALL_EXCEPTION);
         }
         long longValue = Double.doubleToRawLongBits(doubleValue);
         Coprocessor1.updateRegister(1, Binary.highOrderLongToInt(longValue));
@@ -6,6 +6,8 @@ import mars.mips.hardware.Coprocessor1;
 import mars.simulator.Exceptions;
 import mars.util.SystemIO;
 
+import java.util.NoSuchElementException;
+
 /*
 Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
 
@@ -59,6 +61,10 @@ public class SyscallReadFloat extends AbstractSyscall {
             throw new ProcessingException(statement,
                     "invalid float input (syscall " + this.getNumber() + ")",
                     Exceptions.SYSCALL_EXCEPTION);
+        } catch (NoSuchElementException e) {
+            throw new ProcessingException(statement,
+                    "end of input (syscall " + this.getNumber() + ")",
+                    Exceptions.SYSCALL_EXCEPTION);
         }
         Coprocessor1.updateRegister(0, Float.floatToRawIntBits(floatValue));
     }
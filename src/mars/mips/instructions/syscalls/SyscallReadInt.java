@@ -6,6 +6,8 @@ import mars.mips.hardware.RegisterFile;
 import mars.simulator.Exceptions;
 import mars.util.SystemIO;
 
+import java.util.NoSuchElementException;
+
 /*
 Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
 
@@ -59,6 +61,10 @@ public class SyscallReadInt extends AbstractSyscall {
             throw new ProcessingException(statement,
                     "invalid integer input (syscall " + this.getNumber() + ")",
                     Exceptions.SYSCALL_EXCEPTION);
+        } catch (NoSuchElementException e) {
+            throw new ProcessingException(statement,
+                    "end of input (syscall " + this.getNumber() + ")",
+                    Exceptions.SYSCALL_EXCEPTION);
         }
         RegisterFile.updateRegister(2, value);
     }
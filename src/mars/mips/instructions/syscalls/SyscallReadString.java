@@ -7,6 +7,8 @@ import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.RegisterFile;
 import mars.util.SystemIO;
 
+import java.util.NoSuchElementException;
+
 /*
 Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
 
@@ -66,14 +68,20 @@ public class SyscallReadString extends AbstractSyscall {
             maxLength = 0;
             addNullByte = false;
         }
-        inputString = SystemIO.readString(this.getNumber(), maxLength);
+        boolean endOfInput = false;
+        try {
+            inputString = SystemIO.readString(this.getNumber(), maxLength);
+        } catch (NoSuchElementException e) {
+            // Nothing left to read: store just the null byte, as fgets stores nothing.
+            endOfInput = true;
+        }
         int stringLength = Math.min(maxLength, inputString.length());
         try {
             for (int index = 0; index < stringLength; index++) {
                 Globals.memory.setByte(buf + index,
                         inputString.charAt(index));
             }
-            if (stringLength < maxLength) {
+            if (stringLength < maxLength && !endOfInput) {
                 Globals.memory.setByte(buf + stringLength, '\n');
                 stringLength++;
             }
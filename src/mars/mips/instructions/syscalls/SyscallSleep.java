@@ -3,6 +3,8 @@ package mars.mips.instructions.syscalls;
 import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.RegisterFile;
+import mars.simulator.Simulator;
+import mars.simulator.VirtualClock;
 
 /*
 Copyright (c) 2003-2008,  Pete Sanderson and Kenneth Vollmar
@@ -36,6 +38,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 /**
  * Service to cause the MARS Java thread to sleep for (at least) the specified number of milliseconds.
  * This timing will not be precise as the Java implementation will add some overhead.
+ * With virtual time enabled, the thread does not sleep; the virtual clock is advanced instead.
  */
 
 public class SyscallSleep extends AbstractSyscall {
@@ -53,6 +56,10 @@ public class SyscallSleep extends AbstractSyscall {
     public void simulate(ProgramStatement statement) throws ProcessingException {
         // Input arguments: $a0 is the length of time to sleep in milliseconds.
 
+        if (Simulator.getRuntimeSettings().getVirtualTimeEnabled()) {
+            VirtualClock.sleep(RegisterFile.getValue(4));
+            return;
+        }
         try {
             Thread.sleep(RegisterFile.getValue(4)); // units of milliseconds  1000 millisec = 1 sec.
         } catch (InterruptedException e) {
@@ -3,6 +3,8 @@ package mars.mips.instructions.syscalls;
 import mars.ProcessingException;
 import mars.ProgramStatement;
 import mars.mips.hardware.RegisterFile;
+import mars.simulator.Simulator;
+import mars.simulator.VirtualClock;
 import mars.util.Binary;
 
 /*
@@ -35,13 +37,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 
 /**
- * Service to read a character from input console into $a0.
+ * Service to place the current time in milliseconds into $a0 and $a1.  With virtual
+ * time enabled, this is simulated time since the program started (see VirtualClock).
  */
 
 public class SyscallTime extends AbstractSyscall {
     /**
-     * Build an instance of the Read Char syscall.  Default service number
-     * is 12 and name is "ReadChar".
+     * Build an instance of the Time syscall.  Default service number
+     * is 30 and name is "Time".
      */
     public SyscallTime() {
         super(30, "Time");
@@ -52,7 +55,9 @@ public class SyscallTime extends AbstractSyscall {
      * and $a1 (high order 32 bits).
      */
     public void simulate(ProgramStatement statement) throws ProcessingException {
-        long value = new java.util.Date().getTime();
+        long value = Simulator.getRuntimeSettings().getVirtualTimeEnabled()
+                ? VirtualClock.getTime()
+                : new java.util.Date().getTime();
         RegisterFile.updateRegister(4, Binary.lowOrderLongToInt(value)); // $a0 
         RegisterFile.updateRegister(5, Binary.highOrderLongToInt(value)); // $a1
     }
@@ -1,11 +1,13 @@
 package mars.mips.instructions.syscalls;
 
 
+import mars.simulator.Simulator;
+import mars.simulator.VirtualClock;
+
 import javax.sound.midi.*;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.io.File;
+import java.io.IOException;
+import java.util.PriorityQueue;
 
 /*
 Copyright (c) 2003-2007,  Pete Sanderson and Kenneth Vollmar
@@ -53,14 +55,22 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 //      pool executor, and
 //  (3) simplify the interface by removing all the unused versions
 //       that provided default values for various parameters
+//
+//  Changed October 2026 to play all tones through one Synthesizer that
+//  is opened once, instead of opening a Sequencer per tone on a thread
+//  of its own.  Tones are now note events in a queue sent out at their
+//  scheduled time by a single scheduler thread, over a fixed pool of
+//  MIDI channels (voices).  The events can instead be recorded to a MIDI
+//  file, for running without a sound card (MarsLaunch "midi" option).
 /////////////////////////////////////////////////////////////////////////
 //////////////////////////////////////////////////////////////////////////
 
 
 /*
- * Creates a Tone object and passes it to a thread to "play" it using MIDI.
+ * Plays tones by passing them to the ToneScheduler, which is shared by all
+ * ToneGenerator objects.
  */
-class ToneGenerator {
+public class ToneGenerator {
 
     /**
      * The default pitch value for the tone: 60 / middle C.
@@ -82,7 +92,7 @@ class ToneGenerator {
      */
     public final static byte DEFAULT_VOLUME = 100;
 
-    private static Executor threadPool = Executors.newCachedThreadPool();
+    private static ToneScheduler scheduler;
 
     /**
      * Produces a Tone with the specified pitch, duration, and instrument,
@@ -101,8 +111,7 @@ class ToneGenerator {
      */
     public void generateTone(byte pitch, int duration,
                              byte instrument, byte volume) {
-        Runnable tone = new Tone(pitch, duration, instrument, volume);
-        threadPool.execute(tone);
+        getScheduler().play(pitch, duration, instrument, volume);
     }
 
     /**
@@ -122,157 +131,350 @@ class ToneGenerator {
      */
     public void generateToneSynchronously(byte pitch, int duration,
                                           byte instrument, byte volume) {
-        Runnable tone = new Tone(pitch, duration, instrument, volume);
-        tone.run();
+        ToneScheduler toneScheduler = getScheduler();
+        toneScheduler.awaitTone(toneScheduler.play(pitch, duration, instrument, volume));
+    }
+
+    /**
+     * Record tones to a standard MIDI file instead of playing them, for use where
+     * there is no sound card or the tones are to be checked afterwards.  Event times
+     * in the file are milliseconds since this call, or virtual time if enabled
+     * (see VirtualClock), and the file is written by close().  Should be called
+     * before the first tone; any tones before it are finished first.
+     *
+     * @param file the MIDI file to write
+     * @throws IOException if an earlier recording file cannot be written
+     */
+    public static synchronized void setRecordingFile(File file) throws IOException {
+        close();
+        scheduler = new ToneScheduler(new MidiFileSink(file),
+                !Simulator.getRuntimeSettings().getVirtualTimeEnabled());
+    }
+
+    /**
+     * Finish with tones: ends any still sounding, writes the MIDI file if recording,
+     * and releases the synthesizer.  A later tone starts over with the sound card.
+     *
+     * @throws IOException if the MIDI file cannot be written
+     */
+    public static synchronized void close() throws IOException {
+        if (scheduler != null) {
+            ToneScheduler closing = scheduler;
+            scheduler = null;
+            closing.close();
+        }
+    }
+
+    private static synchronized ToneScheduler getScheduler() {
+        if (scheduler == null) {
+            scheduler = new ToneScheduler(new SynthesizerSink(), true);
+        }
+        return scheduler;
     }
 
 }
 
 
 /**
- * Contains important variables for a MIDI Tone: pitch, duration
- * instrument (patch), and volume.  The tone can be passed to a thread
- * and will be played using MIDI.
+ * Sends tones to a ToneSink as MIDI note events at their scheduled times.  Each
+ * tone gets a voice, which is a MIDI channel set to the tone's instrument.  There
+ * are as many voices as channels (other than the General MIDI percussion channel),
+ * so that is the most tones that sound at once.  When all voices are busy, the one
+ * whose tone ends soonest is cut off and used for the new tone.
+ * <p>
+ * In real time, a scheduler thread sends each event when it is due.  In virtual
+ * time, there is no thread; events are sent as the virtual clock passes them,
+ * which happens as tones are played and finally when the scheduler is closed.
  */
-class Tone implements Runnable {
+class ToneScheduler implements Runnable {
+
+    private static final int PERCUSSION_CHANNEL = 9;
+    private static final int MIDI_CHANNELS = 16;
+
+    private final ToneSink sink;
+    private final boolean realTime;
+    private final long startTime;
+    private final Voice[] voices = new Voice[MIDI_CHANNELS - 1];
+    private final PriorityQueue<ToneEvent> queue = new PriorityQueue<ToneEvent>();
+    private long eventCount; // to keep events at the same time in the order queued
+    private Thread thread;
 
     /**
-     * Tempo of the tone is in milliseconds: 1000 beats per second.
+     * @param sink     where to send note events
+     * @param realTime true to send events at their time by the system clock, false
+     *                 to send them as the virtual clock reaches them
      */
+    ToneScheduler(ToneSink sink, boolean realTime) {
+        this.sink = sink;
+        this.realTime = realTime;
+        this.startTime = System.currentTimeMillis();
+        int channel = 0;
+        for (int i = 0; i < voices.length; i++, channel++) {
+            if (channel == PERCUSSION_CHANNEL) {
+                channel++;
+            }
+            voices[i] = new Voice(channel);
+        }
+        if (realTime) {
+            thread = new Thread(this, "MIDI tone scheduler");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
 
-    public final static int TEMPO = 1000;
     /**
-     * The default MIDI channel of the tone: 0 (channel 1).
+     * Queue a tone to start now.
+     *
+     * @return the event that ends the tone, for awaitTone()
      */
-    public final static int DEFAULT_CHANNEL = 0;
+    synchronized ToneEvent play(byte pitch, int duration, byte instrument, byte volume) {
+        long now = now();
+        if (!realTime) {
+            sendUntil(now);
+        }
+        Voice voice = voices[0];
+        for (int i = 1; i < voices.length && voice.endTime > now; i++) {
+            if (voices[i].endTime < voice.endTime) {
+                voice = voices[i];
+            }
+        }
+        if (voice.endTime > now) {
+            // Cut off the tone it is playing; that tone's own note off will be skipped.
+            queue(new ToneEvent(now, ShortMessage.NOTE_OFF, voice, voice.pitch, 0, null));
+        }
+        voice.generation++;
+        voice.pitch = pitch;
+        voice.endTime = now + duration;
+        if (voice.instrument != instrument) {
+            voice.instrument = instrument;
+            queue(new ToneEvent(now, ShortMessage.PROGRAM_CHANGE, voice, instrument, 0, null));
+        }
+        queue(new ToneEvent(now, ShortMessage.NOTE_ON, voice, pitch, volume, null));
+        ToneEvent end = new ToneEvent(now + duration, ShortMessage.NOTE_OFF, voice, pitch, 0, voice.generation);
+        queue(end);
+        if (realTime) {
+            notifyAll();
+        } else {
+            sendUntil(now);
+        }
+        return end;
+    }
 
-    private byte pitch;
-    private int duration;
-    private byte instrument;
-    private byte volume;
+    /**
+     * Wait until the given event has been sent.  In virtual time, advance the
+     * clock to the event instead.
+     */
+    synchronized void awaitTone(ToneEvent end) {
+        if (!realTime) {
+            VirtualClock.sleep((int) (end.time - now()));
+            sendUntil(now());
+            return;
+        }
+        try {
+            while (!end.sent) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            // stop waiting
+        }
+    }
 
     /**
-     * Instantiates a new Tone object, initializing the tone's pitch,
-     * duration, instrument (patch), and volume.
-     *
-     * @param pitch      the pitch in semitones.  Pitch is represented by
-     *                   a positive byte value - 0-127 where 60 is middle C.
-     * @param duration   the duration of the tone in milliseconds.
-     * @param instrument a positive byte value (0-127) which represents
-     *                   the instrument (or patch) of the tone.  See the <a href=
-     *                   http://www.midi.org/about-midi/gm/gm1sound.shtml#instrument>general
-     *                   MIDI instrument patch map</a> for more instruments associated with
-     *                   each value.
-     * @param volume     a positive byte value (0-127) which represents the
-     *                   volume of the initial attack of the note (MIDI velocity).  127 being
-     *                   loud, and 0 being silent.
+     * Send every event still queued, at its own time, stop the thread and close the sink.
      */
-    public Tone(byte pitch, int duration, byte instrument, byte volume) {
-        this.pitch = pitch;
-        this.duration = duration;
-        this.instrument = instrument;
-        this.volume = volume;
+    synchronized void close() throws IOException {
+        shutdown();
+        sendUntil(Long.MAX_VALUE);
+        sink.close();
+    }
+
+    // Stop the scheduler thread, if there is one.
+    private void shutdown() {
+        thread = null;
+        notifyAll();
     }
 
     /**
-     * Plays the tone.
+     * Scheduler thread: send events as they become due.
      */
-    public void run() {
-        playTone();
+    public synchronized void run() {
+        while (thread == Thread.currentThread()) {
+            ToneEvent next = queue.peek();
+            long delay = (next == null) ? 0 : next.time - now();
+            if (next != null && delay <= 0) {
+                send(queue.poll());
+                continue;
+            }
+            try {
+                wait(delay);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
     }
 
-    /* The following lock and the code which locks and unlocks it
-     * around the opening of the Sequencer were added 2009-10-19 by
-     * Max Hailperin <max@gustavus.edu> in order to work around a
-     * bug in Sun's JDK which causes crashing if two threads race:
-     * http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6888117 .
-     * This routinely manifested native-code crashes when tones
-     * were played asynchronously, on dual-core machines with Sun's
-     * JDK (but not on one core or with OpenJDK).  Even when tones
-     * were played only synchronously, crashes sometimes occurred.
-     * This is likely due to the fact that Thread.sleep was used
-     * for synchronization, a role it cannot reliably serve.  In
-     * any case, this one lock seems to make all the crashes go
-     * away, and the sleeps are being eliminated (since they can
-     * cause other, less severe, problems), so that case should be
-     * double covered. */
-
-    private static Lock openLock = new ReentrantLock();
-
-    private void playTone() {
+    // Milliseconds since the scheduler started, or virtual time.
+    private long now() {
+        return realTime ? System.currentTimeMillis() - startTime : VirtualClock.getTime();
+    }
 
-        try {
-            Sequencer player = null;
-            openLock.lock();
+    private void queue(ToneEvent event) {
+        event.order = eventCount++;
+        queue.add(event);
+    }
+
+    private void sendUntil(long time) {
+        while (!queue.isEmpty() && queue.peek().time <= time) {
+            send(queue.poll());
+        }
+    }
+
+    private void send(ToneEvent event) {
+        event.sent = true;
+        if (event.generation == null || event.generation == event.voice.generation) {
             try {
-                player = MidiSystem.getSequencer();
-                player.open();
-            } finally {
-                openLock.unlock();
+                ShortMessage message = new ShortMessage();
+                message.setMessage(event.command, event.voice.channel, event.data1, event.data2);
+                sink.send(message, event.time);
+            } catch (InvalidMidiDataException imde) {
+                imde.printStackTrace();
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * A MIDI channel and what it is playing.
+     */
+    private static class Voice {
+        final int channel;
+        int instrument = -1;
+        int pitch;
+        long endTime;   // when its current tone ends
+        int generation; // counts tones played, so a note off can tell whether its tone was cut off
+
+        Voice(int channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * MIDI message to send to a voice at a given time.
+     */
+    static class ToneEvent implements Comparable<ToneEvent> {
+        final long time;
+        final int command;
+        final Voice voice;
+        final int data1;
+        final int data2;
+        final Integer generation; // if not null, send only if the voice is still on this tone
+        long order;
+        boolean sent;
+
+        ToneEvent(long time, int command, Voice voice, int data1, int data2, Integer generation) {
+            this.time = time;
+            this.command = command;
+            this.voice = voice;
+            this.data1 = data1;
+            this.data2 = data2;
+            this.generation = generation;
+        }
+
+        public int compareTo(ToneEvent other) {
+            if (time != other.time) {
+                return (time < other.time) ? -1 : 1;
             }
+            return Long.compare(order, other.order);
+        }
+    }
+}
 
-            Sequence seq = new Sequence(Sequence.PPQ, 1);
-            player.setTempoInMPQ(TEMPO);
-            Track t = seq.createTrack();
 
-            //select instrument
-            ShortMessage inst = new ShortMessage();
-            inst.setMessage(ShortMessage.PROGRAM_CHANGE, DEFAULT_CHANNEL, instrument, 0);
-            MidiEvent instChange = new MidiEvent(inst, 0);
-            t.add(instChange);
+/**
+ * Destination for the MIDI messages that make up tones.
+ */
+interface ToneSink {
 
-            ShortMessage on = new ShortMessage();
-            on.setMessage(ShortMessage.NOTE_ON, DEFAULT_CHANNEL, pitch, volume);
-            MidiEvent noteOn = new MidiEvent(on, 0);
-            t.add(noteOn);
+    /**
+     * @param message the MIDI message
+     * @param time    when it is sent, in milliseconds since the tones began
+     */
+    void send(ShortMessage message, long time);
 
-            ShortMessage off = new ShortMessage();
-            off.setMessage(ShortMessage.NOTE_OFF, DEFAULT_CHANNEL, pitch, volume);
-            MidiEvent noteOff = new MidiEvent(off, duration);
-            t.add(noteOff);
+    void close() throws IOException;
+}
 
-            player.setSequence(seq);
 
-            /* The EndOfTrackListener was added 2009-10-19 by Max
-             * Hailperin <max@gustavus.edu> so that its
-             * awaitEndOfTrack method could be used as a more reliable
-             * replacement for Thread.sleep.  (Given that the tone
-             * might not start playing right away, the sleep could end
-             * before the tone, clipping off the end of the tone.) */
-            EndOfTrackListener eot = new EndOfTrackListener();
-            player.addMetaEventListener(eot);
+/**
+ * Plays tones through the default Synthesizer, which is opened once, on the first
+ * tone.  If there is none, the tones are not heard.
+ */
+class SynthesizerSink implements ToneSink {
 
-            player.start();
+    private Synthesizer synthesizer;
+    private Receiver receiver;
+    private boolean unavailable;
 
+    public void send(ShortMessage message, long time) {
+        if (receiver == null && !unavailable) {
             try {
-                eot.awaitEndOfTrack();
-            } catch (InterruptedException ex) {
-            } finally {
-                player.close();
+                synthesizer = MidiSystem.getSynthesizer();
+                synthesizer.open();
+                receiver = synthesizer.getReceiver();
+            } catch (MidiUnavailableException mue) {
+                mue.printStackTrace();
+                unavailable = true;
             }
+        }
+        if (receiver != null) {
+            receiver.send(message, -1);
+        }
+    }
 
-        } catch (MidiUnavailableException mue) {
-            mue.printStackTrace();
-        } catch (InvalidMidiDataException imde) {
-            imde.printStackTrace();
+    public void close() {
+        if (synthesizer != null) {
+            synthesizer.close();
         }
+        synthesizer = null;
+        receiver = null;
     }
 }
 
-class EndOfTrackListener implements javax.sound.midi.MetaEventListener {
 
-    private boolean endedYet = false;
+/**
+ * Records tones in a single-track standard MIDI file, with one tick per millisecond.
+ * The file is written when closed.
+ */
+class MidiFileSink implements ToneSink {
+
+    /**
+     * Tempo of the track in microseconds per quarter note, which with one tick per
+     * quarter note makes a tick one millisecond.
+     */
+    private static final int TEMPO = 1000;
+
+    private final File file;
+    private Sequence sequence;
+    private Track track;
 
-    public synchronized void meta(javax.sound.midi.MetaMessage m) {
-        if (m.getType() == 47) {
-            endedYet = true;
-            notifyAll();
+    MidiFileSink(File file) {
+        this.file = file;
+        try {
+            sequence = new Sequence(Sequence.PPQ, 1);
+            track = sequence.createTrack();
+            MetaMessage tempo = new MetaMessage();
+            tempo.setMessage(0x51, new byte[]{(byte) (TEMPO >> 16), (byte) (TEMPO >> 8), (byte) TEMPO}, 3);
+            track.add(new MidiEvent(tempo, 0));
+        } catch (InvalidMidiDataException imde) {
+            imde.printStackTrace();
         }
     }
 
-    public synchronized void awaitEndOfTrack() throws InterruptedException {
-        while (!endedYet) {
-            wait();
-        }
+    public void send(ShortMessage message, long time) {
+        track.add(new MidiEvent(message, time));
+    }
+
+    public void close() throws IOException {
+        MidiSystem.write(sequence, 1, file);
     }
 }
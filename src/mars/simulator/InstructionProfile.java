@@ -0,0 +1,86 @@
+package mars.simulator;
+
+import mars.mips.instructions.BasicInstruction;
+import mars.mips.instructions.InstructionSet;
+
+/*
+Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining 
+a copy of this software and associated documentation files (the 
+"Software"), to deal in the Software without restriction, including 
+without limitation the rights to use, copy, modify, merge, publish, 
+distribute, sublicense, and/or sell copies of the Software, and to 
+permit persons to whom the Software is furnished to do so, subject 
+to the following conditions:
+
+The above copyright notice and this permission notice shall be 
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION 
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+
+/**
+ * Count of how many times each basic instruction is executed, kept by the
+ * Simulator when set with Simulator.setInstructionProfile().  Counts are held
+ * in an array indexed by instruction id, so counting costs one increment per
+ * instruction.  Like the CPI Calculator tool and the "ic" command option, it
+ * counts every instruction fetched, including one that ends the program.
+ **/
+
+public class InstructionProfile {
+    private final BasicInstruction[] instructions;
+    private final long[] counts;
+
+    /**
+     * Create a profile with all counts 0.
+     *
+     * @param instructionSet the instruction set the simulated program uses
+     */
+    public InstructionProfile(InstructionSet instructionSet) {
+        instructions = instructionSet.getBasicInstructions();
+        counts = new long[instructions.length];
+    }
+
+    /**
+     * Count one execution of the given instruction.  Called by the Simulator.
+     */
+    void count(BasicInstruction instruction) {
+        counts[instruction.getId()]++;
+    }
+
+    /**
+     * @return number of different basic instructions, the range of ids
+     */
+    public int size() {
+        return counts.length;
+    }
+
+    /**
+     * @param id instruction id
+     * @return the basic instruction with that id
+     */
+    public BasicInstruction getInstruction(int id) {
+        return instructions[id];
+    }
+
+    /**
+     * @param id instruction id
+     * @return number of times the instruction with that id was executed
+     */
+    public long getCount(int id) {
+        return counts[id];
+    }
+}
@@ -5,6 +5,8 @@
    import mars.mips.hardware.*;
    import mars.mips.instructions.*;
    import java.util.*;
+   import java.util.concurrent.*;
+   import java.util.concurrent.atomic.*;
    import javax.swing.*;
    import java.awt.event.*;
 	
@@ -43,15 +45,30 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  **/
 
     public class Simulator extends Observable {
-      private SimThread simulatorThread;
+      private SimTask simulatorTask;
+      // Single long-lived thread that runs every Go/Step request in the order
+   	// submitted.  Created on first use and kept for the life of the JVM, so a
+   	// step does not pay for thread creation.  The thread is named "MIPS"
+   	// because AccessNotice.accessIsFromMIPS() relies on it.
+      private ExecutorService simulationExecutor;
       private static Simulator simulator = null;  // Singleton object
       private static Runnable interactiveGUIUpdater = null;
-      // Others can set this true to indicate external interrupt.  Initially used
+      // Others can call raiseExternalInterrupt() to indicate external interrupt.  Initially used
    	// to simulate keyboard and display interrupts.  The device is identified
    	// by the address of its MMIO control register.  keyboard 0xFFFF0000 and
    	// display 0xFFFF0008.  DPS 23 July 2008.
       public static final int NO_DEVICE = 0;
-      public static volatile int externalInterruptingDevice = NO_DEVICE;
+      private static int externalInterruptingDevice = NO_DEVICE;
+      // Safepoint "attention" word.  Anything that needs the execution loop to
+   	// look up from simulating sets a bit here; the loop reads this one volatile
+   	// word after each instruction instead of polling each source separately.
+      private static final int ATTENTION_INTERRUPT = 1;
+      private static final int ATTENTION_STOP = 2;
+      private static final AtomicInteger attention = new AtomicInteger(0);
+      // Settings in effect for the current (or most recent) simulation, captured
+   	// when it starts.  Written and read only by the simulation thread.
+      private static RuntimeSettings runtimeSettings = null;
+      private static InstructionProfile instructionProfile = null;
    	/** various reasons for simulate to end... */
       public static final int BREAKPOINT = 1;
       public static final int EXCEPTION  = 2;
@@ -77,7 +94,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       }
    
        private Simulator() {
-         simulatorThread = null;
+         simulatorTask = null;
+         simulationExecutor = null;
          if (Globals.getGui() != null) {
             interactiveGUIUpdater = new UpdateGUI();
          } 
@@ -100,6 +118,63 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       }	
    
    
+   /**
+    * Returns the settings snapshot taken when the current simulation started.
+    * Instruction simulation code should use this rather than Globals.getSettings().
+    * Setting changes take effect at the start of the next simulation.
+    *
+    * @return RuntimeSettings in effect for the executing MIPS program
+    */
+       public static RuntimeSettings getRuntimeSettings() {
+         RuntimeSettings settings = runtimeSettings;
+         return (settings == null) ? Globals.getSettings().getRuntimeSettings() : settings;
+      }
+   
+   /**
+    * Count each instruction executed by later simulations in the given profile,
+    * or stop counting if null.  Used by command mode (MarsLaunch "cpi" option).
+    *
+    * @param profile the profile to count in, or null
+    */
+       public static void setInstructionProfile(InstructionProfile profile) {
+         instructionProfile = profile;
+      }
+   
+   /**
+    * Signal an external interrupt from the given device.  It is taken by the
+    * executing MIPS program just before its next instruction, or before the
+    * first instruction of the next simulation if none is running.
+    *
+    * @param device MMIO control register address identifying the device, e.g.
+    * Exceptions.EXTERNAL_INTERRUPT_KEYBOARD
+    */
+       public static synchronized void raiseExternalInterrupt(int device) {
+         externalInterruptingDevice = device;
+         setAttention(ATTENTION_INTERRUPT);
+      }
+   
+       // Claim the pending external interrupt, if any, and clear its attention bit.
+       private static synchronized int takeExternalInterrupt() {
+         clearAttention(ATTENTION_INTERRUPT);
+         int device = externalInterruptingDevice;
+         externalInterruptingDevice = NO_DEVICE;
+         return device;
+      }
+   
+       private static void setAttention(int bit) {
+         int flags;
+         do {
+            flags = attention.get();
+         } while (!attention.compareAndSet(flags, flags | bit));
+      }
+   
+       private static void clearAttention(int bit) {
+         int flags;
+         do {
+            flags = attention.get();
+         } while (!attention.compareAndSet(flags, flags & ~bit));
+      }
+   
    /**
     * Simulate execution of given MIPS program.  It must have already been assembled.
     * @param p The MIPSprogram to be simulated.
@@ -112,41 +187,78 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     **/
     
        public boolean simulate(MIPSprogram p, int pc, int maxSteps, int[] breakPoints, AbstractAction actor) throws ProcessingException {
-         simulatorThread = new SimThread(p,pc,maxSteps,breakPoints,actor);
-         simulatorThread.start();
+         SimTask task = new SimTask(p,pc,maxSteps,breakPoints,actor);
+         simulatorTask = task;
       	
       	// Condition should only be true if run from command-line instead of GUI.
-      	// If so, just stick around until execution thread is finished.
+      	// If so, just stick around until the queued task is finished.
          if (actor == null) {
-            Object dun = simulatorThread.get(); // this should emulate join()
-            ProcessingException pe = simulatorThread.pe;
-            boolean done = simulatorThread.done;
+            Future<?> result = getSimulationExecutor().submit(task);
+            try {
+               result.get();
+            } 
+                catch (InterruptedException e) {
+                  Thread.currentThread().interrupt(); // propagate
+               } 
+                catch (ExecutionException e) {
+                  if (e.getCause() instanceof RuntimeException) {
+                     throw (RuntimeException) e.getCause();
+                  }
+                  throw new Error(e.getCause());
+               }
+            ProcessingException pe = task.pe;
+            boolean done = task.done;
             if (done) SystemIO.resetFiles(); // close any files opened in MIPS progra
-            this.simulatorThread = null;
+            if (this.simulatorTask == task) {
+               this.simulatorTask = null;
+            }
             if (pe != null) {
                throw pe;
             }
             return done;
          }
+         // From the GUI, errors should reach the default uncaught exception handler
+      	// as they did with a dedicated thread, so use execute() rather than submit().
+         getSimulationExecutor().execute(task);
          return true;
       }
+   
+   	/*
+   	 * Returns the executor that runs simulation tasks, creating it on first use.
+   	 * Its only thread is a daemon so it never keeps the JVM alive by itself.
+   	 */
+       private synchronized ExecutorService getSimulationExecutor() {
+         if (simulationExecutor == null) {
+            simulationExecutor = Executors.newSingleThreadExecutor(
+                   new ThreadFactory() {
+                      public Thread newThread(Runnable r) {
+                        // Thread that represents executing MIPS program...
+                        Thread t = new Thread(r, "MIPS");
+                        t.setDaemon(true);
+                        t.setPriority(Thread.NORM_PRIORITY-1);
+                        return t;
+                     }
+                  });
+         }
+         return simulationExecutor;
+      }
    		
    
        /**
-   	  *  Set the volatile stop boolean variable checked by the execution
-   	  *  thread at the end of each MIPS instruction execution.  If variable
-   	  *  is found to be true, the execution thread will depart
+   	  *  Set the volatile stop boolean variable and raise the attention word checked
+   	  *  by the execution thread at the end of each MIPS instruction execution.  If
+   	  *  stop is found to be true, the execution thread will depart
    	  *  gracefully so the main thread handling the GUI can take over.
    	  *  This is used by both STOP and PAUSE features.
    	  */     		
        public void stopExecution(AbstractAction actor) {
       
-         if (simulatorThread != null) {
-            simulatorThread.setStop(actor);
+         if (simulatorTask != null) {
+            simulatorTask.setStop(actor);
             for (StopListener l : stopListeners) {
                l.stopped(this);
             }
-            simulatorThread = null;
+            simulatorTask = null;
          }
       }
    
@@ -167,7 +279,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          stopListeners.remove(l);
       }
    
-   	 // The Simthread object will call this method when it enters and returns from
+   	 // The SimTask object will call this method when it enters and returns from
    	 // its construct() method.  These signal start and stop, respectively, of
    	 // simulation execution.  The observer can then adjust its own state depending
    	 // on the execution state.  Note that "stop" and "done" are not the same thing.
@@ -188,16 +300,15 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 
    	 
    	/**
-   	 * SwingWorker subclass to perform the simulated execution in background thread.
-   	 * It is "interrupted" when main thread sets the "stop" variable to true.
-   	 * The variable is tested before the next MIPS instruction is simulated.  Thus
-   	 * interruption occurs in a tightly controlled fashion.
-   	 *
-   	 * See SwingWorker.java for more details on its functionality and usage.  It is
-   	 * provided by Sun Microsystems for download and is not part of the Swing library.
+   	 * Task queued on the simulation executor to perform the simulated execution
+   	 * in the background.  It is "interrupted" when main thread sets the "stop"
+   	 * variable to true.  The variable is tested before the next MIPS instruction
+   	 * is simulated.  Thus interruption occurs in a tightly controlled fashion.
+   	 * A stop requested while the task is still queued makes it return at the
+   	 * first instruction boundary, same as before.
    	 */ 	
    		
-       class SimThread extends SwingWorker {
+       class SimTask implements Runnable {
          private MIPSprogram p;
          private int pc, maxSteps;
          private int[] breakPoints;
@@ -210,7 +321,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       
       
          /**
-      	 *  SimThread constructor.  Receives all the information it needs to simulate execution.
+      	 *  SimTask constructor.  Receives all the information it needs to simulate execution.
       	 *
       	 *  @param p  the MIPSprogram to be simulated
       	 *  @param pc address in text segment of first instruction to simulate
@@ -218,8 +329,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       	 *  @param breakPoints  array of breakpoints (instruction addresses) specified by user
       	 *  @param starter the GUI component responsible for this call, usually GO or STEP.  null if none.
       	 */
-          SimThread(MIPSprogram p, int pc, int maxSteps, int[] breakPoints, AbstractAction starter) {
-            super(Globals.getGui()!=null);  
+          SimTask(MIPSprogram p, int pc, int maxSteps, int[] breakPoints, AbstractAction starter) {
             this.p = p;
             this.pc = pc;
             this.maxSteps = maxSteps;
@@ -238,15 +348,34 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       	 * @param actor the Swing component responsible for this call.  
       	 */
           public void setStop(AbstractAction actor) {
-            stop = true;
             stopper = actor;
+            stop = true;
+            // Must follow the write to stop; see the attention check in construct().
+            setAttention(ATTENTION_STOP);
          }
       	
       
       	/**
-      	 *  This is comparable to the Runnable "run" method (it is called by
-      	 *  SwingWorker's "run" method).  It simulates the program
-      	 *  execution in the backgorund.
+      	 *  Runs on the simulation executor thread.  Simulates the program, then
+      	 *  hands the outcome to finished() on the event dispatching thread when
+      	 *  there is a GUI, or directly otherwise.
+      	 */
+          public void run() {
+            construct();
+            SystemIO.flushOutput();
+            if (Globals.getGui() != null) {
+               SwingUtilities.invokeLater(
+                      new Runnable() {
+                         public void run() { finished(); }
+                     });
+            } 
+            else {
+               finished();
+            }
+         }
+      
+      	/**
+      	 *  It simulates the program execution in the background.
       	 *
       	 *  @return  boolean value true if execution done, false otherwise
       	 */
@@ -256,7 +385,6 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          	// before the simulation gets underway.  Without them, this happens only intermittently,
          	// with a consequence that some simulations are interruptable using PAUSE/STOP and others
          	// are not (because one or the other or both is not yet enabled).
-            Thread.currentThread().setPriority(Thread.NORM_PRIORITY-1);
             Thread.yield();  // let the main thread run a bit to finish updating the GUI
          	
             if (breakPoints == null || breakPoints.length == 0) {
@@ -266,6 +394,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                Arrays.sort(breakPoints);  // must be pre-sorted for binary search
             }
             
+            runtimeSettings = Globals.getSettings().getRuntimeSettings();
             Simulator.getInstance().notifyObserversOfExecutionStart(maxSteps, pc);
          	
             RegisterFile.initializeProgramCounter(pc);
@@ -321,6 +450,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          	// *********************************************************************
          	
             int pc = 0;  // added: 7/26/06 (explanation above)
+            // An interrupt raised before this simulation started is taken
+         	// before its first instruction, as it would be mid-run.
+            boolean interruptPending = (attention.get() & ATTENTION_INTERRUPT) != 0;
+            // Backstepping cannot be switched on or off while a simulation is running.
+            BackStepper backStepper = (Globals.getSettings().getBackSteppingEnabled())
+                                       ? Globals.program.getBackStepper() : null;
+            InstructionProfile profile = instructionProfile;
          
             while (statement != null) {
                pc = RegisterFile.getProgramCounter(); // added: 7/26/06 (explanation above)
@@ -331,10 +467,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             	// registers is assured.  Not as critical for reading from those resources.
                synchronized (Globals.memoryAndRegistersLock) {
                   try {                      
-                     if (Simulator.externalInterruptingDevice != NO_DEVICE) {
-                        int deviceInterruptCode = externalInterruptingDevice;
-                        Simulator.externalInterruptingDevice = NO_DEVICE;
-                        throw new ProcessingException(statement, "External Interrupt", deviceInterruptCode);
+                     if (interruptPending) {
+                        interruptPending = false;
+                        int deviceInterruptCode = takeExternalInterrupt();
+                        if (deviceInterruptCode != NO_DEVICE) {
+                           throw new ProcessingException(statement, "External Interrupt", deviceInterruptCode);
+                        }
                      }
                      BasicInstruction instruction = (BasicInstruction)statement.getInstruction();
                      if (instruction == null) {
@@ -342,12 +480,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                             "undefined instruction ("+Binary.intToHexString(statement.getBinaryStatement())+")",
                             Exceptions.RESERVED_INSTRUCTION_EXCEPTION);
                      }
+                     if (profile != null) {
+                        profile.count(instruction);
+                     }
                      // THIS IS WHERE THE INSTRUCTION EXECUTION IS ACTUALLY SIMULATED!
                      instruction.getSimulationCode().simulate(statement);
+                     VirtualClock.tick();
                   	
                   	// IF statement added 7/26/06 (explanation above)
-                     if (Globals.getSettings().getBackSteppingEnabled()) {
-                        Globals.program.getBackStepper().addDoNothing(pc);
+                     if (backStepper != null) {
+                        backStepper.addDoNothing(pc);
                      }
                   } 
                       catch (ProcessingException pe) {
@@ -393,13 +535,26 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   DelayedBranch.trigger();
                }//////////////////////////////////////////////////////////////////////
             	
-            	// Volatile variable initialized false but can be set true by the main thread.
-            	// Used to stop or pause a running MIPS program.  See stopSimulation() above.
-               if (stop == true) { 
-                  this.constructReturnReason = PAUSE_OR_STOP;
-                  this.done = false;
-                  Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                  return new Boolean(done);
+            	// Safepoint: the only volatile read on the common path.  Other threads
+            	// set bits to request a stop/pause (see stopExecution() above) or to
+            	// signal an external interrupt, which is taken just before the next
+            	// instruction so it lands on an exact instruction boundary.  A stop bit
+            	// may be left over from an earlier simulation; it is cleared before
+            	// reading this task's own stop flag so a concurrent request is never lost.
+               int attentionFlags = attention.get();
+               if (attentionFlags != 0) {
+                  if ((attentionFlags & ATTENTION_INTERRUPT) != 0) {
+                     interruptPending = true;
+                  }
+                  if ((attentionFlags & ATTENTION_STOP) != 0) {
+                     clearAttention(ATTENTION_STOP);
+                     if (stop) { 
+                        this.constructReturnReason = PAUSE_OR_STOP;
+                        this.done = false;
+                        Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
+                        return Boolean.valueOf(done);
+                     }
+                  }
                }
             	//	Return if we've reached a breakpoint.					
                if((breakPoints != null) && 
@@ -478,10 +633,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          
       	
       	/**
-      	 *   This method is invoked by the SwingWorker when the "construct" method returns.  
-      	 *   It will update the GUI appropriately.  According to Sun's documentation, it 
-      	 *   is run in the main thread so should work OK with Swing components (which are 
-      	 *   not thread-safe).
+      	 *   This method is invoked by run() when the "construct" method returns.  
+      	 *   It will update the GUI appropriately.  It is run on the event dispatching
+      	 *   thread so should work OK with Swing components (which are not thread-safe).
       	 *
       	 *   Its action depends on what caused the return from construct() and what
       	 *   action led to the call of construct() in the first place.
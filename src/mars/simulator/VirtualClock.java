@@ -0,0 +1,84 @@
+package mars.simulator;
+
+import mars.Globals;
+
+/*
+Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining 
+a copy of this software and associated documentation files (the 
+"Software"), to deal in the Software without restriction, including 
+without limitation the rights to use, copy, modify, merge, publish, 
+distribute, sublicense, and/or sell copies of the Software, and to 
+permit persons to whom the Software is furnished to do so, subject 
+to the following conditions:
+
+The above copyright notice and this permission notice shall be 
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION 
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+
+/**
+ * Simulated clock used by the Time (30) and Sleep (32) syscalls when virtual time
+ * is enabled (Settings.VIRTUAL_TIME, MarsLaunch "vt" option).  Time is derived from
+ * the number of MIPS instructions executed, at Globals.virtualTimeRate instructions
+ * per millisecond, plus any time the program has slept.  Sleep advances the clock
+ * at once instead of suspending the simulator thread, so a program that sleeps
+ * runs only as long as it computes, and its Time results are the same every run.
+ *
+ * Since there is only one program being simulated, everything here is done with
+ * statics.  The clock is reset to 0 when a program is assembled or reset.
+ **/
+
+public class VirtualClock {
+    private static long instructions = 0;
+    private static long sleptMillis = 0;
+
+    /**
+     * Set the clock back to 0, for a new program run.
+     */
+    public static void reset() {
+        instructions = 0;
+        sleptMillis = 0;
+    }
+
+    /**
+     * Count one executed MIPS instruction.  Called by the Simulator.
+     */
+    static void tick() {
+        instructions++;
+    }
+
+    /**
+     * Advance the clock by the given time, as though the program had slept for it.
+     *
+     * @param millis time to sleep in milliseconds; 0 or less does nothing
+     */
+    public static void sleep(int millis) {
+        if (millis > 0) {
+            sleptMillis += millis;
+        }
+    }
+
+    /**
+     * Current simulated time.
+     *
+     * @return milliseconds since the program started running
+     */
+    public static long getTime() {
+        return instructions / Globals.virtualTimeRate + sleptMillis;
+    }
+}
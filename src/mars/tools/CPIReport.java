@@ -0,0 +1,209 @@
+package mars.tools;
+
+import mars.Globals;
+import mars.mips.instructions.BasicInstruction;
+import mars.mips.instructions.BasicInstructionFormat;
+import mars.simulator.InstructionProfile;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+
+/**
+ * The report of the CPI Calculator tool, for command mode (MarsLaunch "cpi" option):
+ * frequency, CPI and clock cycles of each instruction executed, the same for R, I
+ * and J-type instructions, and the totals.  It is computed once, at the end of the
+ * run, from the counts in an InstructionProfile, and written as CSV or JSON.
+ */
+public class CPIReport {
+
+    private static final String[] TYPE_NAMES = {"R-type", "I-type", "J-type"};
+
+    private final Map<String, Double> instructionCPIs;
+    private final Map<String, Long> frequencies = new TreeMap<>(); // by mnemonic, sorted
+    private final long[] typeFrequencies = new long[TYPE_NAMES.length];
+    private final double[] typeCycles = new double[TYPE_NAMES.length];
+    private long totalFrequency;
+    private double totalCycles;
+
+    /**
+     * Compute the report.
+     *
+     * @param profile         counts of instructions executed
+     * @param instructionCPIs CPI of each instruction by mnemonic; those not given have a CPI of 1
+     */
+    public CPIReport(InstructionProfile profile, Map<String, Double> instructionCPIs) {
+        this.instructionCPIs = instructionCPIs;
+        for (int id = 0; id < profile.size(); id++) {
+            long count = profile.getCount(id);
+            if (count == 0) continue;
+            BasicInstruction instr = profile.getInstruction(id);
+            String instrName = instr.getName();
+            frequencies.merge(instrName, count, Long::sum);
+
+            double cycles = count * getCPI(instrName);
+            totalFrequency += count;
+            totalCycles += cycles;
+            int type = typeOf(instr.getInstructionFormat());
+            if (type >= 0) {
+                typeFrequencies[type] += count;
+                typeCycles[type] += cycles;
+            }
+        }
+    }
+
+    /**
+     * Read a CPI table, a properties file of lines like <tt>mul = 3</tt> giving the
+     * CPI of each instruction by mnemonic.
+     *
+     * @param file the file
+     * @return CPI by mnemonic
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if the file names an invalid instruction or CPI
+     */
+    public static Map<String, Double> readCPITable(File file) throws IOException {
+        Properties table = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            table.load(in);
+        }
+        Map<String, Double> instructionCPIs = new HashMap<>();
+        for (String instr : table.stringPropertyNames()) {
+            if (!Globals.getInstructionMnemonics().contains(instr)) {
+                throw new IllegalArgumentException("Invalid instruction: " + instr);
+            }
+            String value = table.getProperty(instr).trim();
+            double cpi;
+            try {
+                cpi = Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                cpi = -1;
+            }
+            if (!(cpi >= 0)) {
+                throw new IllegalArgumentException("Invalid CPI for " + instr + ": " + value);
+            }
+            instructionCPIs.put(instr, cpi);
+        }
+        return instructionCPIs;
+    }
+
+    /**
+     * Write the report to the given file, as JSON if its name ends with ".json"
+     * and CSV otherwise.
+     *
+     * @param file the file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File file) throws IOException {
+        try (Writer writer = new FileWriter(file)) {
+            if (file.getName().toLowerCase().endsWith(".json")) {
+                writeJSON(writer);
+            } else {
+                writeCSV(writer, ",");
+            }
+        }
+    }
+
+    /**
+     * Write the report as CSV, in the columns of the CPI Calculator tool's CSV file.  A row
+     * for each instruction executed is followed by a row for each instruction type and one
+     * for the total, whose CPI is the average.
+     */
+    public void writeCSV(Writer csvWriter, String delimiter) throws IOException {
+        DecimalFormat dec = decimalFormat();
+        csvWriter.append("Instruction Type").append(delimiter);
+        csvWriter.append("CPI").append(delimiter);
+        csvWriter.append("Frequency").append(delimiter);
+        csvWriter.append("CPI * Frequency").append(delimiter);
+        csvWriter.append("Usage Percentage");
+        csvWriter.append("\n");
+
+        for (Map.Entry<String, Long> entry : frequencies.entrySet()) {
+            String instrName = entry.getKey();
+            double CPI = getCPI(instrName);
+            writeCSVRow(csvWriter, delimiter, dec, instrName, Double.toString(CPI), entry.getValue(), entry.getValue() * CPI);
+        }
+        for (int type = 0; type < TYPE_NAMES.length; type++) {
+            writeCSVRow(csvWriter, delimiter, dec, TYPE_NAMES[type], dec.format(average(typeCycles[type], typeFrequencies[type])),
+                    typeFrequencies[type], typeCycles[type]);
+        }
+        writeCSVRow(csvWriter, delimiter, dec, "Total", dec.format(average(totalCycles, totalFrequency)),
+                totalFrequency, totalCycles);
+    }
+
+    /**
+     * Write the report as a JSON object.
+     */
+    public void writeJSON(Writer writer) throws IOException {
+        DecimalFormat dec = decimalFormat();
+        writer.append("{\n  \"instructions\": [");
+        String separator = "\n";
+        for (Map.Entry<String, Long> entry : frequencies.entrySet()) {
+            String instrName = entry.getKey();
+            double CPI = getCPI(instrName);
+            writer.append(separator).append("    {\"mnemonic\": \"").append(instrName)
+                    .append("\", \"cpi\": ").append(dec.format(CPI))
+                    .append(", \"frequency\": ").append(Long.toString(entry.getValue()))
+                    .append(", \"cycles\": ").append(dec.format(entry.getValue() * CPI)).append("}");
+            separator = ",\n";
+        }
+        writer.append("\n  ],\n  \"types\": {");
+        separator = "\n";
+        for (int type = 0; type < TYPE_NAMES.length; type++) {
+            writer.append(separator).append("    \"").append(TYPE_NAMES[type].substring(0, 1))
+                    .append("\": {\"frequency\": ").append(Long.toString(typeFrequencies[type]))
+                    .append(", \"cycles\": ").append(dec.format(typeCycles[type])).append("}");
+            separator = ",\n";
+        }
+        writer.append("\n  },\n");
+        writer.append("  \"totalInstructions\": ").append(Long.toString(totalFrequency)).append(",\n");
+        writer.append("  \"totalCycles\": ").append(dec.format(totalCycles)).append(",\n");
+        writer.append("  \"cpi\": ").append(dec.format(average(totalCycles, totalFrequency))).append("\n");
+        writer.append("}\n");
+    }
+
+    private void writeCSVRow(Writer csvWriter, String delimiter, DecimalFormat dec, String name, String CPI,
+                             long frequency, double cycles) throws IOException {
+        csvWriter.append(name).append(delimiter);
+        csvWriter.append(CPI).append(delimiter);
+        csvWriter.append(Long.toString(frequency)).append(delimiter);
+        csvWriter.append(dec.format(cycles)).append(delimiter);
+        csvWriter.append(dec.format(average(cycles, totalCycles) * 100)).append("%");
+        csvWriter.append("\n");
+    }
+
+    private double getCPI(String instrName) {
+        Double CPI = instructionCPIs.get(instrName);
+        return (CPI == null) ? 1 : CPI;
+    }
+
+    // Index into the type arrays, grouping I-branch with I as the CPI Calculator does.
+    private static int typeOf(BasicInstructionFormat format) {
+        if (format == BasicInstructionFormat.R_FORMAT)
+            return 0;
+        else if (format == BasicInstructionFormat.I_FORMAT || format == BasicInstructionFormat.I_BRANCH_FORMAT)
+            return 1;
+        else if (format == BasicInstructionFormat.J_FORMAT)
+            return 2;
+        return -1;
+    }
+
+    private static double average(double total, double count) {
+        return (count == 0) ? 0 : total / count;
+    }
+
+    // Fixed decimal point, whatever the locale, for machine-readable output.
+    private static DecimalFormat decimalFormat() {
+        return new DecimalFormat("#0.000", DecimalFormatSymbols.getInstance(Locale.US));
+    }
+}
@@ -13,15 +13,17 @@ import mars.mips.instructions.BasicInstructionFormat;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
+import javax.swing.table.AbstractTableModel;
 import java.awt.*;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.io.Writer;
 import java.net.URL;
 import java.util.List;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 	
 /*
@@ -53,22 +55,59 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 /**
  * A MARS tool to analyze the MIPS datapath during the execution of an assembly program.
+ * <p>
+ * Each instruction executed is classified by its opcode bits and instruction format
+ * into one of the instruction types of the signals JSON file, whose control unit
+ * signals are looked up once, when the file is loaded.  Only the statement and its
+ * type are recorded, and the analysis text is produced when a record is shown or
+ * written.  Records can also be streamed to a CSV file as they occur, and a histogram
+ * counts the value of each signal over all instructions executed.
  *
  * @author <a href="mailto:nikosdelta@protonmail.com">Nick Dimitrakopoulos</a>
  */
 public class DatapathAnalyzer extends AbstractMarsToolAndApplication {
 
     private static final String heading = "Datapath Analyzer";
-    private static final String version = " Version 1.0 (Nick Dimitrakopoulos)";
+    private static final String version = " Version 1.1 (Nick Dimitrakopoulos)";
+
+    //INSTRUCTION TYPES, USED AS INDEXES
+    private static final int R_TYPE = 0;
+    private static final int I_TYPE = 1;
+    private static final int LOAD_TYPE = 2;
+    private static final int STORE_TYPE = 3;
+    private static final int BRANCH_TYPE = 4;
+    private static final int J_TYPE = 5;
+    private static final String[] TYPE_NAMES = {InstructionInfo.R_TYPE, InstructionInfo.I_TYPE,
+            InstructionInfo.LOAD_TYPE, InstructionInfo.STORE_TYPE, InstructionInfo.BRANCH_TYPE, InstructionInfo.J_TYPE};
+
+    private static final String[] CSV_SIGNALS = {"RegDst", "Branch", "MemRead", "MemtoReg", "ALUOp0", "ALUOp1",
+            "MemWrite", "ALUSrc", "RegWrite"};
+    private static final String[] SIGNAL_VALUES = {"0", "1", "X"};
 
     private int lastAddress = -1;
     private List<Signal> signals;
-
-    private final List<InstructionInfo> instructionInfoList = new ArrayList<>();
-
-
+    private final List<Map<String,String>> typeSignals = new ArrayList<>(); //control unit signals of each type
+
+    //Instructions executed, recorded by the simulator thread and shown by the GUI.  Guarded by records.
+    private final Object records = new Object();
+    private ProgramStatement[] recordStatements = new ProgramStatement[1024];
+    private byte[] recordTypes = new byte[1024];
+    private int recordCount = 0;
+    private int resetCount = 0; //generation of the records, so the table can tell they were replaced
+    private final long[] typeCounts = new long[TYPE_NAMES.length];
+    private Writer csvStream;
+    private boolean keepRecords = true;
+
+    private final AtomicBoolean displayPending = new AtomicBoolean(false);
+    private int shownRecords = 0; //rows the table knows about; GUI thread only
+    private int shownResetCount = 0; //generation of the rows the table knows about; GUI thread only
+
+    private final RecordTableModel recordTableModel = new RecordTableModel();
+    private final HistogramTableModel histogramTableModel = new HistogramTableModel();
     private final JTextArea message = new JTextArea();
     private final JButton saveCSVButton = new JButton();
+    private final JButton streamCSVButton = new JButton();
+    private final JCheckBox keepRecordsCheckBox = new JCheckBox("Keep records", true);
 
     /**
      * Simple constructor, likely used by the MARS Tools menu mechanism
@@ -97,75 +136,176 @@ public class DatapathAnalyzer extends AbstractMarsToolAndApplication {
 
         JTabbedPane pane = new JTabbedPane();
         pane.addTab("Console", makeConsoleTab());
+        pane.addTab("Signal Histogram", makeHistogramTab());
         return pane;
     }
 
     private JPanel makeConsoleTab() {
-        JPanel mainPanel = new JPanel(new GridLayout());
+        JPanel mainPanel = new JPanel(new BorderLayout());
 
         message.setEditable(false);
         message.setLineWrap(true);
         message.setWrapStyleWord(true);
         message.setFont(new Font("Ariel", Font.PLAIN, 12));
         message.setText("Execute instructions and let me analyze their datapath!\n" +
+                "Select an instruction to see its analysis.\n" +
                 "WARNING: Jump instructions are normally not supported in the MARS X-Ray datapath" +
                 " but here a new Jump signal has been added.");
         message.setCaretPosition(0); // Assure first line is visible and at top of scroll pane.
 
+        //JTable only renders the rows in view, so the table costs the same however long the run
+        JTable table = new JTable(recordTableModel);
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.getSelectionModel().addListSelectionListener((event) -> {
+            int row = table.getSelectedRow();
+            if (!event.getValueIsAdjusting() && row >= 0) {
+                message.setText(recordTableModel.getInstructionInfo(row).toString());
+                message.setCaretPosition(0);
+            }
+        });
 
         saveCSVButton.setText("Export CSV File");
         saveCSVButton.addActionListener((event) -> {
-            JFileChooser chooser = new JFileChooser();
-            chooser.setFileFilter(new FileNameExtensionFilter("CSV file (.csv)","csv"));
-            int option = chooser.showSaveDialog(mainPanel);
-            if(option == JFileChooser.APPROVE_OPTION) {
+            File file = chooseCSVFile(mainPanel);
+            if (file != null) {
                 try {
-                    File file = chooser.getSelectedFile();
-                    if(!file.getName().contains(".csv"))
-                        file = new File(file.toString() + ".csv");
                     makeCSVFile(file);
                 } catch (IOException ex) {
-                    JOptionPane.showMessageDialog(mainPanel,
-                            "IO Error occured. Detailed message is:" + ex.getMessage(),
-                            "Error",
-                            JOptionPane.ERROR_MESSAGE);
+                    showIOError(mainPanel, ex);
                 }
             }
         });
 
-        mainPanel.add(new JScrollPane(message));
-        mainPanel.add(saveCSVButton);
+        streamCSVButton.setText("Stream CSV File");
+        streamCSVButton.setToolTipText("Write each instruction to a CSV file as it is executed");
+        streamCSVButton.addActionListener((event) -> {
+            try {
+                if (isStreaming()) {
+                    stopStreaming();
+                } else {
+                    File file = chooseCSVFile(mainPanel);
+                    if (file != null)
+                        startStreaming(file);
+                }
+            } catch (IOException ex) {
+                showIOError(mainPanel, ex);
+            }
+            streamCSVButton.setText(isStreaming() ? "Stop Streaming" : "Stream CSV File");
+        });
+
+        keepRecordsCheckBox.setToolTipText("If not selected, instructions are only counted (and streamed), using no memory");
+        keepRecordsCheckBox.addItemListener((event) -> {
+            synchronized (records) {
+                keepRecords = keepRecordsCheckBox.isSelected();
+            }
+        });
+
+        JPanel buttonPanel = new JPanel();
+        buttonPanel.add(saveCSVButton);
+        buttonPanel.add(streamCSVButton);
+        buttonPanel.add(keepRecordsCheckBox);
+
+        JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT,
+                new JScrollPane(table), new JScrollPane(message));
+        splitPane.setResizeWeight(0.6);
+        splitPane.setPreferredSize(new Dimension(700, 400));
+
+        mainPanel.add(splitPane, BorderLayout.CENTER);
+        mainPanel.add(buttonPanel, BorderLayout.SOUTH);
 
         return mainPanel;
 
     }
 
+    private JPanel makeHistogramTab() {
+        JPanel mainPanel = new JPanel(new GridLayout());
+        mainPanel.add(new JScrollPane(new JTable(histogramTableModel)));
+        return mainPanel;
+    }
+
+    private File chooseCSVFile(Component parent) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new FileNameExtensionFilter("CSV file (.csv)","csv"));
+        int option = chooser.showSaveDialog(parent);
+        if(option != JFileChooser.APPROVE_OPTION)
+            return null;
+        File file = chooser.getSelectedFile();
+        if(!file.getName().contains(".csv"))
+            file = new File(file.toString() + ".csv");
+        return file;
+    }
+
+    private void showIOError(Component parent, IOException ex) {
+        JOptionPane.showMessageDialog(parent,
+                "IO Error occured. Detailed message is:" + ex.getMessage(),
+                "Error",
+                JOptionPane.ERROR_MESSAGE);
+    }
+
     private void makeCSVFile(File file) throws IOException {
 
-        FileWriter csvWriter = new FileWriter(file);
+        try (Writer csvWriter = new BufferedWriter(new FileWriter(file))) {
+            writeCSVHeader(csvWriter);
+            int count;
+            synchronized (records) {
+                count = recordCount;
+            }
+            for (int i = 0; i < count; i++) {
+                csvWriter.append(getInstructionInfo(i).toCSVString()).append('\n');
+            }
+        }
+    }
 
+    private void writeCSVHeader(Writer csvWriter) throws IOException {
         csvWriter.append("Instruction Type").append(',')
                 .append("Source").append(',')
                 .append("Basic").append(',')
                 .append("Read Register 1").append(',')
                 .append("Read Register 2").append(',')
-                .append("Write Register").append(',')
-                .append("RegDst").append(',')
-                .append("Branch").append(',')
-                .append("MemRead").append(',')
-                .append("MemtoReg").append(',')
-                .append("ALUOp0").append(',')
-                .append("ALUOp1").append(',')
-                .append("MemWrite").append(',')
-                .append("ALUSrc").append(',')
-                .append("RegWrite")
-                .append('\n');
-
-        for(InstructionInfo instr: instructionInfoList)
-            csvWriter.append(instr.toCSVString()).append('\n');
-
-        csvWriter.flush();
-        csvWriter.close();
+                .append("Write Register");
+        for (String signalName : CSV_SIGNALS)
+            csvWriter.append(',').append(signalName);
+        csvWriter.append('\n');
+    }
+
+    private boolean isStreaming() {
+        synchronized (records) {
+            return csvStream != null;
+        }
+    }
+
+    private void startStreaming(File file) throws IOException {
+        Writer stream = new BufferedWriter(new FileWriter(file));
+        writeCSVHeader(stream);
+        synchronized (records) {
+            csvStream = stream;
+        }
+    }
+
+    //A write to the CSV stream failed and it has been dropped: close it and tell the user.
+    private void streamFailed(Writer stream, IOException ex) {
+        try {
+            stream.close();
+        } catch (IOException closeEx) {
+            //the write failure is reported already
+        }
+        SwingUtilities.invokeLater(() -> {
+            streamCSVButton.setText("Stream CSV File");
+            JOptionPane.showMessageDialog(streamCSVButton,
+                    "Streaming to CSV file stopped. IO Error occured. Detailed message is:" + ex.getMessage(),
+                    "Error",
+                    JOptionPane.ERROR_MESSAGE);
+        });
+    }
+
+    private void stopStreaming() throws IOException {
+        Writer stream;
+        synchronized (records) {
+            stream = csvStream;
+            csvStream = null;
+        }
+        if (stream != null)
+            stream.close();
     }
 
     private void loadSignalJSONFile()
@@ -178,9 +318,75 @@ public class DatapathAnalyzer extends AbstractMarsToolAndApplication {
         } catch (IOException e)
         {
             e.printStackTrace();
+            this.signals = new ArrayList<>();
+        }
+
+        //Look up the signals of each instruction type once, rather than for every instruction
+        typeSignals.clear();
+        for (int type = 0; type < TYPE_NAMES.length; type++) {
+            Map<String,String> values = new LinkedHashMap<>();
+            for (Signal signal : signals)
+                values.put(signal.getName(), getSignalValue(signal, type));
+            typeSignals.add(Collections.unmodifiableMap(values));
         }
     }
 
+    private static String getSignalValue(Signal signal, int type) {
+        switch (type) {
+            case R_TYPE: return signal.getRType();
+            case I_TYPE: return signal.getIType();
+            case LOAD_TYPE: return signal.getLoad();
+            case STORE_TYPE: return signal.getStore();
+            case BRANCH_TYPE: return signal.getBranch();
+            default: return signal.getJType();
+        }
+    }
+
+    //SPECIAL HANDLING FOR LOAD/STORE INSTRUCTIONS
+    //( MARS IMPLEMENTATION DOESN'T HAVE A BasicInstructionFormat FOR THEM )
+    //Loads have opcode 100xxx and stores 101xxx.  Returns -1 for an instruction of no type.
+    private static int getInstructionType(int binaryStatement, BasicInstructionFormat format) {
+        int opcode = binaryStatement >>> 26;
+        if ((opcode & 0x38) == 0x20)
+            return LOAD_TYPE;
+        if ((opcode & 0x38) == 0x28)
+            return STORE_TYPE;
+        if (format == BasicInstructionFormat.R_FORMAT)
+            return R_TYPE;
+        if (format == BasicInstructionFormat.I_FORMAT)
+            return I_TYPE;
+        if (format == BasicInstructionFormat.I_BRANCH_FORMAT)
+            return BRANCH_TYPE;
+        if (format == BasicInstructionFormat.J_FORMAT)
+            return J_TYPE;
+        return -1;
+    }
+
+    private InstructionInfo makeInstructionInfo(ProgramStatement stmt, int type) {
+        String source = stmt.getSource();
+        String basic = stmt.getPrintableBasicAssemblyStatement();
+        String instructionCode = stmt.getMachineStatement();
+        Map<String,String> controlUnitSignals = typeSignals.get(type);
+        switch (type) {
+            case R_TYPE:
+                return new RTypeInstructionInfo(source, basic, instructionCode, controlUnitSignals);
+            case J_TYPE:
+                return new JTypeInstructionInfo(source, basic, instructionCode, controlUnitSignals);
+            default:
+                return new ITypeInstructionInfo(TYPE_NAMES[type], source, basic, instructionCode, controlUnitSignals);
+        }
+    }
+
+    private InstructionInfo getInstructionInfo(int record) {
+        ProgramStatement stmt;
+        int type;
+        synchronized (records) {
+            stmt = recordStatements[record];
+            type = recordTypes[record];
+        }
+        return makeInstructionInfo(stmt, type);
+    }
+
     @Override
     protected void addAsObserver() {
         addAsObserver(Memory.textBaseAddress, Memory.textLimitAddress);
@@ -199,64 +405,38 @@ public class DatapathAnalyzer extends AbstractMarsToolAndApplication {
             if (stmt == null) return; //If memory returns an empty statement then finish execution
 
             BasicInstruction instr = (BasicInstruction) stmt.getInstruction();
-            BasicInstructionFormat format = instr.getInstructionFormat();
-            String instructionCode = stmt.getMachineStatement();
-
-            //SPECIAL HANDLING FOR LOAD/STORE INSTRUCTIONS
-            //( MARS IMPLEMENTATION DOESN'T HAVE A BasicInstructionFormat FOR THEM )
-            if(instructionCode.substring(0, 6).matches("100[0-1][0-1][0-1]")) //LOAD TYPE
-            {
-                ITypeInstructionInfo iInstruction =  new ITypeInstructionInfo(InstructionInfo.LOAD_TYPE,stmt.getSource(),
-                        stmt.getPrintableBasicAssemblyStatement(),instructionCode);
-                for(Signal signal : signals)
-                    iInstruction.putSignal(signal.getName(),signal.getLoad());
-                instructionInfoList.add(iInstruction);
-            }
-            else if(instructionCode.substring(0, 6).matches("101[0-1][0-1][0-1]")) //STORE TYPE
-            {
-                ITypeInstructionInfo iInstruction =  new ITypeInstructionInfo(InstructionInfo.STORE_TYPE,stmt.getSource(),
-                        stmt.getPrintableBasicAssemblyStatement(),instructionCode);
-                for(Signal signal : signals)
-                    iInstruction.putSignal(signal.getName(),signal.getStore());
-                instructionInfoList.add(iInstruction);
-            }
-            else if (format == BasicInstructionFormat.R_FORMAT)
-            {
-                RTypeInstructionInfo rInstruction =  new RTypeInstructionInfo(stmt.getSource(),
-                        stmt.getPrintableBasicAssemblyStatement(), instructionCode);
-                for(Signal signal : signals)
-                    rInstruction.putSignal(signal.getName(),signal.getRType());
-                instructionInfoList.add(rInstruction);
-            }
-            else if (format == BasicInstructionFormat.I_FORMAT)
-            {
-                ITypeInstructionInfo iInstruction =  new ITypeInstructionInfo(InstructionInfo.I_TYPE,stmt.getSource(),
-                        stmt.getPrintableBasicAssemblyStatement(), instructionCode);
-                for(Signal signal : signals)
-                    iInstruction.putSignal(signal.getName(),signal.getIType());
-                instructionInfoList.add(iInstruction);
-            }
-            else if(format == BasicInstructionFormat.I_BRANCH_FORMAT)
-            {
-                ITypeInstructionInfo iInstruction =  new ITypeInstructionInfo(InstructionInfo.BRANCH_TYPE,stmt.getSource(),
-                        stmt.getPrintableBasicAssemblyStatement(),instructionCode);
-                for(Signal signal : signals)
-                    iInstruction.putSignal(signal.getName(),signal.getBranch());
-                instructionInfoList.add(iInstruction);
-            }
-            else if (format == BasicInstructionFormat.J_FORMAT)
-            {
-                JTypeInstructionInfo jInstruction =  new JTypeInstructionInfo(stmt.getSource(),
-                        stmt.getPrintableBasicAssemblyStatement(),instructionCode);
-                for(Signal signal : signals)
-                    jInstruction.putSignal(signal.getName(),signal.getJType());
-                instructionInfoList.add(jInstruction);
+            int type = getInstructionType(stmt.getBinaryStatement(), instr.getInstructionFormat());
+            if (type < 0) return;
+
+            Writer failedStream = null;
+            IOException streamError = null;
+            synchronized (records) {
+                typeCounts[type]++;
+                if (keepRecords) {
+                    if (recordCount == recordStatements.length) {
+                        recordStatements = Arrays.copyOf(recordStatements, recordCount * 2);
+                        recordTypes = Arrays.copyOf(recordTypes, recordCount * 2);
+                    }
+                    recordStatements[recordCount] = stmt;
+                    recordTypes[recordCount] = (byte) type;
+                    recordCount++;
+                }
+                if (csvStream != null) {
+                    try {
+                        csvStream.append(makeInstructionInfo(stmt, type).toCSVString()).append('\n');
+                    } catch (IOException e) {
+                        failedStream = csvStream;
+                        streamError = e;
+                        csvStream = null;
+                    }
+                }
             }
+            if (failedStream != null)
+                streamFailed(failedStream, streamError);
 
         } catch (AddressErrorException e) {
             e.printStackTrace();
         }
-        updateDisplay();
     }
 
     @Override
@@ -268,20 +448,155 @@ public class DatapathAnalyzer extends AbstractMarsToolAndApplication {
     @Override
     protected void reset() {
         lastAddress = -1;
-        instructionInfoList.clear();
+        synchronized (records) {
+            recordStatements = new ProgramStatement[1024];
+            recordTypes = new byte[1024];
+            recordCount = 0;
+            resetCount++;
+            shownResetCount = resetCount;
+            Arrays.fill(typeCounts, 0);
+        }
+        //Called on the GUI thread, so drop the old rows before a queued repaint asks for them.
+        shownRecords = 0;
+        recordTableModel.fireTableDataChanged();
         updateDisplay();
     }
 
+    @Override
+    protected void performSpecialClosingDuties() {
+        try {
+            stopStreaming();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Called after every instruction, so only arranges for the tables to catch up
+     * (new rows, new counts) the next time the GUI thread gets to it.
+     */
     @Override
     protected void updateDisplay() {
-        message.setText(generateText());
+        if (displayPending.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(() -> {
+                displayPending.set(false);
+                int count, generation;
+                synchronized (records) {
+                    count = recordCount;
+                    generation = resetCount;
+                }
+                if (generation != shownResetCount) {
+                    //Rows already shown may belong to the previous run, even if there are now more.
+                    shownResetCount = generation;
+                    shownRecords = count;
+                    recordTableModel.fireTableDataChanged();
+                } else if (count > shownRecords) {
+                    int first = shownRecords;
+                    shownRecords = count;
+                    recordTableModel.fireTableRowsInserted(first, count - 1);
+                } else if (count < shownRecords) {
+                    shownRecords = count;
+                    recordTableModel.fireTableDataChanged();
+                }
+                histogramTableModel.fireTableDataChanged();
+            });
+        }
     }
 
-    private String generateText() {
-        StringBuilder builder = new StringBuilder();
-        for(InstructionInfo instr : instructionInfoList)
-            builder.append(instr.toString()).append('\n');
-        return builder.toString();
+    //Table of instructions executed, with the columns of the CSV file and all signals.
+    //Rows are built only when shown.
+    private class RecordTableModel extends AbstractTableModel
+    {
+        private static final long serialVersionUID = 1L;
+        private int cachedRow = -1;
+        private InstructionInfo cachedInfo;
+
+        InstructionInfo getInstructionInfo(int row)
+        {
+            if (row != cachedRow) {
+                cachedInfo = DatapathAnalyzer.this.getInstructionInfo(row);
+                cachedRow = row;
+            }
+            return cachedInfo;
+        }
+
+        @Override
+        public void fireTableChanged(javax.swing.event.TableModelEvent e)
+        {
+            cachedRow = -1;
+            super.fireTableChanged(e);
+        }
+
+        public int getRowCount()
+        {
+            return shownRecords;
+        }
+
+        public int getColumnCount()
+        {
+            return 6 + signals.size();
+        }
+
+        public String getColumnName(int column)
+        {
+            switch (column) {
+                case 0: return "Instruction Type";
+                case 1: return "Source";
+                case 2: return "Basic";
+                case 3: return "Read Register 1";
+                case 4: return "Read Register 2";
+                case 5: return "Write Register";
+                default: return signals.get(column - 6).getName();
+            }
+        }
+
+        public Object getValueAt(int row, int column)
+        {
+            InstructionInfo info = getInstructionInfo(row);
+            switch (column) {
+                case 0: return info.instructionType;
+                case 1: return info.instructionSource;
+                case 2: return info.instructionBasic;
+                case 3: return info.regRead1;
+                case 4: return info.regRead2;
+                case 5: return info.regWrite;
+                default: return info.controlUnitSignals.get(signals.get(column - 6).getName());
+            }
+        }
+    }
+
+    //Number of instructions executed with each value of each signal, from the count of each instruction type.
+    private class HistogramTableModel extends AbstractTableModel
+    {
+        private static final long serialVersionUID = 1L;
+        public int getRowCount()
+        {
+            return signals.size();
+        }
+
+        public int getColumnCount()
+        {
+            return 1 + SIGNAL_VALUES.length;
+        }
+
+        public String getColumnName(int column)
+        {
+            return (column == 0) ? "Signal" : SIGNAL_VALUES[column - 1];
+        }
+
+        public Object getValueAt(int row, int column)
+        {
+            String signalName = signals.get(row).getName();
+            if (column == 0)
+                return signalName;
+            long count = 0;
+            synchronized (records) {
+                for (int type = 0; type < TYPE_NAMES.length; type++)
+                    if (SIGNAL_VALUES[column - 1].equals(typeSignals.get(type).get(signalName)))
+                        count += typeCounts[type];
+            }
+            return count;
+        }
     }
 
     private static class Signal
@@ -368,11 +683,12 @@ public class DatapathAnalyzer extends AbstractMarsToolAndApplication {
         final String regRead2;
         final String regWrite;
 
-        public final Map<String,String> controlUnitSignals = new LinkedHashMap<>();
+        public final Map<String,String> controlUnitSignals; //shared by all instructions of the type
 
         public InstructionInfo(String instructionType, String instructionSource,
                                String instructionBasic, String instructionCode,
-                               String regRead1, String regRead2, String regWrite)
+                               String regRead1, String regRead2, String regWrite,
+                               Map<String,String> controlUnitSignals)
         {
             this.instructionType = instructionType;
             this.instructionSource = instructionSource;
@@ -383,11 +699,7 @@ public class DatapathAnalyzer extends AbstractMarsToolAndApplication {
             this.regRead1 = regRead1;
             this.regRead2 = regRead2;
             this.regWrite = regWrite;
-        }
-
-        public void putSignal(String signalName, String value)
-        {
-            controlUnitSignals.put(signalName,value);
+            this.controlUnitSignals = controlUnitSignals;
         }
 
         public abstract String printInstructionAnalysisInfo();
@@ -444,7 +756,8 @@ public class DatapathAnalyzer extends AbstractMarsToolAndApplication {
         private final String shamt;
         private final String funct;
 
-        public RTypeInstructionInfo(String instructionSource, String instructionBasic, String instructionCode)
+        public RTypeInstructionInfo(String instructionSource, String instructionBasic, String instructionCode,
+                                    Map<String,String> controlUnitSignals)
         {
             super(
                     R_TYPE,
@@ -453,7 +766,8 @@ public class DatapathAnalyzer extends AbstractMarsToolAndApplication {
                     instructionCode,
                     instructionCode.substring(6,11),
                     instructionCode.substring(11,16),
-                    instructionCode.substring(16,21)
+                    instructionCode.substring(16,21),
+                    controlUnitSignals
             );
 
             this.rs = this.regRead1;
@@ -496,7 +810,8 @@ public class DatapathAnalyzer extends AbstractMarsToolAndApplication {
         private final String immediate;
 
         public ITypeInstructionInfo(String instructionType,String instructionSource,
-                                    String instructionBasic, String instructionCode)
+                                    String instructionBasic, String instructionCode,
+                                    Map<String,String> controlUnitSignals)
         {
             super(
                     instructionType,
@@ -506,7 +821,8 @@ public class DatapathAnalyzer extends AbstractMarsToolAndApplication {
                     instructionCode.substring(6,11),
                     instructionCode.substring(11,16),
                     (instructionType == BRANCH_TYPE || instructionType == STORE_TYPE)
-                            ? "XXXXX" : instructionCode.substring(11,16));
+                            ? "XXXXX" : instructionCode.substring(11,16),
+                    controlUnitSignals);
 
             this.rs = this.regRead1;
             this.rt = this.regRead2;
@@ -530,7 +846,8 @@ public class DatapathAnalyzer extends AbstractMarsToolAndApplication {
     {
         private final String address;
 
-        public JTypeInstructionInfo(String instructionSource, String instructionBasic, String instructionCode)
+        public JTypeInstructionInfo(String instructionSource, String instructionBasic, String instructionCode,
+                                    Map<String,String> controlUnitSignals)
         {
             super(
                     InstructionInfo.J_TYPE,
@@ -539,7 +856,8 @@ public class DatapathAnalyzer extends AbstractMarsToolAndApplication {
                     instructionCode,
                     instructionCode.substring(6,11),
                     instructionCode.substring(11,16),
-                    "XXXXX");
+                    "XXXXX",
+                    controlUnitSignals);
 
             this.address = instructionCode.substring(6,32);
         }
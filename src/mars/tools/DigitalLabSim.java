@@ -89,7 +89,7 @@ public class DigitalLabSim extends AbstractMarsToolAndApplication {
             } else {
                 CounterValue = CounterValueMax;
                 if ((Coprocessor0.getValue(Coprocessor0.STATUS) & 2) == 0) {
-                    mars.simulator.Simulator.externalInterruptingDevice = /*Exceptions.*/EXTERNAL_INTERRUPT_TIMER;
+                    mars.simulator.Simulator.raiseExternalInterrupt(/*Exceptions.*/EXTERNAL_INTERRUPT_TIMER);
                 }
             }
     }
@@ -355,7 +355,7 @@ public class DigitalLabSim extends AbstractMarsToolAndApplication {
                     KeyBoardValueButtonClick = buttonValue;
                     button[KeyBoardValueButtonClick].setBackground(Color.GREEN);
                     if (KeyboardInterruptOnOff && (Coprocessor0.getValue(Coprocessor0.STATUS) & 2) == 0) {
-                        mars.simulator.Simulator.externalInterruptingDevice = /*Exceptions.*/EXTERNAL_INTERRUPT_HEXA_KEYBOARD;
+                        mars.simulator.Simulator.raiseExternalInterrupt(/*Exceptions.*/EXTERNAL_INTERRUPT_HEXA_KEYBOARD);
                     }
                 }
             }
@@ -0,0 +1,243 @@
+package mars.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.NoSuchElementException;
+
+/*
+Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Standard input for the read syscalls when running from the command line.
+ * Input comes from a byte buffer, either all of it given up front (e.g. a file
+ * named by the MarsLaunch "in" option) or filled from an InputStream as needed.
+ * Each read syscall takes one line, as BufferedReader.readLine() would, but
+ * integers are parsed directly from the bytes of the line rather than through
+ * a String.  Raw reads (syscall 14 on STDIN) take bytes from the same buffer so
+ * the two can be mixed.
+ */
+public class ConsoleInput {
+    private static final int BUFFER_SIZE = 65536;
+
+    private InputStream in; // null once all input is in the buffer
+    private byte[] buffer;
+    private int position;   // next unread byte
+    private int limit;      // end of bytes in buffer
+    private int lineStart;  // current line, set by nextLine()
+    private int lineEnd;
+
+    /**
+     * Input read from the given stream as needed.
+     *
+     * @param in stream to read from, e.g. System.in
+     */
+    public ConsoleInput(InputStream in) {
+        this.in = in;
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Input consisting of exactly the given bytes.
+     *
+     * @param data the complete input
+     */
+    public ConsoleInput(byte[] data) {
+        this.in = null;
+        this.buffer = data;
+        this.limit = data.length;
+    }
+
+    /**
+     * Read the next line and return it, without its line terminator, as a String.
+     *
+     * @return the line
+     * @throws NoSuchElementException if there is no more input
+     */
+    public String readLine() {
+        nextLine();
+        return new String(buffer, lineStart, lineEnd - lineStart);
+    }
+
+    /**
+     * Read the next line and return the int value it holds.  Like
+     * Integer.parseInt(line.trim()), the line must hold nothing but the
+     * value and surrounding white space.
+     *
+     * @return the value
+     * @throws NoSuchElementException if there is no more input
+     * @throws NumberFormatException  if the line does not hold an int value
+     */
+    public int readInt() {
+        nextLine();
+        int start = lineStart;
+        int end = lineEnd;
+        while (start < end && (buffer[start] & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (buffer[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+        boolean negative = false;
+        int i = start;
+        if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = (buffer[i] == '-');
+            i++;
+        }
+        if (i == end) {
+            throw new NumberFormatException(new String(buffer, start, end - start));
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                // Let Integer decide, e.g. for digits from other scripts.
+                return Integer.parseInt(new String(buffer, start, end - start));
+            }
+            value = value * 10 + digit;
+            if (value > 1L + Integer.MAX_VALUE) {
+                throw new NumberFormatException(new String(buffer, start, end - start));
+            }
+        }
+        if (negative) {
+            value = -value;
+        }
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException(new String(buffer, start, end - start));
+        }
+        return (int) value;
+    }
+
+    /**
+     * Read the next line and return its first character.
+     *
+     * @return the character
+     * @throws NoSuchElementException    if there is no more input
+     * @throws IndexOutOfBoundsException if the line is empty
+     */
+    public int readChar() {
+        nextLine();
+        if (lineStart == lineEnd) {
+            throw new IndexOutOfBoundsException("empty line");
+        }
+        if (buffer[lineStart] >= 0) {
+            return buffer[lineStart];
+        }
+        return new String(buffer, lineStart, lineEnd - lineStart).charAt(0);
+    }
+
+    /**
+     * Read up to the given number of bytes, without regard to lines.
+     *
+     * @param b      array to hold bytes read
+     * @param offset index in b of first byte read
+     * @param length maximum number of bytes to read
+     * @return number of bytes read, or -1 if there is no more input
+     * @throws IOException if the underlying stream cannot be read
+     */
+    public int read(byte[] b, int offset, int length) throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        int count = Math.min(length, limit - position);
+        System.arraycopy(buffer, position, b, offset, count);
+        position += count;
+        return count;
+    }
+
+    // Set lineStart and lineEnd to the next line, which ends at \n, \r, \r\n or
+    // end of input, and move past it.
+    private void nextLine() {
+        int scanned = position;
+        while (true) {
+            for (int i = scanned; i < limit; i++) {
+                if (buffer[i] == '\n' || buffer[i] == '\r') {
+                    lineStart = position;
+                    lineEnd = i;
+                    if (buffer[i] == '\r') {
+                        // Need to see the next byte to know whether the line ends with \r\n.
+                        if (i + 1 == limit) {
+                            int offset = position;
+                            fill();
+                            offset -= position; // fill() may have moved the line to the start of the buffer
+                            lineStart -= offset;
+                            lineEnd -= offset;
+                            i -= offset;
+                        }
+                        if (i + 1 < limit && buffer[i + 1] == '\n') {
+                            i++;
+                        }
+                    }
+                    position = i + 1;
+                    return;
+                }
+            }
+            scanned = limit - position;
+            if (!fill()) {
+                break;
+            }
+            scanned += position;
+        }
+        if (position == limit) {
+            throw new NoSuchElementException("end of input");
+        }
+        lineStart = position;
+        lineEnd = limit;
+        position = limit;
+    }
+
+    // Read more bytes from the stream, keeping unread bytes and moving them to the
+    // start of the buffer (which grows if they fill it).  Returns false if there was
+    // nothing more to read.
+    private boolean fill() {
+        if (in == null) {
+            return false;
+        }
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        if (limit == buffer.length) {
+            byte[] larger = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, larger, 0, limit);
+            buffer = larger;
+        }
+        int count;
+        try {
+            count = in.read(buffer, limit, buffer.length - limit);
+        } catch (IOException e) {
+            count = -1;
+        }
+        if (count <= 0) {
+            in = null;
+            return false;
+        }
+        limit += count;
+        return true;
+    }
+}
@@ -4,6 +4,12 @@ import mars.Globals;
 import mars.Settings;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Timer;
+import java.util.TimerTask;
 	
 	/*
 Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
@@ -49,9 +55,9 @@ public class SystemIO {
      */
     public static final int SYSCALL_BUFSIZE = 128;
     /**
-     * Maximum number of files that can be open
+     * Maximum number of files that can be open, including standard input, output and error
      */
-    public static final int SYSCALL_MAXFILES = 32;
+    public static final int SYSCALL_MAXFILES = Globals.maximumOpenFiles;
     /**
      * String used for description of file error
      */
@@ -70,25 +76,40 @@ public class SystemIO {
     private static final int STDOUT = 1;
     private static final int STDERR = 2;
 
+    // lseek whence values
+    private static final int SEEK_SET = 0;
+    private static final int SEEK_CUR = 1;
+    private static final int SEEK_END = 2;
+
     // Will use one buffered reader for all keyboard/redirected/piped input.
-    // Added by DPS 28 Feb 2008.  See getInputReader() below.
-    private static BufferedReader inputReader = null;
+    // Added by DPS 28 Feb 2008.  See getInput() below.  It reads bytes and
+    // parses integers directly from them; see ConsoleInput.
+    private static ConsoleInput input = null;
+
+    // Output from the print syscalls is gathered here and written out in chunks
+    // rather than one System.out.print or postRunMessage per syscall.  The buffer
+    // is flushed when it reaches Globals.outputBufferSize characters, before any
+    // input is requested, and shortly after the last print (see OUTPUT_FLUSH_DELAY)
+    // so an idle or looping program still shows its output.
+    private static final StringBuilder outputBuffer = new StringBuilder();
+    private static final int OUTPUT_FLUSH_DELAY = 100; // milliseconds
+    private static Timer outputTimer = null;
+    private static boolean outputFlushScheduled = false;
 
     /**
      * Implements syscall to read an integer value.
-     * Client is responsible for catching NumberFormatException.
+     * Client is responsible for catching NumberFormatException, and
+     * NoSuchElementException at end of input when run from the command line.
      *
      * @param serviceNumber the number assigned to Read Int syscall (default 5)
      * @return int value corresponding to user input
      */
 
     public static int readInteger(int serviceNumber) {
+        flushOutput();
         String input = "0";
         if (Globals.getGui() == null) {
-            try {
-                input = getInputReader().readLine();
-            } catch (IOException e) {
-            }
+            return getInput().readInt();
         } else {
             if (Globals.getSettings().getBooleanSetting(Settings.POPUP_SYSCALL_INPUT)) {
                 input = Globals.getGui().getMessagesPane().getInputString(
@@ -105,19 +126,18 @@ public class SystemIO {
 
     /**
      * Implements syscall to read a float value.
-     * Client is responsible for catching NumberFormatException.
+     * Client is responsible for catching NumberFormatException, and
+     * NoSuchElementException at end of input when run from the command line.
      *
      * @param serviceNumber the number assigned to Read Float syscall (default 6)
      * @return float value corresponding to user input
      * Feb 14 2005 Ken Vollmar
      */
     public static float readFloat(int serviceNumber) {
+        flushOutput();
         String input = "0";
         if (Globals.getGui() == null) {
-            try {
-                input = getInputReader().readLine();
-            } catch (IOException e) {
-            }
+            input = getInput().readLine();
         } else {
             if (Globals.getSettings().getBooleanSetting(Settings.POPUP_SYSCALL_INPUT)) {
                 input = Globals.getGui().getMessagesPane().getInputString(
@@ -133,19 +153,18 @@ public class SystemIO {
 
     /**
      * Implements syscall to read a double value.
-     * Client is responsible for catching NumberFormatException.
+     * Client is responsible for catching NumberFormatException, and
+     * NoSuchElementException at end of input when run from the command line.
      *
      * @param serviceNumber the number assigned to Read Double syscall (default 7)
      * @return double value corresponding to user input
      * 1 Aug 2005 DPS, based on Ken Vollmar's readFloat
      */
     public static double readDouble(int serviceNumber) {
+        flushOutput();
         String input = "0";
         if (Globals.getGui() == null) {
-            try {
-                input = getInputReader().readLine();
-            } catch (IOException e) {
-            }
+            input = getInput().readLine();
         } else {
             if (Globals.getSettings().getBooleanSetting(Settings.POPUP_SYSCALL_INPUT)) {
                 input = Globals.getGui().getMessagesPane().getInputString(
@@ -163,12 +182,42 @@ public class SystemIO {
      * Implements syscall having 4 in $v0, to print a string.
      */
     public static void printString(String string) {
-        if (Globals.getGui() == null) {
-            System.out.print(string);
-        } else {
-            Globals.getGui().getMessagesPane().postRunMessage(string);
+        synchronized (outputBuffer) {
+            outputBuffer.append(string);
+            if (outputBuffer.length() >= Globals.outputBufferSize) {
+                flushOutput();
+            } else if (!outputFlushScheduled) {
+                outputFlushScheduled = true;
+                getOutputTimer().schedule(new TimerTask() {
+                    public void run() {
+                        flushOutput();
+                    }
+                }, OUTPUT_FLUSH_DELAY);
+            }
         }
+    }
 
+
+    /**
+     * Writes any output still held by printString to System.out (command mode)
+     * or the Run I/O pane (IDE).  Called before input is requested and when
+     * execution stops, so output always appears in program order.
+     */
+    public static void flushOutput() {
+        synchronized (outputBuffer) {
+            outputFlushScheduled = false;
+            if (outputBuffer.length() == 0) {
+                return;
+            }
+            String output = outputBuffer.toString();
+            outputBuffer.setLength(0);
+            if (Globals.getGui() == null) {
+                System.out.print(output);
+                System.out.flush();
+            } else {
+                Globals.getGui().getMessagesPane().postRunMessage(output);
+            }
+        }
     }
 
 
@@ -178,14 +227,13 @@ public class SystemIO {
      * @param serviceNumber the number assigned to Read String syscall (default 8)
      * @param maxLength     the maximum string length
      * @return the entered string, truncated to maximum length if necessary
+     * @throws java.util.NoSuchElementException at end of input when run from the command line
      */
     public static String readString(int serviceNumber, int maxLength) {
+        flushOutput();
         String input = "";
         if (Globals.getGui() == null) {
-            try {
-                input = getInputReader().readLine();
-            } catch (IOException e) {
-            }
+            input = getInput().readLine();
         } else {
             if (Globals.getSettings().getBooleanSetting(Settings.POPUP_SYSCALL_INPUT)) {
                 input = Globals.getGui().getMessagesPane().getInputString(
@@ -213,15 +261,14 @@ public class SystemIO {
      *
      * @param serviceNumber the number assigned to Read Char syscall (default 12)
      * @return int value with lowest byte corresponding to user input
+     * @throws java.util.NoSuchElementException at end of input when run from the command line
      */
     public static int readChar(int serviceNumber) {
+        flushOutput();
         String input = "0";
         int returnValue = 0;
         if (Globals.getGui() == null) {
-            try {
-                input = getInputReader().readLine();
-            } catch (IOException e) {
-            }
+            return getInput().readChar();
         } else {
             if (Globals.getSettings().getBooleanSetting(Settings.POPUP_SYSCALL_INPUT)) {
                 input = Globals.getGui().getMessagesPane().getInputString(
@@ -255,6 +302,9 @@ public class SystemIO {
      */
 
     public static int writeToFile(int fd, byte[] myBuffer, int lengthRequested) {
+        if (fd == STDOUT || fd == STDERR) {
+            flushOutput();
+        }
         /////////////// DPS 8-Jan-2013  ////////////////////////////////////////////////////
         /// Write to STDOUT or STDERR file descriptor while using IDE - write to Messages pane.
         if ((fd == STDOUT || fd == STDERR) && Globals.getGui() != null) {
@@ -271,25 +321,22 @@ public class SystemIO {
                     "File descriptor " + fd + " is not open for writing");
             return -1;
         }
-        // retrieve FileOutputStream from storage
-        OutputStream outputStream = (OutputStream) FileIOData.getStreamInUse(fd);
+        Object stream = FileIOData.getStreamInUse(fd);
         try {
-            // Oct. 9 2005 Ken Vollmar
-            // Observation: made a call to outputStream.write(myBuffer, 0, lengthRequested)
-            //     with myBuffer containing 6(ten) 32-bit-words <---> 24(ten) bytes, where the
-            //     words are MIPS integers with values such that many of the bytes are ZEROES.
-            //     The effect is apparently that the write stops after encountering a zero-valued
-            //     byte. (The method write does not return a value and so this can't be verified
-            //     by the return value.)
-            // Writes up to lengthRequested bytes of data to this output stream from an array of bytes.
-            // outputStream.write(myBuffer, 0, lengthRequested); // write is a void method -- no verification value returned
-
-            // Oct. 9 2005 Ken Vollmar  Force the write statement to write exactly
-            // the number of bytes requested, even though those bytes include many ZERO values.
-            for (int ii = 0; ii < lengthRequested; ii++) {
-                outputStream.write(myBuffer[ii]);
+            if (stream instanceof FileChannel) {
+                // A channel write may write fewer bytes than requested, so repeat until all are written.
+                ByteBuffer buffer = ByteBuffer.wrap(myBuffer, 0, lengthRequested);
+                while (buffer.hasRemaining()) {
+                    ((FileChannel) stream).write(buffer);
+                }
+            } else {
+                // STDOUT or STDERR.  Writes exactly the number of bytes requested, including
+                // any zero bytes (the per-byte loop that used to ensure this made one system
+                // call per byte).
+                OutputStream outputStream = (OutputStream) stream;
+                outputStream.write(myBuffer, 0, lengthRequested);
+                outputStream.flush();// DPS 7-Jan-2013
             }
-            outputStream.flush();// DPS 7-Jan-2013
         } catch (IOException e) {
             fileErrorString = new String(
                     "IO Exception on write of file with fd " + fd);
@@ -315,6 +362,9 @@ public class SystemIO {
      */
     public static int readFromFile(int fd, byte[] myBuffer, int lengthRequested) {
         int retValue = -1;
+        if (fd == STDIN) {
+            flushOutput();
+        }
         /////////////// DPS 8-Jan-2013  //////////////////////////////////////////////////
         /// Read from STDIN file descriptor while using IDE - get input from Messages pane.
         if (fd == STDIN && Globals.getGui() != null) {
@@ -335,11 +385,15 @@ public class SystemIO {
                     "File descriptor " + fd + " is not open for reading");
             return -1;
         }
-        // retrieve FileInputStream from storage
-        InputStream InputStream = (InputStream) FileIOData.getStreamInUse(fd);
+        Object stream = FileIOData.getStreamInUse(fd);
         try {
-            // Reads up to lengthRequested bytes of data from this Input stream into an array of bytes.
-            retValue = InputStream.read(myBuffer, 0, lengthRequested);
+            // Reads up to lengthRequested bytes of data from the channel or STDIN into an array of bytes.
+            // STDIN shares its buffer with the read syscalls.
+            if (stream instanceof FileChannel) {
+                retValue = ((FileChannel) stream).read(ByteBuffer.wrap(myBuffer, 0, lengthRequested));
+            } else {
+                retValue = getInput().read(myBuffer, 0, lengthRequested);
+            }
             // This method will return -1 upon EOF, but our spec says that negative
             // value represents an error, so we return 0 for EOF.  DPS 10-July-2008.
             if (retValue == -1) {
@@ -374,9 +428,6 @@ public class SystemIO {
         // that file descriptor.
 
         int retValue = -1;
-        char ch[] = {' '}; // Need an array to convert to String
-        FileInputStream inputStream;
-        FileOutputStream outputStream;
         int fdToUse;
 
         // Check internal plausibility of opening this file
@@ -390,21 +441,25 @@ public class SystemIO {
         if (flags == O_RDONLY) // Open for reading only
         {
             try {
-                // Set up input stream from disk file
-                inputStream = new FileInputStream(filename);
-                FileIOData.setStreamInUse(fdToUse, inputStream); // Save stream for later use
-            } catch (FileNotFoundException e) {
+                // Set up channel from disk file
+                FileIOData.setStreamInUse(fdToUse, FileChannel.open(Paths.get(filename),
+                        StandardOpenOption.READ)); // Save channel for later use
+            } catch (Exception e) {
+                FileIOData.close(fdToUse);
                 fileErrorString = new String(
                         "File " + filename + " not found, open for input.");
                 retValue = -1;
             }
         } else if ((flags & O_WRONLY) != 0) // Open for writing only
         {
-            // Set up output stream to disk file
+            // Set up channel to disk file
             try {
-                outputStream = new FileOutputStream(filename, ((flags & O_APPEND) != 0));
-                FileIOData.setStreamInUse(fdToUse, outputStream); // Save stream for later use
-            } catch (FileNotFoundException e) {
+                FileIOData.setStreamInUse(fdToUse, FileChannel.open(Paths.get(filename),
+                        StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                        ((flags & O_APPEND) != 0) ? StandardOpenOption.APPEND
+                                : StandardOpenOption.TRUNCATE_EXISTING)); // Save channel for later use
+            } catch (Exception e) {
+                FileIOData.close(fdToUse);
                 fileErrorString = new String(
                         "File " + filename + " not found, open for output.");
                 retValue = -1;
@@ -414,6 +469,54 @@ public class SystemIO {
 
     }
 
+    /**
+     * Set the position of the next read or write on an open file, as lseek does.
+     * Files opened for append are always written at the end regardless.
+     *
+     * @param fd     file descriptor
+     * @param offset offset in bytes, relative to the place given by whence
+     * @param whence 0 for start of file, 1 for current position, 2 for end of file
+     * @return new position from start of file, or -1 if error
+     */
+    public static int seekFile(int fd, int offset, int whence) {
+        Object stream = (fd < 0 || fd >= SYSCALL_MAXFILES) ? null : FileIOData.getStreamInUse(fd);
+        if (!(stream instanceof FileChannel)) {
+            fileErrorString = new String(
+                    "File descriptor " + fd + " is not open for seeking");
+            return -1;
+        }
+        FileChannel channel = (FileChannel) stream;
+        try {
+            long position;
+            switch (whence) {
+                case SEEK_SET:
+                    position = offset;
+                    break;
+                case SEEK_CUR:
+                    position = channel.position() + offset;
+                    break;
+                case SEEK_END:
+                    position = channel.size() + offset;
+                    break;
+                default:
+                    fileErrorString = new String(
+                            "Unknown whence value " + whence + " for seek of file with fd " + fd);
+                    return -1;
+            }
+            if (position < 0 || position > Integer.MAX_VALUE) {
+                fileErrorString = new String(
+                        "Seek position out of range for file with fd " + fd);
+                return -1;
+            }
+            channel.position(position);
+            return (int) position;
+        } catch (IOException e) {
+            fileErrorString = new String(
+                    "IO Exception on seek of file with fd " + fd);
+            return -1;
+        }
+    }
+
     /**
      * Close the file with specified file descriptor
      *
@@ -439,17 +542,35 @@ public class SystemIO {
         return fileErrorString;
     }
 
+    /**
+     * Take standard input for the read syscalls from the given bytes instead of
+     * System.in, when running from the command line.
+     *
+     * @param data the complete input, e.g. contents of a file
+     */
+    public static void setInput(byte[] data) {
+        input = new ConsoleInput(data);
+    }
+
     ///////////////////////////////////////////////////////////////////////
-    // Private method to simply return the BufferedReader used for
+    // Private method to simply return the ConsoleInput used for
     // keyboard input, redirected input, or piped input.
     // These are all equivalent in the eyes of the program because they are
     // transparent to it.  Lazy instantiation.  DPS.  28 Feb 2008
 
-    private static BufferedReader getInputReader() {
-        if (inputReader == null) {
-            inputReader = new BufferedReader(new InputStreamReader(System.in));
+    private static ConsoleInput getInput() {
+        if (input == null) {
+            input = new ConsoleInput(System.in);
+        }
+        return input;
+    }
+
+    // Daemon timer used to flush buffered output after a short quiet period.
+    private static synchronized Timer getOutputTimer() {
+        if (outputTimer == null) {
+            outputTimer = new Timer("MARS output", true);
         }
-        return inputReader;
+        return outputTimer;
     }
 
 
@@ -460,7 +581,7 @@ public class SystemIO {
     private static class FileIOData {
         private static String[] fileNames = new String[SYSCALL_MAXFILES]; // The filenames in use. Null if file descriptor i is not in use.
         private static int[] fileFlags = new int[SYSCALL_MAXFILES]; // The flags of this file, 0=READ, 1=WRITE. Invalid if this file descriptor is not in use.
-        private static Object[] streams = new Object[SYSCALL_MAXFILES]; // The streams in use, associated with the filenames
+        private static Object[] streams = new Object[SYSCALL_MAXFILES]; // The FileChannels in use, associated with the filenames (streams for STDIN, STDOUT, STDERR)
 
         // Reset all file information. Closes any open files and resets the arrays
         private static void resetFiles() {
@@ -535,15 +656,11 @@ public class SystemIO {
             fileNames[fd] = null;
             // All this code will be executed only if the descriptor is open.
             if (streams[fd] != null) {
-                int keepFlag = fileFlags[fd];
                 Object keepStream = streams[fd];
                 fileFlags[fd] = -1;
                 streams[fd] = null;
                 try {
-                    if (keepFlag == O_RDONLY)
-                        ((FileInputStream) keepStream).close();
-                    else
-                        ((FileOutputStream) keepStream).close();
+                    ((FileChannel) keepStream).close();
                 } catch (IOException ioe) {
                     // not concerned with this exception
                 }
@@ -571,7 +688,7 @@ public class SystemIO {
                 return -1;
             }
 
-            while (fileNames[i] != null && i < SYSCALL_MAXFILES) {
+            while (i < SYSCALL_MAXFILES && fileNames[i] != null) {
                 i++;
             } // Attempt to find available file descriptor
 
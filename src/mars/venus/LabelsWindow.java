@@ -334,6 +334,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             else {
                symbols = new ArrayList();
             }
+            symbols = (ArrayList) symbols.clone(); // symbol table views are shared; sort a copy
             Collections.sort(symbols, tableSortComparator); // DPS 25 Dec 2008
             labelData = new Object[symbols.size()][2];
          
@@ -52,7 +52,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	// seems to slow things down as new text is appended).  Once it
    	// reaches MAXIMUM_SCROLLED_CHARACTERS in length then cut off 
    	// the first NUMBER_OF_CHARACTERS_TO_CUT characters.  The latter
-   	// must obviously be smaller than the former.
+   	// must obviously be smaller than the former.  The Run I/O area
+   	// keeps its text in a RingBufferContent, so the cut there costs
+   	// only the text removed, and it is made at a line boundary.
       public static final int MAXIMUM_SCROLLED_CHARACTERS = Globals.maximumMessageCharacters;
       public static final int NUMBER_OF_CHARACTERS_TO_CUT = Globals.maximumMessageCharacters/10 ; // 10%
    
@@ -64,7 +66,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          super();
          this.setMinimumSize(new Dimension(0,0));
          assemble= new JTextArea();
-         run= new JTextArea();
+         run= new JTextArea(new PlainDocument(new RingBufferContent(MAXIMUM_SCROLLED_CHARACTERS)));
          assemble.setEditable(false); 
          run.setEditable(false);
       	// Set both text areas to mono font.  For assemble
@@ -308,9 +310,17 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   // can do some crude cutting here.  If the document gets "very large", 
                   // let's cut off the oldest text. This will limit scrolling but the limit 
                   // can be set reasonably high.
-                     if (run.getDocument().getLength() > MAXIMUM_SCROLLED_CHARACTERS) {
+                     Document document = run.getDocument();
+                     if (document.getLength() > MAXIMUM_SCROLLED_CHARACTERS) {
+                        // cut through the end of the line containing the cut point, unless
+                        // that is the last line (e.g. output with no newlines)
+                        Element lines = document.getDefaultRootElement();
+                        int cut = lines.getElement(lines.getElementIndex(NUMBER_OF_CHARACTERS_TO_CUT)).getEndOffset();
+                        if (cut > document.getLength()) {
+                           cut = NUMBER_OF_CHARACTERS_TO_CUT;
+                        }
                         try {
-                           run.getDocument().remove(0, NUMBER_OF_CHARACTERS_TO_CUT);
+                           document.remove(0, cut);
                         } 
                             catch (BadLocationException ble) { 
                            // only if NUMBER_OF_CHARACTERS_TO_CUT > MAXIMUM_SCROLLED_CHARACTERS
@@ -0,0 +1,321 @@
+   package mars.venus;
+   import javax.swing.text.*;
+   import javax.swing.undo.*;
+   import java.util.*;
+
+/*
+Copyright (c) 2003-2010,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+  *  Document content for the Run I/O area.  Text is held in a circular buffer, so
+  *  appending at the end and cutting off the oldest text at the front take time
+  *  proportional only to the amount of text added or removed.  The GapContent used by
+  *  default has to move everything after the gap for both, which is most of the
+  *  document once it gets large.  Edits elsewhere (the user typing syscall input near
+  *  the end) shift only the text that follows them.
+  *  <p>
+  *  Positions are kept as offsets from the start of all text ever stored, so cutting
+  *  text from the front does not have to visit them.  Positions that fall at offset 0
+  *  never move and are not tracked at all.  Positions at the same offset always move
+  *  together, so one is shared by all requests for that offset; otherwise every append
+  *  would leave behind the end position of the last line for later appends to move.
+  **/
+
+    public class RingBufferContent implements AbstractDocument.Content {
+      private char[] buffer;
+      private int mask;     // buffer.length - 1; length is always a power of 2
+      private int head;     // buffer index of first character
+      private int count;    // number of characters stored, not including the implied final newline
+      private long base;    // number of characters ever cut from the front
+      private ArrayList<Mark> marks = new ArrayList<Mark>(); // sorted by offset
+
+   /**
+     *  Creates empty content with a small initial buffer, which grows as needed.
+     **/
+       public RingBufferContent() {
+         this(1024);
+      }
+
+   /**
+     *  Creates empty content.
+     *
+     *  @param initialCapacity number of characters the buffer holds before it has to grow
+     **/
+       public RingBufferContent(int initialCapacity) {
+         int capacity = 16;
+         while (capacity < initialCapacity) {
+            capacity <<= 1;
+         }
+         buffer = new char[capacity];
+         mask = capacity - 1;
+      }
+
+   /**
+     *  Length of the content, including the implied newline that ends every document.
+     **/
+       public int length() {
+         return count + 1;
+      }
+
+   /**
+     *  Inserts a string into the content.
+     **/
+       public UndoableEdit insertString(int where, String str) throws BadLocationException {
+         if (where < 0 || where > count) {
+            throw new BadLocationException("Invalid insert", where);
+         }
+         int len = str.length();
+         ensureCapacity(count + len);
+         for (int i = count - 1; i >= where; i--) {
+            buffer[(head + i + len) & mask] = buffer[(head + i) & mask];
+         }
+         for (int i = 0; i < len; i++) {
+            buffer[(head + where + i) & mask] = str.charAt(i);
+         }
+         count += len;
+         updateMarksForInsert(where, len);
+         return new InsertUndo(where, len);
+      }
+
+   /**
+     *  Removes part of the content.  Removing from the front just advances the head of the buffer.
+     **/
+       public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+         if (where < 0 || nitems < 0 || where + nitems > count) {
+            throw new BadLocationException("Invalid remove", where + nitems);
+         }
+         String removed = getString(where, nitems);
+         if (where == 0) {
+            head = (head + nitems) & mask;
+         }
+         else {
+            for (int i = where; i < count - nitems; i++) {
+               buffer[(head + i) & mask] = buffer[(head + i + nitems) & mask];
+            }
+         }
+         count -= nitems;
+         updateMarksForRemove(where, nitems);
+         return new RemoveUndo(where, removed);
+      }
+
+   /**
+     *  Retrieves a portion of the content.
+     **/
+       public String getString(int where, int len) throws BadLocationException {
+         Segment s = new Segment();
+         getChars(where, len, s);
+         return new String(s.array, s.offset, s.count);
+      }
+
+   /**
+     *  Retrieves a portion of the content.  The segment refers directly to the buffer unless
+     *  the portion wraps around its end or includes the implied final newline, in which
+     *  case it refers to a copy.
+     **/
+       public void getChars(int where, int len, Segment txt) throws BadLocationException {
+         if (where < 0 || len < 0 || where + len > count + 1) {
+            throw new BadLocationException("Invalid location", where + len);
+         }
+         int start = (head + where) & mask;
+         if (where + len <= count && start + len <= buffer.length) {
+            txt.array = buffer;
+            txt.offset = start;
+            txt.count = len;
+            return;
+         }
+         char[] copy = new char[len];
+         int stored = Math.min(len, count - where);
+         for (int i = 0; i < stored; i++) {
+            copy[i] = buffer[(start + i) & mask];
+         }
+         if (stored < len) {
+            copy[stored] = '\n';
+         }
+         txt.array = copy;
+         txt.offset = 0;
+         txt.count = len;
+      }
+
+   /**
+     *  Creates a position within the content that tracks changes to it.
+     **/
+       public Position createPosition(int offset) throws BadLocationException {
+         if (offset < 0 || offset > count + 1) {
+            throw new BadLocationException("Invalid position", offset);
+         }
+         if (offset == 0) {
+            return new Mark(base);
+         }
+         long value = base + offset;
+         int index = findMark(value);
+         if (index < marks.size() && marks.get(index).value == value) {
+            return marks.get(index);
+         }
+         Mark mark = new Mark(value);
+         marks.add(index, mark);
+         return mark;
+      }
+
+      // Grow the buffer (doubling) until it holds the given number of characters, unwrapping
+      // the contents to start at index 0.
+       private void ensureCapacity(int needed) {
+         if (needed <= buffer.length) {
+            return;
+         }
+         int capacity = buffer.length;
+         while (capacity < needed) {
+            capacity <<= 1;
+         }
+         char[] newBuffer = new char[capacity];
+         for (int i = 0; i < count; i++) {
+            newBuffer[i] = buffer[(head + i) & mask];
+         }
+         buffer = newBuffer;
+         mask = capacity - 1;
+         head = 0;
+      }
+
+      // Index of first mark whose value is at least the given value.
+       private int findMark(long value) {
+         int low = 0;
+         int high = marks.size();
+         while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (marks.get(mid).value < value) {
+               low = mid + 1;
+            }
+            else {
+               high = mid;
+            }
+         }
+         return low;
+      }
+
+      // Positions at or after the insertion point move with the text, except that a position
+      // at 0 stays at the start of the document (same rule as StringContent).
+       private void updateMarksForInsert(int where, int len) {
+         if (where == 0) {
+            where = 1;
+         }
+         for (int i = findMark(base + where); i < marks.size(); i++) {
+            marks.get(i).value += len;
+         }
+      }
+
+      // Positions inside the removed text collapse to its start; those after it move back.
+      // Removing from the front only advances the base, and positions now at 0 are dropped.
+       private void updateMarksForRemove(int where, int nitems) {
+         if (where == 0) {
+            base += nitems;
+            marks.subList(0, findMark(base + 1)).clear();
+            return;
+         }
+         long start = base + where;
+         long end = start + nitems;
+         for (int i = findMark(start); i < marks.size(); i++) {
+            Mark mark = marks.get(i);
+            mark.value = (mark.value >= end) ? mark.value - nitems : start;
+         }
+      }
+
+      ////////////////////////////////////////////////////////////////////////////
+      //  Position whose value counts from the start of all text ever stored.
+       private class Mark implements Position {
+         long value;
+          Mark(long value) {
+            this.value = value;
+         }
+          public int getOffset() {
+            long offset = value - base;
+            return (offset < 0) ? 0 : (int) offset;
+         }
+      }
+
+      ////////////////////////////////////////////////////////////////////////////
+      //  Undo and redo of an insertion.
+       private class InsertUndo extends AbstractUndoableEdit {
+         private static final long serialVersionUID = 1L;
+         private int offset;
+         private int length;
+         private String string;
+          InsertUndo(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+         }
+          public void undo() throws CannotUndoException {
+            super.undo();
+            try {
+               string = getString(offset, length);
+               remove(offset, length);
+            }
+                catch (BadLocationException ble) {
+                  throw new CannotUndoException();
+               }
+         }
+          public void redo() throws CannotRedoException {
+            super.redo();
+            try {
+               insertString(offset, string);
+               string = null;
+            }
+                catch (BadLocationException ble) {
+                  throw new CannotRedoException();
+               }
+         }
+      }
+
+      ////////////////////////////////////////////////////////////////////////////
+      //  Undo and redo of a removal.
+       private class RemoveUndo extends AbstractUndoableEdit {
+         private static final long serialVersionUID = 1L;
+         private int offset;
+         private String string;
+          RemoveUndo(int offset, String string) {
+            this.offset = offset;
+            this.string = string;
+         }
+          public void undo() throws CannotUndoException {
+            super.undo();
+            try {
+               insertString(offset, string);
+            }
+                catch (BadLocationException ble) {
+                  throw new CannotUndoException();
+               }
+         }
+          public void redo() throws CannotRedoException {
+            super.redo();
+            try {
+               remove(offset, string.length());
+            }
+                catch (BadLocationException ble) {
+                  throw new CannotRedoException();
+               }
+         }
+      }
+   }
@@ -1,7 +1,9 @@
    package mars.venus;
    import mars.*;
    import mars.util.*;
+   import mars.simulator.*;
    import mars.mips.hardware.*;
+   import mars.mips.instructions.syscalls.RandomStreams;
    import java.util.*;
    import java.io.*;
    import java.awt.*;
@@ -92,6 +94,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                    Globals.getSettings().getExceptionHandler().length() > 0) {
                   exceptionHandler = Globals.getSettings().getExceptionHandler();
                }
+               long assembleStartTime = System.nanoTime();
                MIPSprogramsToAssemble = Globals.program.prepareFilesForAssembly(filesToAssemble, FileStatus.getFile().getPath(), exceptionHandler);					
                mainUI.messagesPane.postMarsMessage(buildFileNameList(name+": assembling ", MIPSprogramsToAssemble));
                // added logic to receive any warnings and output them.... DPS 11/28/06
@@ -100,8 +103,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                if (warnings.warningsOccurred()) {
                   mainUI.messagesPane.postMarsMessage(warnings.generateWarningReport());
                }
+               long assembleMillis = (System.nanoTime() - assembleStartTime) / 1000000;
                mainUI.messagesPane.postMarsMessage(
-                          name+": operation completed successfully.\n\n");
+                          name+": operation completed successfully in "+assembleMillis+" ms.\n\n");
                FileStatus.setAssembled(true);
                FileStatus.set(FileStatus.RUNNABLE);
                RegisterFile.resetRegisters();
@@ -123,6 +127,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             	
             // Aug. 24, 2005 Ken Vollmar
                SystemIO.resetFiles( );  // Ensure that I/O "file descriptors" are initialized for a new program run
+               VirtualClock.reset();  // Time and Sleep syscalls start again from 0 when using virtual time
+               RandomStreams.resetStreams();  // Random number syscalls do not continue the last run's streams
             
             }
                 catch (ProcessingException pe) {
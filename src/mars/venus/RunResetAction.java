@@ -1,7 +1,9 @@
    package mars.venus;
    import mars.*;
    import mars.util.*;
+   import mars.simulator.*;
    import mars.mips.hardware.*;
+   import mars.mips.instructions.syscalls.RandomStreams;
    import java.awt.*;
    import java.awt.event.*;
    import javax.swing.*;
@@ -92,6 +94,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       
          // Aug. 24, 2005 Ken Vollmar
          SystemIO.resetFiles( );  // Ensure that I/O "file descriptors" are initialized for a new program run
+         VirtualClock.reset();  // Time and Sleep syscalls start again from 0 when using virtual time
+         RandomStreams.resetStreams();  // Random number syscalls do not continue the last run's streams
       
          mainUI.getMessagesPane().postRunMessage(
                              "\n"+name+": reset completed.\n\n");
@@ -919,9 +919,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          For a different approach, see RunClearBreakpointsAction.java.  This menu item registers
          as a TableModelListener by calling the TextSegmentWindow's registerTableModelListener
          method.  Then it is notified when the table model changes, and this occurs whenever
-         the user clicks on a breakpoint checkbox!  Using this approach, the SimThread registers
-         similarly.  A "GUI guard" is not needed in SimThread because it extends SwingWorker and
-         thus is only invoked when the IDE is present (never when running MARS in command mode).
+         the user clicks on a breakpoint checkbox!  Using this approach, the SimTask registers
+         similarly.  A "GUI guard" is needed in SimTask because it also runs when MARS is
+         in command mode (no IDE present).
          
          *****************************************************/
          }
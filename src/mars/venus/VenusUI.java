@@ -74,7 +74,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private JMenuItem runGo, runStep, runBackstep, runReset, runAssemble, runStop, runPause, runClearBreakpoints, runToggleBreakpoints;
       private JCheckBoxMenuItem settingsLabel, settingsPopupInput, settingsValueDisplayBase, settingsAddressDisplayBase,
               settingsExtended, settingsAssembleOnOpen, settingsAssembleAll, settingsWarningsAreErrors, settingsStartAtMain,
-      		  settingsDelayedBranching, settingsProgramArguments, settingsSelfModifyingCode;
+      		  settingsDelayedBranching, settingsProgramArguments, settingsSelfModifyingCode, settingsVirtualTime;
       private JMenuItem settingsExceptionHandler, settingsEditor, settingsHighlighting, settingsMemoryConfiguration;
       private JMenuItem helpHelp, helpAbout;
          
@@ -99,7 +99,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      settingsExtendedAction, settingsAssembleOnOpenAction, settingsAssembleAllAction,
       					settingsWarningsAreErrorsAction, settingsStartAtMainAction, settingsProgramArgumentsAction,
       					settingsDelayedBranchingAction, settingsExceptionHandlerAction, settingsEditorAction,
-      					settingsHighlightingAction, settingsMemoryConfigurationAction, settingsSelfModifyingCodeAction;    
+      					settingsHighlightingAction, settingsMemoryConfigurationAction, settingsSelfModifyingCodeAction,
+      					settingsVirtualTimeAction;    
       private Action helpHelpAction, helpAboutAction;
    
    
@@ -422,6 +423,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                									  "If set, the MIPS program can write and branch to both text and data segments.",
                									  null,null,
                									  mainUI);
+            settingsVirtualTimeAction  = new SettingsVirtualTimeAction("Virtual time",
+                                            null,
+               									  "If set, Time and Sleep syscalls use simulated time based on instructions executed.",
+               									  null,null,
+               									  mainUI);
             settingsEditorAction          = new SettingsEditorAction("Editor...",
                                             null,
                									  "View and modify text editor settings.",
@@ -589,6 +595,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          settingsDelayedBranching.setSelected(Globals.getSettings().getDelayedBranchingEnabled());
          settingsSelfModifyingCode = new JCheckBoxMenuItem(settingsSelfModifyingCodeAction);
          settingsSelfModifyingCode.setSelected(Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED));
+         settingsVirtualTime = new JCheckBoxMenuItem(settingsVirtualTimeAction);
+         settingsVirtualTime.setSelected(Globals.getSettings().getBooleanSetting(Settings.VIRTUAL_TIME));
          settingsAssembleOnOpen = new JCheckBoxMenuItem(settingsAssembleOnOpenAction);
          settingsAssembleOnOpen.setSelected(Globals.getSettings().getAssembleOnOpenEnabled());
          settingsAssembleAll = new JCheckBoxMenuItem(settingsAssembleAllAction);
@@ -618,6 +626,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          settings.add(settingsExtended);
          settings.add(settingsDelayedBranching);
          settings.add(settingsSelfModifyingCode);
+         settings.add(settingsVirtualTime);
          settings.addSeparator();
          settings.add(settingsEditor);
          settings.add(settingsHighlighting);
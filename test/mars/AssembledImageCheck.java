@@ -0,0 +1,137 @@
+   package mars;
+
+/*
+Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+	import mars.mips.dump.*;
+	import mars.mips.hardware.*;
+	import java.io.*;
+	import java.nio.file.*;
+	import java.util.*;
+
+	/**
+	  *  Checks that programs MARS rebuilds from binary code display exactly as when
+	  *  assembled from source.  The text segment is dumped in Text Segment Window format
+	  *  (the SegmentWindow dump) after each way of producing it and the dumps compared:
+	  *  a program assembled from source, saved to an AssembledProgramCache (a miss),
+	  *  loaded from it again (a hit), and assembled with part of it linked in from an
+	  *  ObjectFile.
+	  *  <p>
+	  *  Run from the top directory, with the MARS classes and this one on the class path:
+	  *  <tt>java mars.AssembledImageCheck [directory]</tt>.  The directory holds the test
+	  *  programs and defaults to <tt>test/programs</tt>.  Exit status is 1 if a dump differs.
+	  **/
+
+    public class AssembledImageCheck {
+      private static int failures = 0;
+
+       public static void main(String[] args) throws Exception {
+         System.setProperty("java.awt.headless", "true");
+         Globals.initialize(false);
+         MemoryConfigurations.setCurrentConfiguration(MemoryConfigurations.getDefaultConfiguration());
+         File dir = new File((args.length > 0) ? args[0] : "test/programs");
+         ArrayList<String> files = new ArrayList<String>();
+         files.add(new File(dir, "main.asm").getPath());
+         files.add(new File(dir, "lib.asm").getPath());
+         checkCache(files);
+         checkLink(files);
+         System.out.println((failures == 0) ? "All dumps match." : failures + " dump(s) differ.");
+         System.exit((failures == 0) ? 0 : 1);
+      }
+
+   // A cache miss assembles and saves the program, a hit loads it.  Both must look like
+   // a plain assemble.
+       private static void checkCache(ArrayList<String> files) throws Exception {
+         String source = assembleAndDump(files, null);
+         File cacheFile = File.createTempFile("mars", ".cache");
+         cacheFile.deleteOnExit();
+         cacheFile.delete();
+         String miss = assembleAndDump(files, new AssembledProgramCache(cacheFile));
+         if (!new AssembledProgramCache(cacheFile).load(files, true, false)) {
+            fail("cache hit", "program was not loaded from " + cacheFile);
+            return;
+         }
+         String hit = dumpText();
+         compare("cache miss", source, miss);
+         compare("cache hit", source, hit);
+      }
+
+   // The last file, assembled into an object file, saved and loaded again, then linked
+   // with the others must look like all of them assembled together.
+       private static void checkLink(ArrayList<String> files) throws Exception {
+         String source = assembleAndDump(files, null);
+         ArrayList<String> libraryFiles = new ArrayList<String>(files.subList(files.size()-1, files.size()));
+         ArrayList<String> mainFiles = new ArrayList<String>(files.subList(0, files.size()-1));
+         File objectFile = File.createTempFile("mars", ".obj");
+         objectFile.deleteOnExit();
+         ObjectFile.assemble(new MIPSprogram().prepareFilesForAssembly(libraryFiles, libraryFiles.get(0), null),
+                             true, false).save(objectFile);
+         ArrayList<ObjectFile> objectFiles = new ArrayList<ObjectFile>();
+         objectFiles.add(ObjectFile.load(objectFile));
+         MIPSprogram code = new MIPSprogram();
+         code.assemble(code.prepareFilesForAssembly(mainFiles, mainFiles.get(0), null), true, false, false, objectFiles);
+         compare("linked object file", source, dumpText());
+      }
+   
+   // Assemble the files, saving the result to the cache if one is given, and dump the text segment.
+       private static String assembleAndDump(ArrayList<String> files, AssembledProgramCache cache) throws Exception {
+         MIPSprogram code = new MIPSprogram();
+         ArrayList<?> programs = code.prepareFilesForAssembly(files, files.get(0), null);
+         ErrorList warnings = code.assemble(programs, true, false);
+         if (cache != null) {
+            cache.save(files, programs, code.getMachineList(), warnings, true, false);
+         }
+         return dumpText();
+      }
+
+       private static String dumpText() throws Exception {
+         File dump = File.createTempFile("mars", ".txt");
+         dump.deleteOnExit();
+         int lastAddress = Globals.memory.getAddressOfFirstNull(Memory.textBaseAddress, Memory.textLimitAddress)
+                           - Memory.WORD_LENGTH_BYTES;
+         new SegmentWindowDumpFormat().dumpMemoryRange(dump, Memory.textBaseAddress, lastAddress);
+         return new String(Files.readAllBytes(dump.toPath()), "UTF-8");
+      }
+
+       private static void compare(String what, String expected, String actual) {
+         String[] expectedLines = expected.split("\n", -1);
+         String[] actualLines = actual.split("\n", -1);
+         for (int i=0; i<Math.max(expectedLines.length, actualLines.length); i++) {
+            String e = (i < expectedLines.length) ? expectedLines[i] : "";
+            String a = (i < actualLines.length) ? actualLines[i] : "";
+            if (!e.equals(a)) {
+               fail(what, "dump line " + (i+1) + " differs from source assemble\n  expected: " + e + "\n  actual:   " + a);
+               return;
+            }
+         }
+      }
+
+       private static void fail(String what, String message) {
+         System.out.println(what + ": " + message);
+         failures++;
+      }
+   }
@@ -0,0 +1,130 @@
+package mars.mips.instructions;
+
+import mars.Globals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Random;
+
+	/*
+Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Checks that InstructionSet.findByBinaryCode(), which decodes through the two-level
+ * DecodeTable, finds the same instruction as the MatchMap lookup it replaced.  That
+ * lookup is kept here: one map from match to instruction per distinct operation mask,
+ * searched in order of most fixed bits, then mask value.
+ * <p>
+ * Sampled words are every combination of the opcode, rs/fmt, rt and funct fields,
+ * once with the remaining bits clear and once with them random, followed by random
+ * 32-bit words.  Run with the MARS classes and this one on the class path:
+ * <tt>java mars.mips.instructions.DecodeTableCheck [random words]</tt>.  Exit status
+ * is 1 if any word decodes differently.
+ */
+public class DecodeTableCheck {
+
+    private static final int FIELD_BITS = 0xFFFF003F; // opcode, rs/fmt, rt, funct
+    private static final int MAX_REPORTED = 10;
+
+    private final InstructionSet instructionSet;
+    private final ArrayList<Integer> masks = new ArrayList<Integer>();
+    private final HashMap<Integer, HashMap<Integer, BasicInstruction>> matchMaps =
+            new HashMap<Integer, HashMap<Integer, BasicInstruction>>();
+    private long checked = 0;
+    private long mismatches = 0;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        Globals.initialize(false);
+        int randomWords = (args.length > 0) ? Integer.parseInt(args[0]) : 1 << 22;
+        DecodeTableCheck check = new DecodeTableCheck(Globals.instructionSet);
+        Random random = new Random(20261018);
+        for (int fields = 0; fields < (1 << 22); fields++) {
+            // Spread the 22 field bits over bits 31-16 and 5-0.
+            int word = ((fields >>> 6) << 16) | (fields & 0x3F);
+            check.check(word);
+            check.check(word | (random.nextInt() & ~FIELD_BITS));
+        }
+        for (int i = 0; i < randomWords; i++) {
+            check.check(random.nextInt());
+        }
+        System.out.println(check.checked + " words decoded, " + check.mismatches + " mismatch(es).");
+        System.exit((check.mismatches == 0) ? 0 : 1);
+    }
+
+    private DecodeTableCheck(InstructionSet instructionSet) {
+        this.instructionSet = instructionSet;
+        for (Instruction inst : instructionSet.getInstructionList()) {
+            if (inst instanceof BasicInstruction) {
+                BasicInstruction basic = (BasicInstruction) inst;
+                HashMap<Integer, BasicInstruction> matchMap = matchMaps.get(basic.getOpcodeMask());
+                if (matchMap == null) {
+                    matchMap = new HashMap<Integer, BasicInstruction>();
+                    matchMaps.put(basic.getOpcodeMask(), matchMap);
+                    masks.add(basic.getOpcodeMask());
+                }
+                matchMap.put(basic.getOpcodeMatch(), basic); // later instruction wins
+            }
+        }
+        Collections.sort(masks, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                int d = Integer.bitCount(b) - Integer.bitCount(a);
+                if (d == 0) d = a - b;
+                return d;
+            }
+        });
+    }
+
+    // The MatchMap lookup that findByBinaryCode() used before the DecodeTable.
+    private BasicInstruction findByMatchMaps(int instr) {
+        for (int i = 0; i < masks.size(); i++) {
+            int mask = masks.get(i);
+            BasicInstruction found = matchMaps.get(mask).get(instr & mask);
+            if (found != null) return found;
+        }
+        return null;
+    }
+
+    private void check(int instr) {
+        checked++;
+        BasicInstruction expected = findByMatchMaps(instr);
+        BasicInstruction actual = instructionSet.findByBinaryCode(instr);
+        if (expected != actual) {
+            if (++mismatches <= MAX_REPORTED) {
+                System.out.println(String.format("0x%08x: MatchMap found %s, DecodeTable found %s", instr,
+                        describe(expected), describe(actual)));
+            }
+        }
+    }
+
+    private static String describe(BasicInstruction basic) {
+        return (basic == null) ? "nothing" : basic.getExampleFormat();
+    }
+}
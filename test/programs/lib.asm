@@ -0,0 +1,22 @@
+# Routine for AssembledImageCheck: adds the words of a table, up to the address in limit.
+	.data
+total:	.word	0
+table:	.word	3, 5, 7
+limit:	.word	limit
+	.text
+	.globl	count
+	.globl	total
+count:	la	$t2, table
+	lw	$t3, limit
+	addiu	$sp, $sp, -4
+	sw	$ra, 0($sp)
+	move	$t4, $zero
+loop:	beq	$t2, $t3, store
+	lw	$t5, 0($t2)
+	add	$t4, $t4, $t5
+	addi	$t2, $t2, 4
+	j	loop
+store:	sw	$t4, total
+	lw	$ra, 0($sp)
+	addiu	$sp, $sp, 4
+	jr	$ra
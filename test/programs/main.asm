@@ -0,0 +1,17 @@
+# Main program for AssembledImageCheck.  Calls a routine in lib.asm, which may be
+# assembled along with it or linked in as an object file.  The data segment is a
+# multiple of 8 bytes long, so lib.asm's data is placed at the same address either way.
+	.data
+msg:	.asciiz "hello!\n"
+	.text
+	.globl main
+main:	la	$a0, msg
+	li	$v0, 4
+	syscall
+	addi	$t0, $zero, -1
+	jal	count
+	lw	$t1, total
+	beq	$t0, $zero, done
+	j	done
+done:	li	$v0, 10
+	syscall